@@ -40,6 +40,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.StringTokenizer;
+import java.util.concurrent.ArrayBlockingQueue;
 import org.tensorflow.lite.Interpreter;
 
 /** Classifies images with Tensorflow Lite. */
@@ -59,8 +60,8 @@ public abstract class ImageClassifier {
 
   private static final int DIM_PIXEL_SIZE = 3;
 
-  /* Preallocated buffers for storing image data in. */
-  private int[] intValues = new int[getImageSizeX() * getImageSizeY()];
+  /** Number of model inputs: one can be written while the previous one is being inferred. */
+  private static final int NUM_INPUT_BUFFERS = 2;
 
   /** An instance of the driver class to run model inference with Tensorflow Lite. */
   protected Interpreter tflite;
@@ -68,8 +69,11 @@ public abstract class ImageClassifier {
   /** Labels corresponding to the output of the vision model. */
   private List<String> labelList;
 
-  /** A ByteBuffer to hold image data, to be feed into Tensorflow Lite as inputs. */
-  protected ByteBuffer imgData = null;
+  /** Inputs free to be written, and inputs written and waiting for inference, oldest first. */
+  private final ArrayBlockingQueue<InputBuffer> freeInputs =
+      new ArrayBlockingQueue<InputBuffer>(NUM_INPUT_BUFFERS);
+  private final ArrayBlockingQueue<InputBuffer> submittedInputs =
+      new ArrayBlockingQueue<InputBuffer>(NUM_INPUT_BUFFERS);
 
   /** multi-stage low pass filter * */
   private float[][] filterLabelProbArray = null;
@@ -87,11 +91,42 @@ public abstract class ImageClassifier {
             }
           });
 
+  /**
+   * A model input, with the buffers it is written from. An input is acquired from the classifier,
+   * written, then either submitted for inference or released unused; an input submitted goes back
+   * to the free ones once inferred.
+   */
+  static class InputBuffer {
+    /** Holds the image data fed into Tensorflow Lite. */
+    private final ByteBuffer imgData;
+
+    /** Normalizes pixels into {@link #imgData} a row at a time. */
+    private final TensorWriter tensorWriter;
+
+    /* Preallocated buffer for the pixels of the bitmap being written. */
+    private final int[] intValues;
+
+    private InputBuffer(
+        final ByteBuffer imgData, final TensorWriter tensorWriter, final int numPixels) {
+      this.imgData = imgData;
+      this.tensorWriter = tensorWriter;
+      intValues = new int[numPixels];
+    }
+  }
+
   /** Initializes an {@code ImageClassifier}. */
   ImageClassifier(Activity activity) throws IOException {
     tflite = new Interpreter(loadModelFile(activity));
     labelList = loadLabelList(activity);
-    imgData =
+    for (int i = 0; i < NUM_INPUT_BUFFERS; ++i) {
+      freeInputs.add(createInputBuffer());
+    }
+    filterLabelProbArray = new float[FILTER_STAGES][getNumLabels()];
+    Log.d(TAG, "Created a Tensorflow Lite Image Classifier.");
+  }
+
+  private InputBuffer createInputBuffer() {
+    final ByteBuffer imgData =
         ByteBuffer.allocateDirect(
             DIM_BATCH_SIZE
                 * getImageSizeX()
@@ -99,22 +134,94 @@ public abstract class ImageClassifier {
                 * DIM_PIXEL_SIZE
                 * getNumBytesPerChannel());
     imgData.order(ByteOrder.nativeOrder());
-    filterLabelProbArray = new float[FILTER_STAGES][getNumLabels()];
-    Log.d(TAG, "Created a Tensorflow Lite Image Classifier.");
+    final TensorWriter tensorWriter =
+        getNumBytesPerChannel() == 1
+            ? new TensorWriter(imgData, getImageSizeX(), getImageSizeY())
+            : new TensorWriter(
+                imgData, getImageSizeX(), getImageSizeY(), getImageMean(), getImageStd());
+    return new InputBuffer(imgData, tensorWriter, getImageSizeX() * getImageSizeY());
+  }
+
+  /**
+   * Takes a free model input to write the next frame into. Inputs are acquired, written and
+   * submitted from one producer thread while inference runs on another, so that the next frame is
+   * preprocessed during the inference of the previous one.
+   *
+   * @return The input, or null if all of them are written or being inferred.
+   */
+  InputBuffer acquireInput() {
+    return freeInputs.poll();
+  }
+
+  /** Hands an input written since {@link #acquireInput} over to the next inference. */
+  void submitInput(InputBuffer input) {
+    submittedInputs.add(input);
+  }
+
+  /** Gives back an input that will not be submitted. */
+  void releaseInput(InputBuffer input) {
+    freeInputs.add(input);
+  }
+
+  /** Writes a bitmap of the model input size into an acquired input. */
+  void writeInput(InputBuffer input, Bitmap bitmap) {
+    bitmap.getPixels(
+        input.intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    long startTime = SystemClock.uptimeMillis();
+    input.tensorWriter.write(input.intValues);
+    long endTime = SystemClock.uptimeMillis();
+    Log.d(TAG, "Timecost to put values into ByteBuffer: " + Long.toString(endTime - startTime));
+  }
+
+  /**
+   * Classifies the oldest submitted input, then frees the input.
+   *
+   * @return Whether an input was submitted.
+   */
+  boolean classifySubmitted(SpannableStringBuilder builder) {
+    final InputBuffer input = submittedInputs.poll();
+    if (input == null) {
+      return false;
+    }
+    try {
+      classify(input, builder);
+    } finally {
+      freeInputs.add(input);
+    }
+    return true;
   }
 
   /** Classifies a frame from the preview stream. */
   void classifyFrame(Bitmap bitmap, SpannableStringBuilder builder) {
+    final InputBuffer input = acquireInput();
+    if (input == null) {
+      Log.w(TAG, "No free input; Skipped.");
+      return;
+    }
+    writeInput(input, bitmap);
+    try {
+      classify(input, builder);
+    } finally {
+      releaseInput(input);
+    }
+  }
+
+  /**
+   * Runs inference on an input and prints the results. Serialized with the interpreter settings,
+   * so that they never change under a running inference.
+   */
+  private synchronized void classify(InputBuffer input, SpannableStringBuilder builder) {
     printTopKLabels(builder);
 
     if (tflite == null) {
       Log.e(TAG, "Image classifier has not been initialized; Skipped.");
       builder.append(new SpannableString("Uninitialized Classifier."));
+      return;
     }
-    convertBitmapToByteBuffer(bitmap);
     // Here's where the magic happens!!!
     long startTime = SystemClock.uptimeMillis();
-    runInference();
+    input.imgData.rewind();
+    runInference(input.imgData);
     long endTime = SystemClock.uptimeMillis();
     Log.d(TAG, "Timecost to run model inference: " + Long.toString(endTime - startTime));
 
@@ -150,16 +257,16 @@ public abstract class ImageClassifier {
     }
   }
 
-  public void setUseNNAPI(Boolean nnapi) {
+  public synchronized void setUseNNAPI(Boolean nnapi) {
     if (tflite != null) tflite.setUseNNAPI(nnapi);
   }
 
-  public void setNumThreads(int num_threads) {
+  public synchronized void setNumThreads(int num_threads) {
     if (tflite != null) tflite.setNumThreads(num_threads);
   }
 
-  /** Closes tflite to release resources. */
-  public void close() {
+  /** Closes tflite to release resources, once any running inference is done. */
+  public synchronized void close() {
     tflite.close();
     tflite = null;
   }
@@ -191,26 +298,6 @@ public abstract class ImageClassifier {
     return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
   }
 
-  /** Writes Image data into a {@code ByteBuffer}. */
-  private void convertBitmapToByteBuffer(Bitmap bitmap) {
-    if (imgData == null) {
-      return;
-    }
-    imgData.rewind();
-    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-    // Convert the image to floating point.
-    int pixel = 0;
-    long startTime = SystemClock.uptimeMillis();
-    for (int i = 0; i < getImageSizeX(); ++i) {
-      for (int j = 0; j < getImageSizeY(); ++j) {
-        final int val = intValues[pixel++];
-        addPixelValue(val);
-      }
-    }
-    long endTime = SystemClock.uptimeMillis();
-    Log.d(TAG, "Timecost to put values into ByteBuffe`r: " + Long.toString(endTime - startTime));
-  }
-
   /** Prints top-K labels, to be shown in UI as the results. */
   private void printTopKLabels(SpannableStringBuilder builder) {
     for (int i = 0; i < getNumLabels(); ++i) {
@@ -279,11 +366,18 @@ public abstract class ImageClassifier {
   protected abstract int getNumBytesPerChannel();
 
   /**
-   * Add pixelValue to byteBuffer.
+   * Get the value subtracted from each channel of a float model input.
    *
-   * @param pixelValue
+   * @return
    */
-  protected abstract void addPixelValue(int pixelValue);
+  protected abstract float getImageMean();
+
+  /**
+   * Get the value each channel of a float model input is divided by.
+   *
+   * @return
+   */
+  protected abstract float getImageStd();
 
   /**
    * Read the probability value for the specified label This is either the original value as it was
@@ -311,13 +405,15 @@ public abstract class ImageClassifier {
   protected abstract float getNormalizedProbability(int labelIndex);
 
   /**
-   * Run inference using the prepared input in {@link #imgData}. Afterwards, the result will be
-   * provided by getProbability().
+   * Run inference using a prepared input. Afterwards, the result will be provided by
+   * getProbability().
    *
    * <p>This additional method is necessary, because we don't have a common base for different
    * primitive data types.
+   *
+   * @param imgData The image data to feed into Tensorflow Lite, rewound.
    */
-  protected abstract void runInference();
+  protected abstract void runInference(ByteBuffer imgData);
 
   /**
    * Get the total number of labels.
@@ -17,6 +17,7 @@ package org.tensorflow.lite.examples.gesture;
 
 import android.app.Activity;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * This classifier works with the Inception-v3 slim model. It applies floating point inference
@@ -73,11 +74,15 @@ public class ImageClassifierFloatInception extends ImageClassifier {
   }
 
   @Override
-  protected void addPixelValue(int pixelValue) {
+  protected float getImageMean() {
+    // The model takes value / IMAGE_STD - IMAGE_MEAN, which is (value - IMAGE_MEAN * IMAGE_STD) /
+    // IMAGE_STD.
+    return IMAGE_MEAN * IMAGE_STD;
+  }
 
-    imgData.putFloat((((pixelValue >> 16) & 0xFF) / IMAGE_STD) - IMAGE_MEAN);
-    imgData.putFloat((((pixelValue >> 8) & 0xFF) / IMAGE_STD) - IMAGE_MEAN);
-    imgData.putFloat(((pixelValue & 0xFF) / IMAGE_STD) - IMAGE_MEAN);
+  @Override
+  protected float getImageStd() {
+    return IMAGE_STD;
   }
 
   @Override
@@ -97,7 +102,7 @@ public class ImageClassifierFloatInception extends ImageClassifier {
   }
 
   @Override
-  protected void runInference() {
+  protected void runInference(ByteBuffer imgData) {
     tflite.run(imgData, labelProbArray);
   }
 }
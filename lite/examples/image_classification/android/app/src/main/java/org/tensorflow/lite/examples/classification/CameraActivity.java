@@ -59,8 +59,9 @@ import android.widget.TextView;
 import android.widget.Toast;
 import java.nio.ByteBuffer;
 import java.util.List;
-import org.tensorflow.lite.examples.classification.env.ImageUtils;
 import org.tensorflow.lite.examples.classification.env.Logger;
+import org.tensorflow.lite.examples.classification.env.YuvFrame;
+import org.tensorflow.lite.examples.classification.env.YuvToRgbConverter;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Model;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Recognition;
@@ -83,17 +84,19 @@ public abstract class CameraActivity extends AppCompatActivity
   private static final int PERMISSIONS_REQUEST = 1;
 
   private static final String PERMISSION_CAMERA = Manifest.permission.CAMERA;
+  // Upper bound on the threads converting camera frames to RGB.
+  private static final int MAX_CONVERSION_THREADS = 4;
   protected int previewWidth = 0;
   protected int previewHeight = 0;
   private Handler handler;
   private HandlerThread handlerThread;
   private boolean useCamera2API;
   private boolean isProcessingFrame = false;
-  private byte[][] yuvBytes = new byte[3][];
   private int[] rgbBytes = null;
-  private int yRowStride;
   private Runnable postInferenceCallback;
   private Runnable imageConverter;
+  private YuvFrame yuvFrame = null;
+  private YuvToRgbConverter yuvToRgbConverter;
   private LinearLayout bottomSheetLayout;
   private LinearLayout gestureLayout;
   private BottomSheetBehavior sheetBehavior;
@@ -154,6 +157,9 @@ public abstract class CameraActivity extends AppCompatActivity
   protected void onCreate(final Bundle savedInstanceState) {
     LOGGER.d("onCreate " + this);
     super.onCreate(null);
+    yuvToRgbConverter =
+        new YuvToRgbConverter(
+            Math.min(MAX_CONVERSION_THREADS, Runtime.getRuntime().availableProcessors()));
     getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
     setContentView(R.layout.activity_camera);
@@ -278,11 +284,20 @@ public abstract class CameraActivity extends AppCompatActivity
   }
 
   protected int getLuminanceStride() {
-    return yRowStride;
+    return yuvFrame.getYRowStride();
   }
 
-  protected byte[] getLuminance() {
-    return yuvBytes[0];
+  protected ByteBuffer getLuminance() {
+    return yuvFrame.getYPlane();
+  }
+
+  /**
+   * Returns the planes of the current frame, read in place from the camera's buffers. The frame
+   * must be released, either through {@link YuvFrame#release()} or {@link #readyForNextImage()},
+   * before the next one is delivered.
+   */
+  protected YuvFrame getYuvFrame() {
+    return yuvFrame;
   }
 
   /** Callback for android.hardware.Camera API */
@@ -308,23 +323,38 @@ public abstract class CameraActivity extends AppCompatActivity
     }
 
     isProcessingFrame = true;
-    yuvBytes[0] = bytes;
-    yRowStride = previewWidth;
 
-    imageConverter =
+    postInferenceCallback =
         new Runnable() {
           @Override
           public void run() {
-            ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
+            camera.addCallbackBuffer(bytes);
+            isProcessingFrame = false;
           }
         };
 
-    postInferenceCallback =
+    // NV21 is a full resolution Y plane followed by interleaved V and U samples, so the chroma
+    // planes are views into the same array with a pixel stride of two.
+    final int frameSize = previewWidth * previewHeight;
+    if (yuvFrame == null) {
+      yuvFrame = new YuvFrame();
+    }
+    yuvFrame.set(
+        ByteBuffer.wrap(bytes, 0, frameSize).slice(),
+        ByteBuffer.wrap(bytes, frameSize + 1, bytes.length - frameSize - 1).slice(),
+        ByteBuffer.wrap(bytes, frameSize, bytes.length - frameSize).slice(),
+        previewWidth,
+        previewHeight,
+        previewWidth,
+        previewWidth,
+        2,
+        postInferenceCallback);
+
+    imageConverter =
         new Runnable() {
           @Override
           public void run() {
-            camera.addCallbackBuffer(bytes);
-            isProcessingFrame = false;
+            yuvToRgbConverter.convert(yuvFrame, rgbBytes);
           }
         };
     processImage();
@@ -354,34 +384,38 @@ public abstract class CameraActivity extends AppCompatActivity
       isProcessingFrame = true;
       Trace.beginSection("imageAvailable");
       final Plane[] planes = image.getPlanes();
-      fillBytes(planes, yuvBytes);
-      yRowStride = planes[0].getRowStride();
       final int uvRowStride = planes[1].getRowStride();
       final int uvPixelStride = planes[1].getPixelStride();
 
-      imageConverter =
+      postInferenceCallback =
           new Runnable() {
             @Override
             public void run() {
-              ImageUtils.convertYUV420ToARGB8888(
-                  yuvBytes[0],
-                  yuvBytes[1],
-                  yuvBytes[2],
-                  previewWidth,
-                  previewHeight,
-                  yRowStride,
-                  uvRowStride,
-                  uvPixelStride,
-                  rgbBytes);
+              image.close();
+              isProcessingFrame = false;
             }
           };
 
-      postInferenceCallback =
+      // The planes are read straight from the image, which stays open until the frame is released.
+      if (yuvFrame == null) {
+        yuvFrame = new YuvFrame();
+      }
+      yuvFrame.set(
+          planes[0].getBuffer(),
+          planes[1].getBuffer(),
+          planes[2].getBuffer(),
+          previewWidth,
+          previewHeight,
+          planes[0].getRowStride(),
+          uvRowStride,
+          uvPixelStride,
+          postInferenceCallback);
+
+      imageConverter =
           new Runnable() {
             @Override
             public void run() {
-              image.close();
-              isProcessingFrame = false;
+              yuvToRgbConverter.convert(yuvFrame, rgbBytes);
             }
           };
 
@@ -435,6 +469,7 @@ public abstract class CameraActivity extends AppCompatActivity
   @Override
   public synchronized void onDestroy() {
     LOGGER.d("onDestroy " + this);
+    yuvToRgbConverter.close();
     super.onDestroy();
   }
 
@@ -558,19 +593,6 @@ public abstract class CameraActivity extends AppCompatActivity
     getFragmentManager().beginTransaction().replace(R.id.container, fragment).commit();
   }
 
-  protected void fillBytes(final Plane[] planes, final byte[][] yuvBytes) {
-    // Because of the variable row stride it's not possible to know in
-    // advance the actual necessary dimensions of the yuv planes.
-    for (int i = 0; i < planes.length; ++i) {
-      final ByteBuffer buffer = planes[i].getBuffer();
-      if (yuvBytes[i] == null) {
-        LOGGER.d("Initializing buffer %d at size %d", i, buffer.capacity());
-        yuvBytes[i] = new byte[buffer.capacity()];
-      }
-      buffer.get(yuvBytes[i]);
-    }
-  }
-
   protected void readyForNextImage() {
     if (postInferenceCallback != null) {
       postInferenceCallback.run();
@@ -32,11 +32,15 @@ import java.util.List;
 
 import org.tensorflow.lite.examples.classification.customview.OverlayView;
 import org.tensorflow.lite.examples.classification.env.BorderedText;
+import org.tensorflow.lite.examples.classification.env.FrameScheduler;
 import org.tensorflow.lite.examples.classification.env.ImageUtils;
 import org.tensorflow.lite.examples.classification.env.Logger;
+import org.tensorflow.lite.examples.classification.env.MotionGate;
+import org.tensorflow.lite.examples.classification.env.YuvFrame;
 import org.tensorflow.lite.examples.classification.tflite.Classifier;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Device;
 import org.tensorflow.lite.examples.classification.tflite.Classifier.Model;
+import org.tensorflow.lite.examples.classification.tflite.PoseResult;
 import org.tensorflow.lite.examples.classification.tracking.MultiBoxTracker;
 
 public class ClassifierActivity extends CameraActivity implements OnImageAvailableListener {
@@ -44,17 +48,42 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
   private static final boolean MAINTAIN_ASPECT = true;
   private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
   private static final float TEXT_SIZE_DIP = 10;
+  // Write the model input straight from the camera's YUV planes instead of through a Bitmap.
+  private static final boolean FUSED_PREPROCESSING = true;
+  // Which frames to infer on.
+  private static final SchedulingMode SCHEDULING = SchedulingMode.MOTION_TRIGGERED;
+  // Minimum time between two inferences for the fixed interval and motion triggered modes.
+  private static final long INFERENCE_INTERVAL_MS = 0;
+  // Fraction of the time spent inferring in the latency budget mode.
+  private static final float INFERENCE_BUSY_FRACTION = 0.5f;
+  // Number of latest inferences their average latency is taken over.
+  private static final int LATENCY_WINDOW = 16;
+  // Number of frames in flight: the next frame is written into the model input on the camera
+  // thread while the previous one is being inferred in the background.
+  private static final int INFERENCE_DEPTH = 2;
+  // In the motion triggered mode, skip inference on frames whose luminance, sampled every
+  // MOTION_GATE_STEP pixels, differs from the last inferred frame by less than
+  // MOTION_GATE_THRESHOLD grey levels on average, but infer at least every MOTION_GATE_MAX_GATED
+  // frames due for inference.
+  private static final int MOTION_GATE_STEP = 8;
+  private static final float MOTION_GATE_THRESHOLD = 4.0f;
+  private static final int MOTION_GATE_MAX_GATED = 30;
   private Bitmap rgbFrameBitmap = null;
   private Bitmap croppedBitmap = null;
   private Bitmap cropCopyBitmap = null;
   private long lastProcessingTimeMs;
   private Integer sensorOrientation;
-  private Classifier classifier;
+  // Replaced on the background thread while the camera thread reads it.
+  private volatile Classifier classifier;
   private Matrix frameToCropTransform;
   private Matrix cropToFrameTransform;
   private BorderedText borderedText;
   OverlayView trackingOverlay;
   private MultiBoxTracker tracker;
+  private MotionGate motionGate;
+  // Poses of the frame last inferred, copied out of the classifier on the inference thread.
+  private PoseResult framePoses;
+  private FrameScheduler scheduler;
 
   @Override
   protected int getLayoutId() {
@@ -116,23 +145,76 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
               }
             });
     tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+    scheduler = new FrameScheduler(createSchedulingPolicy(), LATENCY_WINDOW, INFERENCE_DEPTH);
+  }
+
+  private FrameScheduler.Policy createSchedulingPolicy() {
+    switch (SCHEDULING) {
+      case LATENCY_BUDGET:
+        return new FrameScheduler.LatencyBudget(INFERENCE_BUSY_FRACTION);
+      case MOTION_TRIGGERED:
+        motionGate =
+            new MotionGate(
+                previewWidth,
+                previewHeight,
+                MOTION_GATE_STEP,
+                MOTION_GATE_THRESHOLD,
+                MOTION_GATE_MAX_GATED);
+        return new FrameScheduler.MotionTriggered(motionGate, INFERENCE_INTERVAL_MS);
+      case FIXED_INTERVAL:
+      default:
+        return new FrameScheduler.FixedInterval(INFERENCE_INTERVAL_MS);
+    }
   }
 
   @Override
   protected void processImage() {
+    // Frames arriving while the next frame already waits for the running inference are released at
+    // once rather than holding up the camera, so inference runs on fresh frames. Skipped frames
+    // keep the last poses.
+    final boolean hasLuminance = getYuvFrame() != null;
+    if (!scheduler.tryStart(
+        SystemClock.uptimeMillis(),
+        hasLuminance ? getLuminance() : null,
+        hasLuminance ? getLuminanceStride() : 0)) {
+      readyForNextImage();
+      return;
+    }
+    LOGGER.v("Scheduler: " + scheduler.getStatString());
 
-
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+    // The classifier may be replaced in the background meanwhile; the frame goes through the one
+    // whose input it is written into.
+    final Classifier frameClassifier = classifier;
+    final Classifier.InputBuffer input =
+        frameClassifier != null ? frameClassifier.acquireInput() : null;
+    if (input == null) {
+      scheduler.cancel();
+      readyForNextImage();
+      return;
+    }
+    scheduler.commit();
+    final long preprocessStartTime = SystemClock.uptimeMillis();
+    final YuvFrame yuvFrame = FUSED_PREPROCESSING ? getYuvFrame() : null;
+    if (yuvFrame != null) {
+      // Releases the frame as soon as the input is written.
+      frameClassifier.writeInput(input, yuvFrame, cropToFrameTransform);
+    } else {
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+      readyForNextImage();
+      final Canvas canvas = new Canvas(croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+      frameClassifier.writeInput(input, croppedBitmap);
+    }
+    frameClassifier.submitInput(input);
+    final long preprocessTimeMs = SystemClock.uptimeMillis() - preprocessStartTime;
     Log.v("MG:", "ProcessImage is reached");
     runInBackground(
         new Runnable() {
           @Override
           public void run() {
-            if (classifier != null) {
-              final long startTime = SystemClock.uptimeMillis();
-              final List<Classifier.Recognition> results = classifier.recognizeImage(croppedBitmap);
+            final long startTime = SystemClock.uptimeMillis();
+            final List<Classifier.Recognition> results = frameClassifier.recognizeSubmitted();
+            if (results != null) {
               lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
               LOGGER.v("Detect: %s", results);
               cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
@@ -144,23 +226,35 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
 //                      showResultsInBottomSheet(results);
                       showFrameInfo(previewWidth + "x" + previewHeight);
                       showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
-                      showCameraResolution(canvas.getWidth() + "x" + canvas.getHeight());
+                      showCameraResolution(
+                          croppedBitmap.getWidth() + "x" + croppedBitmap.getHeight());
                       showRotationInfo(String.valueOf(sensorOrientation));
                       showInference(lastProcessingTimeMs + "ms");
                     }
                   });
-              tracker.setPoses(results);
+              if (framePoses == null || framePoses.getCapacity() < frameClassifier.getMaxPoses()) {
+                framePoses = new PoseResult(frameClassifier.getMaxPoses());
+              }
+              tracker.setPoses(frameClassifier.getPoseResult(framePoses) ? framePoses : null);
               tracker.trackResults(results, (long)lastProcessingTimeMs);
               //tracker.draw_poses(canvas, results);
               trackingOverlay.postInvalidate();
             }
-            readyForNextImage();
+            scheduler.finish(preprocessTimeMs + SystemClock.uptimeMillis() - startTime);
           }
         });
 
 
   }
 
+  // How to pick the frames to infer on: at a fixed rate, at the rate keeping the interpreter busy
+  // for a fraction of the time, or at most at a fixed rate and only when the scene moved.
+  private enum SchedulingMode {
+    FIXED_INTERVAL,
+    LATENCY_BUDGET,
+    MOTION_TRIGGERED;
+  }
+
   @Override
   protected void onInferenceConfigurationChanged() {
     if (croppedBitmap == null) {
@@ -170,7 +264,16 @@ public class ClassifierActivity extends CameraActivity implements OnImageAvailab
     final Device device = getDevice();
     final Model model = getModel();
     final int numThreads = getNumThreads();
-    runInBackground(() -> recreateClassifier(model, device, numThreads));
+    runInBackground(
+        () -> {
+          recreateClassifier(model, device, numThreads);
+          if (motionGate != null) {
+            // The poses on screen came from the previous configuration. Reset on the inference
+            // thread, once the new classifier is in place, so that no frame of the old one is
+            // committed as the reference after it.
+            motionGate.reset();
+          }
+        });
   }
 
   private void recreateClassifier(Model model, Device device, int numThreads) {
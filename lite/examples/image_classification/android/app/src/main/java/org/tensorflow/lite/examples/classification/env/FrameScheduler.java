@@ -0,0 +1,270 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides which camera frames to run inference on, with a bounded number of inferences in flight:
+ * one, unless the processing is pipelined.
+ *
+ * <p>Frames are never queued: a frame arriving while no more inferences may start is dropped, so
+ * the next inference always starts on the freshest frame. Among the other frames, a {@link Policy}
+ * picks the inference rate from the rolling average of the latest inference latencies, and may
+ * turn down frames not worth inferring.
+ */
+public class FrameScheduler {
+  /** Picks the frames to infer among those arriving while an inference may start. */
+  public interface Policy {
+    /** Minimum time between the starts of two inferences, given their average latency. */
+    long getIntervalMs(float averageLatencyMs);
+
+    /** Whether a frame due for inference is worth inferring. */
+    boolean accept(ByteBuffer luminance, int rowStride);
+
+    /** Confirms that the frame last accepted is inferred. */
+    void commit();
+
+    /** Gives up the frame last accepted, which could not be inferred after all. */
+    void cancel();
+  }
+
+  /** Infers at a fixed rate, or as fast as inference goes if that is slower. */
+  public static class FixedInterval implements Policy {
+    private final long intervalMs;
+
+    public FixedInterval(final long intervalMs) {
+      this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public long getIntervalMs(final float averageLatencyMs) {
+      return intervalMs;
+    }
+
+    @Override
+    public boolean accept(final ByteBuffer luminance, final int rowStride) {
+      return true;
+    }
+
+    @Override
+    public void commit() {}
+
+    @Override
+    public void cancel() {}
+  }
+
+  /** Infers at the rate keeping inference busy for at most a fraction of the time. */
+  public static class LatencyBudget implements Policy {
+    private final float busyFraction;
+
+    /** @param busyFraction Fraction of the time, in (0, 1], spent running inference. */
+    public LatencyBudget(final float busyFraction) {
+      this.busyFraction = busyFraction;
+    }
+
+    @Override
+    public long getIntervalMs(final float averageLatencyMs) {
+      return (long) (averageLatencyMs / busyFraction);
+    }
+
+    @Override
+    public boolean accept(final ByteBuffer luminance, final int rowStride) {
+      return true;
+    }
+
+    @Override
+    public void commit() {}
+
+    @Override
+    public void cancel() {}
+  }
+
+  /** Infers at most at a fixed rate, and only on frames a {@link MotionGate} lets through. */
+  public static class MotionTriggered implements Policy {
+    private final MotionGate gate;
+    private final long minIntervalMs;
+
+    public MotionTriggered(final MotionGate gate, final long minIntervalMs) {
+      this.gate = gate;
+      this.minIntervalMs = minIntervalMs;
+    }
+
+    public MotionGate getGate() {
+      return gate;
+    }
+
+    @Override
+    public long getIntervalMs(final float averageLatencyMs) {
+      return minIntervalMs;
+    }
+
+    @Override
+    public boolean accept(final ByteBuffer luminance, final int rowStride) {
+      // Without the luminance there is no telling, so infer.
+      return luminance == null || gate.evaluate(luminance, rowStride);
+    }
+
+    @Override
+    public void commit() {
+      gate.commit();
+    }
+
+    @Override
+    public void cancel() {
+      gate.cancel();
+    }
+  }
+
+  private final Policy policy;
+  private final long[] latencies;
+  private int numLatencies;
+  private int nextLatency;
+  private long latencySum;
+
+  private final int maxInFlight;
+  private int inFlight;
+  private boolean started;
+  private long lastStartMs;
+  // Start before the last tryStart, restored if that start is cancelled.
+  private boolean previousStarted;
+  private long previousStartMs;
+
+  private long inferredFrames;
+  private long skippedFrames;
+  private long droppedFrames;
+
+  /**
+   * Creates a scheduler.
+   *
+   * @param policy Picks the frames to infer.
+   * @param latencyWindow Number of latest inferences the average latency is taken over.
+   */
+  public FrameScheduler(final Policy policy, final int latencyWindow) {
+    this(policy, latencyWindow, 1);
+  }
+
+  /**
+   * Creates a scheduler letting several inferences run at once, in the stages of a pipeline.
+   *
+   * @param policy Picks the frames to infer.
+   * @param latencyWindow Number of latest inferences the average latency is taken over.
+   * @param maxInFlight Maximum number of frames started and not yet finished.
+   */
+  public FrameScheduler(final Policy policy, final int latencyWindow, final int maxInFlight) {
+    this.policy = policy;
+    latencies = new long[latencyWindow];
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Decides whether to start an inference on a frame. Every {@code true} must be followed by a
+   * call to {@link #commit} once the frame is taken for inference and to {@link #finish} once the
+   * inference is done, or by a call to {@link #cancel}.
+   *
+   * @param nowMs The time the frame arrived, in milliseconds.
+   * @param luminance The Y plane of the frame, or null if not at hand.
+   * @param rowStride Number of bytes between the starts of two rows of the plane.
+   * @return Whether to run inference on the frame.
+   */
+  public synchronized boolean tryStart(
+      final long nowMs, final ByteBuffer luminance, final int rowStride) {
+    if (inFlight >= maxInFlight) {
+      ++droppedFrames;
+      return false;
+    }
+    if (started && nowMs - lastStartMs < policy.getIntervalMs(getAverageLatencyMs())) {
+      ++skippedFrames;
+      return false;
+    }
+    if (!policy.accept(luminance, rowStride)) {
+      ++skippedFrames;
+      return false;
+    }
+    ++inFlight;
+    previousStarted = started;
+    previousStartMs = lastStartMs;
+    started = true;
+    lastStartMs = nowMs;
+    ++inferredFrames;
+    return true;
+  }
+
+  /**
+   * Confirms that the frame of the last {@link #tryStart} is taken for inference, so the policy may
+   * start comparing the next frames against it.
+   */
+  public synchronized void commit() {
+    policy.commit();
+  }
+
+  /** Ends the running inference, which took {@code latencyMs}. */
+  public synchronized void finish(final long latencyMs) {
+    if (numLatencies == latencies.length) {
+      latencySum -= latencies[nextLatency];
+    } else {
+      ++numLatencies;
+    }
+    latencies[nextLatency] = latencyMs;
+    latencySum += latencyMs;
+    nextLatency = (nextLatency + 1) % latencies.length;
+    --inFlight;
+  }
+
+  /**
+   * Gives up the inference started by the last {@link #tryStart}, on a frame that could not be
+   * processed after all. The interval to the next start runs from the start before it again, so
+   * the next frame is not held back by one that was never inferred.
+   */
+  public synchronized void cancel() {
+    policy.cancel();
+    started = previousStarted;
+    lastStartMs = previousStartMs;
+    --inFlight;
+    --inferredFrames;
+    ++droppedFrames;
+  }
+
+  /** Average latency of the latest inferences, in milliseconds. */
+  public synchronized float getAverageLatencyMs() {
+    return numLatencies > 0 ? (float) latencySum / numLatencies : 0.0f;
+  }
+
+  public synchronized long getInferredFrames() {
+    return inferredFrames;
+  }
+
+  /** Number of frames the policy turned down. */
+  public synchronized long getSkippedFrames() {
+    return skippedFrames;
+  }
+
+  /** Number of frames arriving while no more inferences could start. */
+  public synchronized long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  public synchronized String getStatString() {
+    final float averageLatencyMs = getAverageLatencyMs();
+    return String.format(
+        "Inferred %d, skipped %d, dropped %d frames, latency %.1f ms, interval %d ms",
+        inferredFrames,
+        skippedFrames,
+        droppedFrames,
+        averageLatencyMs,
+        policy.getIntervalMs(averageLatencyMs));
+  }
+}
@@ -20,6 +20,7 @@ import android.graphics.Matrix;
 import android.os.Environment;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
 
 /** Utility class for manipulating images. */
 public class ImageUtils {
@@ -30,6 +31,24 @@ public class ImageUtils {
   @SuppressWarnings("unused")
   private static final Logger LOGGER = new Logger();
 
+  // Contributions of each plane value to the integer YUV2RGB formula, indexed by the unsigned
+  // value, so that a pixel costs three lookups and adds instead of three multiplies.
+  private static final int[] Y_TABLE = new int[256];
+  private static final int[] RV_TABLE = new int[256];
+  private static final int[] GV_TABLE = new int[256];
+  private static final int[] GU_TABLE = new int[256];
+  private static final int[] BU_TABLE = new int[256];
+
+  static {
+    for (int i = 0; i < 256; ++i) {
+      Y_TABLE[i] = 1192 * ((i - 16) < 0 ? 0 : (i - 16));
+      RV_TABLE[i] = 1634 * (i - 128);
+      GV_TABLE[i] = -833 * (i - 128);
+      GU_TABLE[i] = -400 * (i - 128);
+      BU_TABLE[i] = 2066 * (i - 128);
+    }
+  }
+
   /**
    * Utility method to compute the allocated size in bytes of a YUV420SP image of the given
    * dimensions.
@@ -151,6 +170,122 @@ public class ImageUtils {
     }
   }
 
+  /**
+   * Table driven equivalent of {@link #convertYUV420ToARGB8888(byte[], byte[], byte[], int, int,
+   * int, int, int, int[])} that reads the planes of {@code frame} in place and only converts the
+   * rows {@code [rowStart, rowEnd)}. The chroma contributions are looked up once per 2x2 block and
+   * the output is bit-identical. {@code rowStart} must be even so that disjoint row ranges can be
+   * converted concurrently.
+   */
+  public static void convertYUV420ToARGB8888(
+      final YuvFrame frame, final int[] out, final int rowStart, final int rowEnd) {
+    final ByteBuffer yData = frame.getYPlane();
+    final ByteBuffer uData = frame.getUPlane();
+    final ByteBuffer vData = frame.getVPlane();
+    final int width = frame.getWidth();
+    final int yRowStride = frame.getYRowStride();
+    final int uvRowStride = frame.getUvRowStride();
+    final int uvPixelStride = frame.getUvPixelStride();
+
+    for (int j = rowStart; j < rowEnd; j += 2) {
+      final boolean hasSecondRow = j + 1 < rowEnd;
+      final int pY0 = yRowStride * j;
+      final int pY1 = pY0 + yRowStride;
+      final int pUV = uvRowStride * (j >> 1);
+      final int out0 = width * j;
+      final int out1 = out0 + width;
+
+      for (int i = 0; i < width; i += 2) {
+        final int uvOffset = pUV + (i >> 1) * uvPixelStride;
+        final int u = 0xff & uData.get(uvOffset);
+        final int v = 0xff & vData.get(uvOffset);
+        final int rv = RV_TABLE[v];
+        final int guv = GV_TABLE[v] + GU_TABLE[u];
+        final int bu = BU_TABLE[u];
+        final boolean hasSecondColumn = i + 1 < width;
+
+        out[out0 + i] = tableToARGB(Y_TABLE[0xff & yData.get(pY0 + i)], rv, guv, bu);
+        if (hasSecondColumn) {
+          out[out0 + i + 1] = tableToARGB(Y_TABLE[0xff & yData.get(pY0 + i + 1)], rv, guv, bu);
+        }
+        if (hasSecondRow) {
+          out[out1 + i] = tableToARGB(Y_TABLE[0xff & yData.get(pY1 + i)], rv, guv, bu);
+          if (hasSecondColumn) {
+            out[out1 + i + 1] = tableToARGB(Y_TABLE[0xff & yData.get(pY1 + i + 1)], rv, guv, bu);
+          }
+        }
+      }
+    }
+  }
+
+  private static int tableToARGB(final int y1192, final int rv, final int guv, final int bu) {
+    int r = y1192 + rv;
+    int g = y1192 + guv;
+    int b = y1192 + bu;
+
+    // Clipping RGB values to be inside boundaries [ 0 , kMaxChannelValue ]
+    r = r > kMaxChannelValue ? kMaxChannelValue : (r < 0 ? 0 : r);
+    g = g > kMaxChannelValue ? kMaxChannelValue : (g < 0 ? 0 : g);
+    b = b > kMaxChannelValue ? kMaxChannelValue : (b < 0 ? 0 : b);
+
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  /**
+   * Samples one row of a model input straight from a YUV420 frame, fusing the YUV to ARGB
+   * conversion and the crop/rotate/scale through a Canvas into a single pass.
+   *
+   * <p>Each destination pixel is sampled nearest-neighbour at its centre, as an unfiltered {@code
+   * Canvas.drawBitmap} would do. Destination pixels falling outside of the frame are written as
+   * black. Only affine transforms are supported. The planes are read in place and the frame is not
+   * released.
+   *
+   * @param frame The source frame.
+   * @param cropToFrame The 3x3 matrix, as returned by {@code Matrix.getValues}, mapping destination
+   *     pixel coordinates into frame coordinates.
+   * @param dstRow The destination row to sample.
+   * @param dstWidth Width of the model input.
+   * @param out Receives the {@code dstWidth} ARGB pixels of the row.
+   */
+  public static void sampleYUV420ToARGB8888Row(
+      final YuvFrame frame,
+      final float[] cropToFrame,
+      final int dstRow,
+      final int dstWidth,
+      final int[] out) {
+    final ByteBuffer yData = frame.getYPlane();
+    final ByteBuffer uData = frame.getUPlane();
+    final ByteBuffer vData = frame.getVPlane();
+    final int srcWidth = frame.getWidth();
+    final int srcHeight = frame.getHeight();
+    final int yRowStride = frame.getYRowStride();
+    final int uvRowStride = frame.getUvRowStride();
+    final int uvPixelStride = frame.getUvPixelStride();
+
+    final float dy = dstRow + 0.5f;
+    final float rowX = cropToFrame[1] * dy + cropToFrame[2];
+    final float rowY = cropToFrame[4] * dy + cropToFrame[5];
+    final float scaleX = cropToFrame[0];
+    final float skewY = cropToFrame[3];
+
+    for (int i = 0; i < dstWidth; ++i) {
+      final float dx = i + 0.5f;
+      final int sx = (int) Math.floor(scaleX * dx + rowX);
+      final int sy = (int) Math.floor(skewY * dx + rowY);
+
+      if (sx >= 0 && sx < srcWidth && sy >= 0 && sy < srcHeight) {
+        final int uvOffset = uvRowStride * (sy >> 1) + (sx >> 1) * uvPixelStride;
+        out[i] =
+            YUV2RGB(
+                0xff & yData.get(yRowStride * sy + sx),
+                0xff & uData.get(uvOffset),
+                0xff & vData.get(uvOffset));
+      } else {
+        out[i] = 0xff000000;
+      }
+    }
+  }
+
   /**
    * Returns a transformation matrix from one reference frame into another. Handles cropping (if
    * maintaining aspect ratio is desired) and rotation.
@@ -0,0 +1,166 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides whether a camera frame changed enough since the last inferred one to be worth running
+ * inference on again.
+ *
+ * <p>The luminance plane is sampled on a sparse grid, and the mean absolute difference of the
+ * samples against those of the last inferred frame is compared to a threshold in grey levels.
+ * Comparing against the last inferred frame rather than the previous one lets slow changes add up
+ * until they pass the threshold. A frame is inferred regardless after a maximum number of gated
+ * ones, so the results never go stale for good. The samples are kept in two reused arrays.
+ */
+public class MotionGate {
+  private final int width;
+  private final int height;
+  private final int step;
+  private final float threshold;
+  private final int maxGatedFrames;
+
+  private byte[] reference;
+  private byte[] samples;
+  private boolean hasReference;
+  // Whether the samples hold a frame let through and not yet committed or cancelled.
+  private boolean pending;
+  private int gatedInARow;
+
+  private long inferredFrames;
+  private long gatedFrames;
+  private float lastDifference;
+
+  /**
+   * Creates a gate.
+   *
+   * @param width Width of the frames.
+   * @param height Height of the frames.
+   * @param step Distance, in pixels, between two samples along each axis.
+   * @param threshold Mean absolute difference, in grey levels, from which a frame is inferred.
+   * @param maxGatedFrames Maximum number of frames gated in a row.
+   */
+  public MotionGate(
+      final int width,
+      final int height,
+      final int step,
+      final float threshold,
+      final int maxGatedFrames) {
+    this.width = width;
+    this.height = height;
+    this.step = step;
+    this.threshold = threshold;
+    this.maxGatedFrames = maxGatedFrames;
+    final int numSamples = ((width + step - 1) / step) * ((height + step - 1) / step);
+    reference = new byte[numSamples];
+    samples = new byte[numSamples];
+  }
+
+  /**
+   * Samples a frame and decides whether to run inference on it. The frame only becomes the one the
+   * next frames are compared against once {@link #commit} confirms that it is inferred; until then,
+   * or after {@link #cancel}, the reference stays the last inferred frame.
+   *
+   * @param luminance The Y plane of the frame. Its position is left unchanged.
+   * @param rowStride Number of bytes between the starts of two rows.
+   * @return Whether to run inference on the frame.
+   */
+  public synchronized boolean evaluate(final ByteBuffer luminance, final int rowStride) {
+    long sum = 0;
+    int count = 0;
+    for (int y = 0; y < height; y += step) {
+      final int row = y * rowStride;
+      for (int x = 0; x < width; x += step, ++count) {
+        final byte sample = luminance.get(row + x);
+        sum += Math.abs((sample & 0xFF) - (reference[count] & 0xFF));
+        samples[count] = sample;
+      }
+    }
+    lastDifference = (float) sum / count;
+
+    if (hasReference && lastDifference < threshold && gatedInARow < maxGatedFrames) {
+      pending = false;
+      ++gatedInARow;
+      ++gatedFrames;
+      return false;
+    }
+    pending = true;
+    return true;
+  }
+
+  /** Makes the frame last let through by {@link #evaluate} the reference, as it is inferred. */
+  public synchronized void commit() {
+    if (!pending) {
+      return;
+    }
+    pending = false;
+    final byte[] swap = reference;
+    reference = samples;
+    samples = swap;
+    hasReference = true;
+    gatedInARow = 0;
+    ++inferredFrames;
+  }
+
+  /** Forgets the frame last let through by {@link #evaluate}, as it could not be inferred. */
+  public synchronized void cancel() {
+    pending = false;
+  }
+
+  /** Evaluates a frame and commits it at once if it is let through. */
+  public synchronized boolean shouldInfer(final ByteBuffer luminance, final int rowStride) {
+    if (!evaluate(luminance, rowStride)) {
+      return false;
+    }
+    commit();
+    return true;
+  }
+
+  /**
+   * Makes the next frame be inferred, e.g. after the model changed. A frame let through before the
+   * reset does not become the reference when committed after it, as it was inferred by the old
+   * model.
+   */
+  public synchronized void reset() {
+    hasReference = false;
+    pending = false;
+  }
+
+  public synchronized long getInferredFrames() {
+    return inferredFrames;
+  }
+
+  public synchronized long getGatedFrames() {
+    return gatedFrames;
+  }
+
+  /** Mean absolute difference of the last frame sampled, in grey levels. */
+  public synchronized float getLastDifference() {
+    return lastDifference;
+  }
+
+  public synchronized String getStatString() {
+    final long total = inferredFrames + gatedFrames;
+    return String.format(
+        "Inferred %d, gated %d of %d frames (%.0f%%), last difference %.1f",
+        inferredFrames,
+        gatedFrames,
+        total,
+        total > 0 ? 100.0f * gatedFrames / total : 0.0f,
+        lastDifference);
+  }
+}
@@ -0,0 +1,108 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The planes and strides of a single YUV_420_888 camera frame, read in place from the camera's
+ * buffers. Instances are reused from frame to frame, so consumers must not hold on to one after
+ * releasing it.
+ */
+public class YuvFrame {
+  private ByteBuffer yPlane;
+  private ByteBuffer uPlane;
+  private ByteBuffer vPlane;
+  private int width;
+  private int height;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private Runnable releaseCallback;
+
+  /**
+   * Points this frame at a new set of planes.
+   *
+   * @param releaseCallback Hands the underlying buffers back to the camera.
+   */
+  public synchronized void set(
+      final ByteBuffer yPlane,
+      final ByteBuffer uPlane,
+      final ByteBuffer vPlane,
+      final int width,
+      final int height,
+      final int yRowStride,
+      final int uvRowStride,
+      final int uvPixelStride,
+      final Runnable releaseCallback) {
+    this.yPlane = yPlane;
+    this.uPlane = uPlane;
+    this.vPlane = vPlane;
+    this.width = width;
+    this.height = height;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+    this.releaseCallback = releaseCallback;
+  }
+
+  /**
+   * Hands the planes back to the camera so that the next frame can be delivered. Must be called
+   * exactly once per frame, as soon as the planes are no longer read.
+   */
+  public void release() {
+    final Runnable callback;
+    synchronized (this) {
+      callback = releaseCallback;
+      releaseCallback = null;
+    }
+    if (callback != null) {
+      callback.run();
+    }
+  }
+
+  public ByteBuffer getYPlane() {
+    return yPlane;
+  }
+
+  public ByteBuffer getUPlane() {
+    return uPlane;
+  }
+
+  public ByteBuffer getVPlane() {
+    return vPlane;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public int getYRowStride() {
+    return yRowStride;
+  }
+
+  public int getUvRowStride() {
+    return uvRowStride;
+  }
+
+  public int getUvPixelStride() {
+    return uvPixelStride;
+  }
+}
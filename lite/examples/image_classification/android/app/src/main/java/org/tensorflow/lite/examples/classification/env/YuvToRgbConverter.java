@@ -0,0 +1,135 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.env;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Converts YUV420 frames to ARGB8888 by splitting the rows into bands and running the table driven
+ * {@link ImageUtils} kernel on a fixed pool of worker threads. The calling thread converts the
+ * last band itself, so a converter with one band never hands work to another thread.
+ */
+public class YuvToRgbConverter {
+  private static final Logger LOGGER = new Logger();
+
+  private final int numBands;
+  private final ExecutorService executor;
+  private final Band[] bands;
+
+  // Arguments of the conversion in progress, published to the workers by ExecutorService.execute.
+  private YuvFrame frame;
+  private int[] out;
+  private CountDownLatch pending;
+
+  /**
+   * Creates a converter.
+   *
+   * @param numBands The number of row bands each frame is split into, one per thread.
+   */
+  public YuvToRgbConverter(final int numBands) {
+    this.numBands = Math.max(1, numBands);
+    bands = new Band[this.numBands];
+    for (int i = 0; i < this.numBands; ++i) {
+      bands[i] = new Band(i);
+    }
+    executor =
+        this.numBands > 1
+            ? Executors.newFixedThreadPool(
+                this.numBands - 1,
+                new ThreadFactory() {
+                  private int count = 0;
+
+                  @Override
+                  public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "yuv-to-rgb-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                  }
+                })
+            : null;
+  }
+
+  /**
+   * Converts a frame to ARGB8888, bit-identical to {@link
+   * ImageUtils#convertYUV420ToARGB8888(byte[], byte[], byte[], int, int, int, int, int, int[])}.
+   * Returns once the whole frame has been written. Not reentrant.
+   */
+  public void convert(final YuvFrame frame, final int[] out) {
+    this.frame = frame;
+    this.out = out;
+
+    // Checking for shutdown and handing out the bands is atomic with respect to close(), which the
+    // activity calls while frames may still arrive; bands handed out before it still run.
+    synchronized (this) {
+      if (executor == null || executor.isShutdown()) {
+        pending = null;
+      } else {
+        pending = new CountDownLatch(numBands - 1);
+        for (int i = 0; i < numBands - 1; ++i) {
+          executor.execute(bands[i]);
+        }
+      }
+    }
+    if (pending == null) {
+      ImageUtils.convertYUV420ToARGB8888(frame, out, 0, frame.getHeight());
+      return;
+    }
+
+    bands[numBands - 1].convert();
+    try {
+      pending.await();
+    } catch (final InterruptedException e) {
+      LOGGER.e(e, "Interrupted while converting frame.");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Stops the worker threads. Later conversions run on the calling thread only. */
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  private class Band implements Runnable {
+    private final int index;
+
+    Band(final int index) {
+      this.index = index;
+    }
+
+    void convert() {
+      // Bands start on even rows so that no 2x2 chroma block is shared between two of them.
+      final int height = frame.getHeight();
+      final int rowPairs = (height + 1) / 2;
+      final int rowStart = 2 * (rowPairs * index / numBands);
+      final int rowEnd = Math.min(height, 2 * (rowPairs * (index + 1) / numBands));
+      ImageUtils.convertYUV420ToARGB8888(frame, out, rowStart, rowEnd);
+    }
+
+    @Override
+    public void run() {
+      try {
+        convert();
+      } finally {
+        pending.countDown();
+      }
+    }
+  }
+}
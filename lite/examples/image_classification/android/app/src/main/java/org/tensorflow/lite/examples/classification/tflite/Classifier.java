@@ -18,6 +18,7 @@ package org.tensorflow.lite.examples.classification.tflite;
 import android.app.Activity;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.os.SystemClock;
 import android.os.Trace;
@@ -35,8 +36,10 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.examples.classification.env.Logger;
+import org.tensorflow.lite.examples.classification.env.YuvFrame;
 import org.tensorflow.lite.gpu.GpuDelegate;
 
 /** A classifier specialized to label images using TensorFlow Lite. */
@@ -64,8 +67,8 @@ public abstract class Classifier {
 
   private static final int DIM_PIXEL_SIZE = 3;
 
-  /** Preallocated buffers for storing image data in. */
-  private final int[] intValues = new int[getImageSizeX() * getImageSizeY()];
+  /** Number of model inputs: one can be written while the previous one is being inferred. */
+  private static final int NUM_INPUT_BUFFERS = 2;
 
   /** Options for configuring the Interpreter. */
   private final Interpreter.Options tfliteOptions = new Interpreter.Options();
@@ -79,11 +82,24 @@ public abstract class Classifier {
   /** Optional GPU delegate for accleration. */
   private GpuDelegate gpuDelegate = null;
 
-  /** An instance of the driver class to run model inference with Tensorflow Lite. */
-  protected Interpreter tflite;
+  /**
+   * The interpreters to run model inference with Tensorflow Lite, sharing the loaded model, so that
+   * inputs submitted from several threads are inferred at once.
+   */
+  private final InterpreterPool interpreters;
+
+  /** Whether {@link #close} was called; inferences handed in afterwards are skipped. */
+  private volatile boolean closed;
+
+  /** The people found by the last inference to finish, for models that detect poses. */
+  private final Object poseResultLock = new Object();
+  private PoseResult lastPoseResult;
 
-  /** A ByteBuffer to hold image data, to be feed into Tensorflow Lite as inputs. */
-  protected ByteBuffer imgData = null;
+  /** Inputs free to be written, and inputs written and waiting for inference, oldest first. */
+  private final ArrayBlockingQueue<InputBuffer> freeInputs =
+      new ArrayBlockingQueue<InputBuffer>(NUM_INPUT_BUFFERS);
+  private final ArrayBlockingQueue<InputBuffer> submittedInputs =
+      new ArrayBlockingQueue<InputBuffer>(NUM_INPUT_BUFFERS);
 
   /**
    * Creates a classifier with the provided configuration.
@@ -173,6 +189,32 @@ public abstract class Classifier {
     }
   }
 
+  /**
+   * A model input, with the buffers it is written from. An input is acquired from the classifier,
+   * written, then either submitted for inference or released unused; an input submitted goes back
+   * to the free ones once inferred.
+   */
+  public static class InputBuffer {
+    /** Holds the image data fed into Tensorflow Lite. */
+    private final ByteBuffer imgData;
+
+    /** Normalizes pixels into {@link #imgData} a row at a time. */
+    private final TensorWriter tensorWriter;
+
+    /** Pixels of the bitmap being written. */
+    private final int[] intValues;
+
+    /** Values of the crop to frame transform handed to the fused YUV preprocessing. */
+    private final float[] cropToFrameValues = new float[9];
+
+    private InputBuffer(
+        final ByteBuffer imgData, final TensorWriter tensorWriter, final int numPixels) {
+      this.imgData = imgData;
+      this.tensorWriter = tensorWriter;
+      intValues = new int[numPixels];
+    }
+  }
+
   /** Initializes a {@code Classifier}. */
   protected Classifier(Activity activity, Device device, int numThreads) throws IOException {
     Log.v("MG", "Start to load mobilenet");
@@ -190,18 +232,16 @@ public abstract class Classifier {
         break;
     }
     tfliteOptions.setNumThreads(numThreads);
-    tflite = new Interpreter(tfliteModel, tfliteOptions);
+    // A delegate serves a single interpreter.
+    final int numInterpreters =
+        gpuDelegate != null ? 1 : InterpreterPool.getDefaultSize(numThreads);
+    interpreters = new InterpreterPool(tfliteModel, tfliteOptions, numInterpreters);
 
     labels = loadLabelList(activity);
     LOGGER.v("MG", "labels loaded, labels.size() =" + labels.size());
-    imgData =
-        ByteBuffer.allocateDirect(
-            DIM_BATCH_SIZE
-                * getImageSizeX()
-                * getImageSizeY()
-                * DIM_PIXEL_SIZE
-                * getNumBytesPerChannel());
-    imgData.order(ByteOrder.nativeOrder());
+    for (int i = 0; i < NUM_INPUT_BUFFERS; ++i) {
+      freeInputs.add(createInputBuffer());
+    }
     LOGGER.d("Created a Tensorflow Lite Image Classifier.");
   }
 
@@ -230,46 +270,178 @@ public abstract class Classifier {
     return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
   }
 
-  /** Writes Image data into a {@code ByteBuffer}. */
-  private void convertBitmapToByteBuffer(Bitmap bitmap) {
-    if (imgData == null) {
-      return;
-    }
-    imgData.rewind();
-    int mBitmapWidth = bitmap.getWidth();
-    int mBitmapHeight = bitmap.getHeight();
-    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-    // Convert the image to floating point.
-    int pixel = 0;
-    int mImageSizeY = getImageSizeY();
-    int mImageSizeX = getImageSizeX();
-    long startTime = SystemClock.uptimeMillis();
-    for (int i = 0; i < getImageSizeX(); ++i) {
-      for (int j = 0; j < getImageSizeY(); ++j) {
-        final int val = intValues[pixel++];
-        addPixelValue(val);
+  private InputBuffer createInputBuffer() {
+    final ByteBuffer imgData =
+        ByteBuffer.allocateDirect(
+            DIM_BATCH_SIZE
+                * getImageSizeX()
+                * getImageSizeY()
+                * DIM_PIXEL_SIZE
+                * getNumBytesPerChannel());
+    imgData.order(ByteOrder.nativeOrder());
+    final TensorWriter tensorWriter =
+        getNumBytesPerChannel() == 1
+            ? new TensorWriter(imgData, getImageSizeX(), getImageSizeY())
+            : new TensorWriter(
+                imgData, getImageSizeX(), getImageSizeY(), getImageMean(), getImageStd());
+    return new InputBuffer(imgData, tensorWriter, getImageSizeX() * getImageSizeY());
+  }
+
+  /**
+   * Takes a free model input to write the next frame into. Inputs are acquired, written and
+   * submitted from one producer thread while inference runs on another, so that the next frame is
+   * preprocessed during the inference of the previous one.
+   *
+   * @return The input, or null if all of them are written or being inferred.
+   */
+  public InputBuffer acquireInput() {
+    return freeInputs.poll();
+  }
+
+  /** Takes a free model input, waiting for one to be freed if need be. */
+  private InputBuffer takeInput() {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return freeInputs.take();
+        } catch (final InterruptedException e) {
+          // Inputs are freed as soon as their inference ends, so finish the wait.
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
       }
     }
-    long endTime = SystemClock.uptimeMillis();
-    LOGGER.v("Timecost to put values into ByteBuffer: " + (endTime - startTime));
   }
 
-  /** Runs inference and returns the classification results. */
-  public List<Recognition> recognizeImage(final Bitmap bitmap) {
-    // Log this method so that it can be analyzed with systrace.
-    Trace.beginSection("recognizeImage");
+  /** Hands an input written since {@link #acquireInput} over to the next inference. */
+  public void submitInput(final InputBuffer input) {
+    submittedInputs.add(input);
+  }
 
+  /** Gives back an input that will not be submitted. */
+  public void releaseInput(final InputBuffer input) {
+    freeInputs.add(input);
+  }
+
+  /** Writes a bitmap of the model input size into an acquired input. */
+  public void writeInput(final InputBuffer input, final Bitmap bitmap) {
     Trace.beginSection("preprocessBitmap");
-    convertBitmapToByteBuffer(bitmap);
+    bitmap.getPixels(
+        input.intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    long startTime = SystemClock.uptimeMillis();
+    input.tensorWriter.write(input.intValues);
+    long endTime = SystemClock.uptimeMillis();
     Trace.endSection();
+    LOGGER.v("Timecost to put values into ByteBuffer: " + (endTime - startTime));
+  }
 
-    // Run the inference call.
-    Trace.beginSection("runInference");
+  /**
+   * Writes a camera frame into an acquired input without going through a Bitmap, then releases the
+   * frame.
+   *
+   * @param input The input.
+   * @param frame The camera frame.
+   * @param cropToFrameTransform Maps model input coordinates into frame coordinates.
+   */
+  public void writeInput(
+      final InputBuffer input, final YuvFrame frame, final Matrix cropToFrameTransform) {
+    Trace.beginSection("preprocessYuv");
+    cropToFrameTransform.getValues(input.cropToFrameValues);
     long startTime = SystemClock.uptimeMillis();
-    ArrayList<Recognition> recognitions = runInference();
+    input.tensorWriter.write(frame, input.cropToFrameValues);
+    frame.release();
     long endTime = SystemClock.uptimeMillis();
     Trace.endSection();
+    LOGGER.v("Timecost to put YUV values into ByteBuffer: " + (endTime - startTime));
+  }
+
+  /**
+   * Runs inference on the oldest submitted input, then frees the input.
+   *
+   * @return The classification results, or null if no input was submitted.
+   */
+  public List<Recognition> recognizeSubmitted() {
+    final InputBuffer input = submittedInputs.poll();
+    if (input == null) {
+      return null;
+    }
+    try {
+      return recognize(input);
+    } finally {
+      freeInputs.add(input);
+    }
+  }
+
+  /**
+   * Runs inference on an input on an idle interpreter of the pool, waiting for one if all are
+   * busy. The pool closes the interpreters only once the running inferences are done, so replacing
+   * the classifier never closes an interpreter under a running inference.
+   */
+  private ArrayList<Recognition> recognize(final InputBuffer input) {
+    if (closed) {
+      LOGGER.w("Classifier is closed, skipping inference.");
+      return new ArrayList<Recognition>();
+    }
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("runInference");
+    long startTime = SystemClock.uptimeMillis();
+    input.imgData.rewind();
+    ArrayList<Recognition> recognitions;
+    try {
+      recognitions =
+          interpreters.run((interpreter, index) -> runInference(interpreter, index, input.imgData));
+    } catch (final IllegalStateException e) {
+      if (!closed) {
+        throw e;
+      }
+      // Closed while waiting for an interpreter.
+      LOGGER.w("Classifier is closed, skipping inference.");
+      recognitions = new ArrayList<Recognition>();
+    } finally {
+      Trace.endSection();
+    }
+    long endTime = SystemClock.uptimeMillis();
     LOGGER.v("Timecost to run model inference: " + (endTime - startTime));
+    return recognitions;
+  }
+
+  /**
+   * Runs inference on a camera frame and returns the classification results. The frame is released
+   * as soon as the model input has been written, before inference runs. Waits for a free input if
+   * all of them are written or being inferred.
+   *
+   * @param frame The camera frame.
+   * @param cropToFrameTransform Maps model input coordinates into frame coordinates.
+   * @return The results.
+   */
+  public List<Recognition> recognizeImage(
+      final YuvFrame frame, final Matrix cropToFrameTransform) {
+    final InputBuffer input = takeInput();
+    writeInput(input, frame, cropToFrameTransform);
+    try {
+      return recognize(input);
+    } finally {
+      releaseInput(input);
+    }
+  }
+
+  /**
+   * Runs inference and returns the classification results. Waits for a free input if all of them
+   * are written or being inferred.
+   */
+  public List<Recognition> recognizeImage(final Bitmap bitmap) {
+    final InputBuffer input = takeInput();
+    writeInput(input, bitmap);
+    final List<Recognition> recognitions;
+    try {
+      recognitions = recognize(input);
+    } finally {
+      releaseInput(input);
+    }
 
     // Find the best classifications.
 //    PriorityQueue<Recognition> pq =
@@ -309,12 +481,50 @@ public abstract class Classifier {
     return recognitions;
   }
 
-  /** Closes the interpreter and model to release resources. */
-  public void close() {
-    if (tflite != null) {
-      tflite.close();
-      tflite = null;
+  /**
+   * Copies the people found by the last inference to finish, for models that detect poses.
+   * Inferences run at once on several interpreters, so that may be another caller's.
+   *
+   * @param target Receives the poses; must hold at least {@link #getMaxPoses} people.
+   * @return Whether there were poses to copy: false until an inference of a pose model is done.
+   */
+  public boolean getPoseResult(final PoseResult target) {
+    synchronized (poseResultLock) {
+      if (lastPoseResult == null) {
+        return false;
+      }
+      target.copyFrom(lastPoseResult);
+      return true;
+    }
+  }
+
+  /** Maximum number of people found per frame, for models that detect poses; 0 otherwise. */
+  public int getMaxPoses() {
+    return 0;
+  }
+
+  /** Makes the people an inference found the last pose result, as that inference is done. */
+  protected void publishPoseResult(final PoseResult result) {
+    synchronized (poseResultLock) {
+      if (lastPoseResult == null) {
+        lastPoseResult = new PoseResult(result.getCapacity());
+      }
+      lastPoseResult.copyFrom(result);
     }
+  }
+
+  /** Number of interpreters, for subclasses keeping output buffers per interpreter. */
+  protected int getNumInterpreters() {
+    return interpreters.getSize();
+  }
+
+  /** Closes the interpreters and model to release resources, once running inferences are done. */
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    interpreters.close();
     if (gpuDelegate != null) {
       gpuDelegate.close();
       gpuDelegate = null;
@@ -358,11 +568,18 @@ public abstract class Classifier {
   protected abstract int getNumBytesPerChannel();
 
   /**
-   * Add pixelValue to byteBuffer.
+   * Get the value subtracted from each channel of a float model input.
    *
-   * @param pixelValue
+   * @return
    */
-  protected abstract void addPixelValue(int pixelValue);
+  protected abstract float getImageMean();
+
+  /**
+   * Get the value each channel of a float model input is divided by.
+   *
+   * @return
+   */
+  protected abstract float getImageStd();
 
   /**
    * Read the probability value for the specified label This is either the original value as it was
@@ -390,13 +607,19 @@ public abstract class Classifier {
   protected abstract float getNormalizedProbability(int labelIndex);
 
   /**
-   * Run inference using the prepared input in {@link #imgData}. Afterwards, the result will be
-   * provided by getProbability().
+   * Run inference using a prepared input. Afterwards, the result will be provided by
+   * getProbability().
    *
    * <p>This additional method is necessary, because we don't have a common base for different
    * primitive data types.
+   *
+   * @param tflite The interpreter to run, held by this call.
+   * @param index Position of the interpreter in the pool, which picks the output buffers to use;
+   *     inferences on other interpreters run meanwhile.
+   * @param imgData The image data to feed into Tensorflow Lite, rewound.
    */
-  protected abstract ArrayList<Recognition> runInference();
+  protected abstract ArrayList<Recognition> runInference(
+      Interpreter tflite, int index, ByteBuffer imgData);
 
   /**
    * Get the total number of labels.
@@ -17,17 +17,23 @@ package org.tensorflow.lite.examples.classification.tflite;
 
 import android.app.Activity;
 import android.graphics.PointF;
-import android.graphics.RectF;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.examples.classification.env.Logger;
 
 
 /** This TensorFlowLite classifier works with the float MobileNet model. */
 public class ClassifierFloatMobileNet extends Classifier {
+  private static final Logger LOGGER = new Logger();
 
   /** MobileNet requires additional normalization of the used input. */
   private static final float IMAGE_MEAN = 127.5f;
@@ -39,26 +45,89 @@ public class ClassifierFloatMobileNet extends Classifier {
    * of the super class, because we need a primitive array here.
    */
 
-  private float[] poses_x = null;
-  private float[] poses_y = null;
-  private float[] confidence_max = null;
   private int num_classes = 17;
   private float output_stride = 16.0f;
   private float x_max = 257.0f;
   private float y_max = 353.0f;
-  private float short_offset_x = 0.0f;
-  private float short_offset_y = 0.0f;
 
 
-  private float[][][][] labelProbArray = new float[1] [23] [17] [17];
-//  private float[][][][] out1 = new float[1][23][17][17];
-  private float[][][][] short_offsets = new float[1][23][17][34];
-  private float[][][][] mid_offsets = new float[1][23][17][64];
-  private float[][][][] segments = new float[1][23][17][1];
-  private Map<Integer, Object> outputs = new HashMap<Integer, Object>();
-  private Object[] inputs = null;
+  /** Size of the outputs, in cells. */
+  private static final int OUTPUT_HEIGHT = 23;
+  private static final int OUTPUT_WIDTH = 17;
+  private static final int OUTPUT_CELLS = OUTPUT_HEIGHT * OUTPUT_WIDTH;
+
+  /** Maximum number of people reported per frame. */
+  private static final int MAX_POSES = 10;
+  /** Maximum number of keypoints tried as the root of a person per frame. */
+  private static final int MAX_POSE_CANDIDATES = 100;
+  private static final float MIN_ROOT_SCORE = 0.5f;
+  /** Half size, in cells, of the window a root keypoint has to be the maximum of. */
+  private static final int LOCAL_MAXIMUM_RADIUS = 1;
+  /** Distance, in input pixels, within which two keypoints of a kind belong to the same person. */
+  private static final float POSE_NMS_RADIUS = 20.0f;
+  /** Object keypoint similarity above which a person duplicates a better scoring one. */
+  private static final float POSE_OKS_THRESHOLD = 0.5f;
+  private static final float MIN_POSE_SCORE = 0.1f;
+  private static final float MIN_KEYPOINT_SCORE = 0.1f;
 
+  /**
+   * The outputs of one interpreter of the pool and the state decoding them, so that inferences on
+   * different interpreters never share a buffer.
+   */
+  private final class InferenceOutputs {
+    // The outputs as flat [y][x][channel] arrays, the layout the pose decoder reads.
+    final float[] labelProbArray = new float[OUTPUT_CELLS * 17];
+    final float[] short_offsets = new float[OUTPUT_CELLS * 34];
+    final float[] mid_offsets = new float[OUTPUT_CELLS * 64];
+
+    // Direct, native order buffers the interpreter writes the outputs into, bound once. Only the
+    // segments are not read back.
+    final ByteBuffer labelProbBuffer = allocateOutput(labelProbArray.length);
+    final ByteBuffer shortOffsetsBuffer = allocateOutput(short_offsets.length);
+    final ByteBuffer midOffsetsBuffer = allocateOutput(mid_offsets.length);
+    final ByteBuffer segmentsBuffer = allocateOutput(OUTPUT_CELLS);
+    final FloatBuffer labelProbFloats = labelProbBuffer.asFloatBuffer();
+    final FloatBuffer shortOffsetsFloats = shortOffsetsBuffer.asFloatBuffer();
+    final FloatBuffer midOffsetsFloats = midOffsetsBuffer.asFloatBuffer();
+    final Map<Integer, Object> outputs = new HashMap<Integer, Object>();
+    final Object[] inputs = new Object[1];
+
+    final PoseDecoder poseDecoder =
+        new PoseDecoder(
+            OUTPUT_HEIGHT,
+            OUTPUT_WIDTH,
+            output_stride,
+            MAX_POSES,
+            new KeypointCandidateExtractor(
+                OUTPUT_HEIGHT,
+                OUTPUT_WIDTH,
+                num_classes,
+                MAX_POSE_CANDIDATES,
+                LOCAL_MAXIMUM_RADIUS,
+                MIN_ROOT_SCORE),
+            POSE_NMS_RADIUS);
+    final PoseNms poseNms =
+        new PoseNms(MAX_POSES, POSE_OKS_THRESHOLD, MIN_POSE_SCORE, MIN_KEYPOINT_SCORE);
+
+    /** The people of the frame last inferred on this interpreter. */
+    final PoseResult poseResult = new PoseResult(MAX_POSES);
+
+    InferenceOutputs() {
+      outputs.put(0, labelProbBuffer);
+      outputs.put(1, shortOffsetsBuffer);
+      outputs.put(2, midOffsetsBuffer);
+      outputs.put(3, segmentsBuffer);
+    }
+  }
 
+  /** Outputs of each interpreter, by its position in the pool. */
+  private final InferenceOutputs[] inferenceOutputs;
+
+  /** Outputs of the last inference to finish, read by the probability getters. */
+  private volatile InferenceOutputs lastOutputs;
+
+  /** The poses are reported through {@link #getPoseResult}, so this list always stays empty. */
+  private final ArrayList<Recognition> recognitions = new ArrayList<Recognition>();
 
   /**
    * Initializes a {@code ClassifierFloatMobileNet}.
@@ -69,15 +138,11 @@ public class ClassifierFloatMobileNet extends Classifier {
       throws IOException {
     super(activity, device, numThreads);
 
-    poses_x = new float[num_classes];
-    poses_y = new float[num_classes];
-    confidence_max = new float[num_classes];
-    for(int i = 0; i < num_classes; i++){
-      poses_x[0] = (float) 0.0;
-      poses_y[0] = (float) 0.0;
-      confidence_max[0] = (float) 0.0;
+    inferenceOutputs = new InferenceOutputs[getNumInterpreters()];
+    for (int i = 0; i < inferenceOutputs.length; ++i) {
+      inferenceOutputs[i] = new InferenceOutputs();
     }
-
+    lastOutputs = inferenceOutputs[0];
   }
 
   @Override
@@ -112,15 +177,18 @@ public class ClassifierFloatMobileNet extends Classifier {
   }
 
   @Override
-  protected void addPixelValue(int pixelValue) {
-    imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD); // TODO MG: Check if this is the correct preprocessing for mobilenet_v1_pose
-    imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-    imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+  protected float getImageMean() {
+    return IMAGE_MEAN;
+  }
+
+  @Override
+  protected float getImageStd() {
+    return IMAGE_STD;
   }
 
   @Override
   protected float getProbability(int labelIndex) {
-    return labelProbArray[0][labelIndex][0][0];
+    return lastOutputs.labelProbArray[labelIndex * OUTPUT_WIDTH * 17];
   }
 
   @Override
@@ -128,73 +196,82 @@ public class ClassifierFloatMobileNet extends Classifier {
     Log.v("MG", "get float value at labelIndex = " + labelIndex);
     float result = value.floatValue();
     Log.v("MG", "result = " + result);
-    labelProbArray[0][labelIndex][0][0] = result;
+    lastOutputs.labelProbArray[labelIndex * OUTPUT_WIDTH * 17] = result;
     Log.v("MG", "done");
   }
 
   @Override
   protected float getNormalizedProbability(int labelIndex) {
     //Log.v("MG", "getNormalizedProbability at labelIndex = " + labelIndex);
-    return labelProbArray[0][labelIndex][0][0];
+    return lastOutputs.labelProbArray[labelIndex * OUTPUT_WIDTH * 17];
   }
 
   @Override
-  protected ArrayList<Recognition> runInference() {
+  protected ArrayList<Recognition> runInference(
+      Interpreter tflite, int interpreterIndex, ByteBuffer imgData) {
     // MG: This is where the model output should be catched
     Log.v("MG", "Starting to run inference");
     // tflite.run(imgData, labelProbArray);
 
-    inputs = new Object[]{imgData};
-
-    outputs.put(0, labelProbArray);
-    outputs.put(1, short_offsets);
-    outputs.put(2, mid_offsets);
-    outputs.put(3, segments);
-
-    tflite.runForMultipleInputsOutputs(inputs,outputs);
-
-    getPoses(labelProbArray, poses_x, poses_y);
-
-    // Fill results in ArrayList:
-    ArrayList<Recognition> recognitions = new ArrayList<Recognition>();
-    RectF pose_location = null;
-    // Float confidence = new Float(0.9);
-    for (int k = 0; k < 17; ++k) {
-      pose_location = new RectF(poses_y[k], poses_x[k],poses_y[k], poses_x[k]);
-      recognitions.add(new Recognition("Nose", "NoseTitle", confidence_max[k] ,pose_location ));
+    final InferenceOutputs out = inferenceOutputs[interpreterIndex];
+    final float[] labelProbArray = out.labelProbArray;
+    final float[] short_offsets = out.short_offsets;
+    final float[] mid_offsets = out.mid_offsets;
+    final PoseDecoder poseDecoder = out.poseDecoder;
+    final PoseNms poseNms = out.poseNms;
+    final PoseResult poseResult = out.poseResult;
+    out.labelProbBuffer.rewind();
+    out.shortOffsetsBuffer.rewind();
+    out.midOffsetsBuffer.rewind();
+    out.segmentsBuffer.rewind();
+    out.inputs[0] = imgData;
+    tflite.runForMultipleInputsOutputs(out.inputs, out.outputs);
+
+    long startTime = SystemClock.uptimeMillis();
+    out.labelProbFloats.rewind();
+    out.labelProbFloats.get(labelProbArray);
+    out.shortOffsetsFloats.rewind();
+    out.shortOffsetsFloats.get(short_offsets);
+    out.midOffsetsFloats.rewind();
+    out.midOffsetsFloats.get(mid_offsets);
+    final int numPoses =
+        poseNms.filter(
+            poseDecoder.decode(labelProbArray, short_offsets, mid_offsets),
+            poseDecoder.getPoseScores(),
+            poseDecoder.getKeypointScores(),
+            poseDecoder.getKeypointY(),
+            poseDecoder.getKeypointX());
+    long endTime = SystemClock.uptimeMillis();
+    LOGGER.v("Timecost to copy, decode and suppress outputs: " + (endTime - startTime));
+
+    // Fill the kept people into the result, in the display coordinates of the tracker, where the
+    // keypoint's y in the model input gives x and its x gives y:
+    poseResult.clear();
+    for (int p = 0; p < numPoses; ++p) {
+      final int pose = poseNms.getKept(p);
+      final int index = poseResult.addPose(poseDecoder.getPoseScore(pose));
+      for (int k = 0; k < num_classes; ++k) {
+        poseResult.setKeypoint(
+            index,
+            k,
+            y_max - (poseDecoder.getKeypointY(pose, k) + output_stride / 2.0f),
+            x_max - (poseDecoder.getKeypointX(pose, k) + output_stride / 2.0f),
+            poseDecoder.getKeypointScore(pose, k));
+      }
     }
+    publishPoseResult(poseResult);
+    lastOutputs = out;
     return recognitions;
   }
 
-
-  void getPoses(float[][][][] labelProbArray, float[] poses_x, float[] poses_y){
-    for(int k = 0; k < 17; k++){
-      confidence_max[k] = labelProbArray[0][0][0][k];
-      poses_x[k] = 0;
-      poses_y[k] = 0;
-    }
-
-
-    for(int k = 0; k < 17; k++){ // loop over classes
-      for(int i = 0; i < 23; i++){ // loop over y-dims
-        for(int j = 0; j < 17; j++){ // loop over x-dims
-
-          if (labelProbArray[0][i][j][k] > confidence_max[k]){
-            confidence_max[k] = labelProbArray[0][i][j][k];
-            short_offset_y = short_offsets[0][i][j][k];
-            short_offset_x = short_offsets[0][i][j][k + 17];
-
-            poses_y[k] = y_max - ( (float)i * output_stride + short_offset_y + output_stride / 2.0f );
-            poses_x[k] = x_max - ( (float)j * output_stride + short_offset_x + output_stride / 2.0f ); // TODO: not sure whether to add or subtract offset here
-            // poses_x[k] = (x_max - (j + 1)) * output_stride - short_offsets[0][i][j][k + 17];
-
-            Log.v("POSE", " pose(x,y) = " + (int) poses_x[k] + "," + (int) poses_y[k] + " offset_x,y: " + short_offsets[0][i][j][k+17] + ", " + short_offsets[0][i][j][k]);
-          }
-
-        }
-      }
-    }
+  @Override
+  public int getMaxPoses() {
+    return MAX_POSES;
   }
 
-
+  private static ByteBuffer allocateOutput(int numFloats) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(numFloats * 4);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
 }
@@ -19,16 +19,22 @@ import android.app.Activity;
 import android.graphics.RectF;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import org.tensorflow.lite.Interpreter;
 
 /** This TensorFlow Lite classifier works with the quantized MobileNet model. */
 public class ClassifierQuantizedMobileNet extends Classifier {
 
   /**
-   * An array to hold inference results, to be feed into Tensorflow Lite as outputs. This isn't part
-   * of the super class, because we need a primitive array here.
+   * Arrays to hold inference results, to be feed into Tensorflow Lite as outputs, one per
+   * interpreter of the pool. This isn't part of the super class, because we need a primitive array
+   * here.
    */
-  private byte[][] labelProbArray = null;
+  private byte[][][] labelProbArrays = null;
+
+  /** Results of the last inference to finish, read by the probability getters. */
+  private volatile byte[][] labelProbArray = null;
 
   /**
    * Initializes a {@code ClassifierQuantizedMobileNet}.
@@ -38,7 +44,8 @@ public class ClassifierQuantizedMobileNet extends Classifier {
   public ClassifierQuantizedMobileNet(Activity activity, Device device, int numThreads)
       throws IOException {
     super(activity, device, numThreads);
-    labelProbArray = new byte[1][getNumLabels()];
+    labelProbArrays = new byte[getNumInterpreters()][1][getNumLabels()];
+    labelProbArray = labelProbArrays[0];
   }
 
   @Override
@@ -71,10 +78,14 @@ public class ClassifierQuantizedMobileNet extends Classifier {
   }
 
   @Override
-  protected void addPixelValue(int pixelValue) {
-    imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-    imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-    imgData.put((byte) (pixelValue & 0xFF));
+  protected float getImageMean() {
+    // the quantized model takes raw channel values
+    return 0.0f;
+  }
+
+  @Override
+  protected float getImageStd() {
+    return 1.0f;
   }
 
   @Override
@@ -93,9 +104,10 @@ public class ClassifierQuantizedMobileNet extends Classifier {
   }
 
   @Override
-  protected ArrayList<Recognition> runInference() {
+  protected ArrayList<Recognition> runInference(Interpreter tflite, int index, ByteBuffer imgData) {
     // MG: This is where the model output should be catched
-    tflite.run(imgData, labelProbArray);
+    tflite.run(imgData, labelProbArrays[index]);
+    labelProbArray = labelProbArrays[index];
     ArrayList<Recognition> recognitions = new ArrayList<Recognition>();
     return recognitions;
   }
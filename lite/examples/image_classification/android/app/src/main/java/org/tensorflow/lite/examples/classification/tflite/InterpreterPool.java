@@ -0,0 +1,227 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.nio.ByteBuffer;
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * A fixed set of interpreters of one model, so that inferences handed in from several threads run
+ * at once instead of queueing on a single interpreter.
+ *
+ * <p>All interpreters read the same memory-mapped model, so only their tensors are duplicated.
+ * Each one runs a task at a time: a task waits for an idle interpreter, runs on it and hands it
+ * back. Settings applied to all interpreters wait for every one of them to be idle, and hold off
+ * new tasks meanwhile, so they never change under a running inference.
+ */
+public class InterpreterPool {
+  /** Work run on one interpreter of the pool. */
+  public interface Task<T> {
+    /**
+     * @param interpreter The interpreter, used by no other task meanwhile.
+     * @param index Position of the interpreter in the pool, for state the caller keeps per
+     *     interpreter, like the input sizes it was resized to.
+     */
+    T run(Interpreter interpreter, int index);
+  }
+
+  private final Interpreter[] interpreters;
+  // Indices of the idle interpreters, as a stack. All fields below are guarded by this.
+  private final int[] idle;
+  private int numIdle;
+  // Whether a task for all interpreters runs, or waits for them to be idle.
+  private boolean exclusive;
+  private boolean closed;
+
+  /**
+   * Creates the interpreters of a pool.
+   *
+   * @param model The model, shared by all interpreters.
+   * @param options Options of every interpreter, including its number of threads. A delegate
+   *     serves a single interpreter, so options holding one only suit a pool of one.
+   * @param size Number of interpreters.
+   */
+  public InterpreterPool(
+      final ByteBuffer model, final Interpreter.Options options, final int size) {
+    this(createInterpreters(model, options, size));
+  }
+
+  /** Creates a pool of interpreters made elsewhere, e.g. stand-ins when benchmarking the pool. */
+  InterpreterPool(final Interpreter[] interpreters) {
+    this.interpreters = interpreters;
+    idle = new int[interpreters.length];
+    for (int i = 0; i < interpreters.length; ++i) {
+      idle[i] = i;
+    }
+    numIdle = interpreters.length;
+  }
+
+  private static Interpreter[] createInterpreters(
+      final ByteBuffer model, final Interpreter.Options options, final int size) {
+    final Interpreter[] interpreters = new Interpreter[size];
+    for (int i = 0; i < size; ++i) {
+      interpreters[i] = new Interpreter(model, options);
+    }
+    return interpreters;
+  }
+
+  /**
+   * Number of interpreters of {@code numThreads} threads each that keeps every core busy without
+   * oversubscribing them, and at least one.
+   */
+  public static int getDefaultSize(final int numThreads) {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, numThreads));
+  }
+
+  public int getSize() {
+    return interpreters.length;
+  }
+
+  /**
+   * Runs a task on an idle interpreter, waiting for one if all are busy.
+   *
+   * @return What the task returned.
+   * @throws IllegalStateException If the pool is closed.
+   */
+  public <T> T run(final Task<T> task) {
+    final int index = acquire();
+    try {
+      return task.run(interpreters[index], index);
+    } finally {
+      release(index);
+    }
+  }
+
+  /** Sets the number of threads of every interpreter, once the running tasks are done. */
+  public void setNumThreads(final int numThreads) {
+    runOnAll(
+        (interpreter, index) -> {
+          interpreter.setNumThreads(numThreads);
+          return null;
+        });
+  }
+
+  /** Sets whether every interpreter uses NNAPI, once the running tasks are done. */
+  public void setUseNNAPI(final boolean useNNAPI) {
+    runOnAll(
+        (interpreter, index) -> {
+          interpreter.setUseNNAPI(useNNAPI);
+          return null;
+        });
+  }
+
+  /**
+   * Closes the interpreters, once the running tasks are done. Later tasks throw, and later
+   * settings are ignored.
+   */
+  public void close() {
+    if (!acquireAll()) {
+      return;
+    }
+    for (final Interpreter interpreter : interpreters) {
+      interpreter.close();
+    }
+    synchronized (this) {
+      closed = true;
+      exclusive = false;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Runs a task on every interpreter in turn, while none of them runs anything else, unless the
+   * pool is closed. Must not be called from within a task, which would wait for its own
+   * interpreter forever.
+   */
+  private void runOnAll(final Task<?> task) {
+    if (!acquireAll()) {
+      return;
+    }
+    try {
+      for (int i = 0; i < interpreters.length; ++i) {
+        task.run(interpreters[i], i);
+      }
+    } finally {
+      releaseAll();
+    }
+  }
+
+  private synchronized int acquire() {
+    boolean interrupted = false;
+    try {
+      while (!closed && (exclusive || numIdle == 0)) {
+        interrupted |= await();
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (closed) {
+      throw new IllegalStateException("Interpreter pool is closed.");
+    }
+    return idle[--numIdle];
+  }
+
+  private synchronized void release(final int index) {
+    idle[numIdle++] = index;
+    notifyAll();
+  }
+
+  /** Waits for all interpreters to be idle and keeps them; returns false if the pool is closed. */
+  private synchronized boolean acquireAll() {
+    boolean interrupted = false;
+    try {
+      while (!closed && exclusive) {
+        interrupted |= await();
+      }
+      if (closed) {
+        return false;
+      }
+      // Claims the interpreters first, so that tasks handed in meanwhile do not starve this one.
+      exclusive = true;
+      while (numIdle < interpreters.length) {
+        interrupted |= await();
+      }
+      return true;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private synchronized void releaseAll() {
+    exclusive = false;
+    notifyAll();
+  }
+
+  /**
+   * Waits for another thread to change the state of the pool. Tasks are not interruptible, so that
+   * stopping a thread never leaves an inference half done; an interrupt ends the wait, and is put
+   * back once the caller is done waiting.
+   *
+   * @return Whether the wait was interrupted.
+   */
+  private boolean await() {
+    try {
+      wait();
+      return false;
+    } catch (final InterruptedException e) {
+      return true;
+    }
+  }
+}
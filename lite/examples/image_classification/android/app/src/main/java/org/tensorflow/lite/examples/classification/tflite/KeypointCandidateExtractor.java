@@ -0,0 +1,159 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * Finds the keypoint candidates of a heatmap tensor: the cells that score at least a threshold and
+ * are the maximum of their keypoint's heatmap within a square window.
+ *
+ * <p>The heatmaps are read as a flat, row-major array of shape [height][width][numKeypoints] in a
+ * single pass. Candidates are kept in preallocated arrays sorted by decreasing score; once the
+ * buffer is full, a candidate only gets in by pushing out the weakest one. Nothing is allocated
+ * once the extractor has been created.
+ */
+public class KeypointCandidateExtractor {
+  private final int height;
+  private final int width;
+  private final int numKeypoints;
+  private final int capacity;
+  private final int radius;
+  private final float scoreThreshold;
+
+  private final float[] scores;
+  private final int[] cells;
+  private final int[] keypoints;
+  private int size;
+
+  /**
+   * Creates an extractor.
+   *
+   * @param height Height of the heatmaps, in cells.
+   * @param width Width of the heatmaps, in cells.
+   * @param numKeypoints Number of heatmaps, one per keypoint.
+   * @param capacity Maximum number of candidates kept per frame.
+   * @param radius Half size, in cells, of the window a candidate has to be the maximum of. 0 keeps
+   *     every cell above the threshold.
+   * @param scoreThreshold Minimum score of a candidate.
+   * @throws IllegalArgumentException If the capacity is less than 1.
+   */
+  public KeypointCandidateExtractor(
+      final int height,
+      final int width,
+      final int numKeypoints,
+      final int capacity,
+      final int radius,
+      final float scoreThreshold) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1, got " + capacity + ".");
+    }
+    this.height = height;
+    this.width = width;
+    this.numKeypoints = numKeypoints;
+    this.capacity = capacity;
+    this.radius = radius;
+    this.scoreThreshold = scoreThreshold;
+    scores = new float[capacity];
+    cells = new int[capacity];
+    keypoints = new int[capacity];
+  }
+
+  /**
+   * Extracts the candidates of one frame.
+   *
+   * @param heatmaps Keypoint scores.
+   * @return The number of candidates found, at most the capacity.
+   */
+  public int extract(final float[] heatmaps) {
+    size = 0;
+    for (int y = 0; y < height; ++y) {
+      final int yStart = Math.max(y - radius, 0);
+      final int yEnd = Math.min(y + radius + 1, height);
+      for (int x = 0; x < width; ++x) {
+        final int xStart = Math.max(x - radius, 0);
+        final int xEnd = Math.min(x + radius + 1, width);
+        final int cell = y * width + x;
+        for (int k = 0; k < numKeypoints; ++k) {
+          final float score = heatmaps[cell * numKeypoints + k];
+          if (score < scoreThreshold
+              || (size == capacity && score <= scores[size - 1])
+              || !isLocalMaximum(heatmaps, yStart, yEnd, xStart, xEnd, k, score)) {
+            continue;
+          }
+          insert(score, cell, k);
+        }
+      }
+    }
+    return size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public float getScore(final int i) {
+    return scores[i];
+  }
+
+  /** Index of the cell of candidate {@code i}, {@code y * width + x}. */
+  public int getCell(final int i) {
+    return cells[i];
+  }
+
+  public int getY(final int i) {
+    return cells[i] / width;
+  }
+
+  public int getX(final int i) {
+    return cells[i] % width;
+  }
+
+  public int getKeypoint(final int i) {
+    return keypoints[i];
+  }
+
+  private boolean isLocalMaximum(
+      final float[] heatmaps,
+      final int yStart,
+      final int yEnd,
+      final int xStart,
+      final int xEnd,
+      final int keypoint,
+      final float score) {
+    for (int y = yStart; y < yEnd; ++y) {
+      for (int i = (y * width + xStart) * numKeypoints + keypoint,
+              end = (y * width + xEnd) * numKeypoints;
+          i < end;
+          i += numKeypoints) {
+        if (heatmaps[i] > score) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void insert(final float score, final int cell, final int keypoint) {
+    int i = size < capacity ? size++ : capacity - 1;
+    for (; i > 0 && scores[i - 1] < score; --i) {
+      scores[i] = scores[i - 1];
+      cells[i] = cells[i - 1];
+      keypoints[i] = keypoints[i - 1];
+    }
+    scores[i] = score;
+    cells[i] = cell;
+    keypoints[i] = keypoint;
+  }
+}
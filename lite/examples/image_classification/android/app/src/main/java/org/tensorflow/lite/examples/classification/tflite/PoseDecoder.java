@@ -0,0 +1,266 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * Groups the keypoints of the multi-person pose model into person instances, PersonLab style.
+ *
+ * <p>The candidates of a {@link KeypointCandidateExtractor} are tried as roots in decreasing
+ * score order; each one that is not already claimed by a decoded person
+ * seeds a new person, whose remaining keypoints are found by following the mid-range displacements
+ * along the edges of the body tree and refining each landing point with the short-range offsets.
+ *
+ * <p>All model outputs are read as flat, row-major arrays of shape [height][width][channels]:
+ *
+ * <ul>
+ *   <li>heatmaps: {@link #NUM_KEYPOINTS} channels.
+ *   <li>short offsets: y of keypoint k in channel k, x in channel k + {@link #NUM_KEYPOINTS}.
+ *   <li>mid offsets: y of directed edge e in channel e, x in channel e + 2 * {@link #NUM_EDGES}.
+ *       The first {@link #NUM_EDGES} directed edges go from parent to child, the next ones back.
+ * </ul>
+ *
+ * <p>Positions are decoded in model input pixels, as {@code cell * outputStride + offset}. The
+ * work per frame is bounded by the extractor's capacity and by {@code maxPoses}, and nothing is
+ * allocated once the decoder has been created.
+ */
+public class PoseDecoder {
+  public static final int NUM_KEYPOINTS = 17;
+  public static final int NUM_EDGES = 16;
+
+  /** Parent of each edge of the body tree, rooted at the nose. */
+  private static final int[] EDGE_PARENTS = {0, 1, 0, 2, 0, 5, 7, 5, 11, 13, 0, 6, 8, 6, 12, 14};
+
+  /** Child of each edge of the body tree. */
+  private static final int[] EDGE_CHILDREN = {
+    1, 3, 2, 4, 5, 7, 9, 11, 13, 15, 6, 8, 10, 12, 14, 16
+  };
+
+  /** Number of times a displaced keypoint is snapped back onto the short-range offsets. */
+  private static final int OFFSET_REFINE_STEPS = 2;
+
+  private final int height;
+  private final int width;
+  private final float outputStride;
+  private final int maxPoses;
+  private final float squaredNmsRadius;
+  private final KeypointCandidateExtractor candidates;
+
+  // Decoded people, NUM_KEYPOINTS entries per person.
+  private final float[] poseScores;
+  private final float[] keypointScores;
+  private final float[] keypointY;
+  private final float[] keypointX;
+  private final boolean[] decoded = new boolean[NUM_KEYPOINTS];
+  private int numPoses;
+
+  /**
+   * Creates a decoder.
+   *
+   * @param height Height of the model outputs, in cells.
+   * @param width Width of the model outputs, in cells.
+   * @param outputStride Number of input pixels per output cell.
+   * @param maxPoses Maximum number of people decoded per frame.
+   * @param candidates Extractor of the root candidates, sized for the same outputs.
+   * @param nmsRadius Distance, in input pixels, within which a candidate is considered to belong to
+   *     an already decoded person.
+   */
+  public PoseDecoder(
+      final int height,
+      final int width,
+      final float outputStride,
+      final int maxPoses,
+      final KeypointCandidateExtractor candidates,
+      final float nmsRadius) {
+    this.height = height;
+    this.width = width;
+    this.outputStride = outputStride;
+    this.maxPoses = maxPoses;
+    this.candidates = candidates;
+    this.squaredNmsRadius = nmsRadius * nmsRadius;
+
+    poseScores = new float[maxPoses];
+    keypointScores = new float[maxPoses * NUM_KEYPOINTS];
+    keypointY = new float[maxPoses * NUM_KEYPOINTS];
+    keypointX = new float[maxPoses * NUM_KEYPOINTS];
+  }
+
+  /**
+   * Decodes the people of one frame.
+   *
+   * @param heatmaps Keypoint scores.
+   * @param shortOffsets Short-range offsets.
+   * @param midOffsets Mid-range displacements.
+   * @return The number of people decoded.
+   */
+  public int decode(final float[] heatmaps, final float[] shortOffsets, final float[] midOffsets) {
+    final int numCandidates = candidates.extract(heatmaps);
+
+    numPoses = 0;
+    for (int c = 0; c < numCandidates && numPoses < maxPoses; ++c) {
+      final int cell = candidates.getCell(c);
+      final int keypoint = candidates.getKeypoint(c);
+      final int y = candidates.getY(c);
+      final int x = candidates.getX(c);
+      final float rootY = y * outputStride + shortOffsets[cell * 2 * NUM_KEYPOINTS + keypoint];
+      final float rootX =
+          x * outputStride + shortOffsets[cell * 2 * NUM_KEYPOINTS + NUM_KEYPOINTS + keypoint];
+      if (isClaimed(numPoses, keypoint, rootY, rootX)) {
+        continue;
+      }
+
+      decodePose(heatmaps, shortOffsets, midOffsets, keypoint, candidates.getScore(c), rootY, rootX);
+      poseScores[numPoses] = getInstanceScore(numPoses);
+      ++numPoses;
+    }
+    return numPoses;
+  }
+
+  public int getNumPoses() {
+    return numPoses;
+  }
+
+  /** Score of person {@code pose}, the mean score of its keypoints not shared with earlier ones. */
+  public float getPoseScore(final int pose) {
+    return poseScores[pose];
+  }
+
+  public float getKeypointScore(final int pose, final int keypoint) {
+    return keypointScores[pose * NUM_KEYPOINTS + keypoint];
+  }
+
+  public float getKeypointY(final int pose, final int keypoint) {
+    return keypointY[pose * NUM_KEYPOINTS + keypoint];
+  }
+
+  public float getKeypointX(final int pose, final int keypoint) {
+    return keypointX[pose * NUM_KEYPOINTS + keypoint];
+  }
+
+  // The backing arrays, for the stages that post-process all people at once.
+
+  float[] getPoseScores() {
+    return poseScores;
+  }
+
+  float[] getKeypointScores() {
+    return keypointScores;
+  }
+
+  float[] getKeypointY() {
+    return keypointY;
+  }
+
+  float[] getKeypointX() {
+    return keypointX;
+  }
+
+  /** Whether one of the first {@code numPoses} people has {@code keypoint} near the point. */
+  private boolean isClaimed(final int numPoses, final int keypoint, final float y, final float x) {
+    for (int p = 0; p < numPoses; ++p) {
+      final int i = p * NUM_KEYPOINTS + keypoint;
+      final float dy = keypointY[i] - y;
+      final float dx = keypointX[i] - x;
+      if (dy * dy + dx * dx <= squaredNmsRadius) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Decodes person {@link #numPoses} from its root keypoint. */
+  private void decodePose(
+      final float[] heatmaps,
+      final float[] shortOffsets,
+      final float[] midOffsets,
+      final int rootKeypoint,
+      final float rootScore,
+      final float rootY,
+      final float rootX) {
+    final int base = numPoses * NUM_KEYPOINTS;
+    for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+      decoded[k] = false;
+      keypointScores[base + k] = 0.0f;
+    }
+    keypointScores[base + rootKeypoint] = rootScore;
+    keypointY[base + rootKeypoint] = rootY;
+    keypointX[base + rootKeypoint] = rootX;
+    decoded[rootKeypoint] = true;
+
+    // Walk up the tree towards the nose, then back down to the limbs.
+    for (int e = NUM_EDGES - 1; e >= 0; --e) {
+      final int source = EDGE_CHILDREN[e];
+      final int target = EDGE_PARENTS[e];
+      if (decoded[source] && !decoded[target]) {
+        traverse(heatmaps, shortOffsets, midOffsets, base, NUM_EDGES + e, source, target);
+      }
+    }
+    for (int e = 0; e < NUM_EDGES; ++e) {
+      final int source = EDGE_PARENTS[e];
+      final int target = EDGE_CHILDREN[e];
+      if (decoded[source] && !decoded[target]) {
+        traverse(heatmaps, shortOffsets, midOffsets, base, e, source, target);
+      }
+    }
+  }
+
+  /** Follows directed edge {@code edge} from a decoded keypoint to the one it points to. */
+  private void traverse(
+      final float[] heatmaps,
+      final float[] shortOffsets,
+      final float[] midOffsets,
+      final int base,
+      final int edge,
+      final int source,
+      final int target) {
+    final int sourceCell = nearestCell(keypointY[base + source], keypointX[base + source]);
+    final int midOffset = sourceCell * 4 * NUM_EDGES + edge;
+    float y = keypointY[base + source] + midOffsets[midOffset];
+    float x = keypointX[base + source] + midOffsets[midOffset + 2 * NUM_EDGES];
+
+    for (int i = 0; i < OFFSET_REFINE_STEPS; ++i) {
+      final int cell = nearestCell(y, x);
+      final int cellY = cell / width;
+      y = cellY * outputStride + shortOffsets[cell * 2 * NUM_KEYPOINTS + target];
+      x =
+          (cell - cellY * width) * outputStride
+              + shortOffsets[cell * 2 * NUM_KEYPOINTS + NUM_KEYPOINTS + target];
+    }
+
+    keypointScores[base + target] = heatmaps[nearestCell(y, x) * NUM_KEYPOINTS + target];
+    keypointY[base + target] = y;
+    keypointX[base + target] = x;
+    decoded[target] = true;
+  }
+
+  /** Index of the output cell nearest to a point in input pixels, clamped to the outputs. */
+  private int nearestCell(final float y, final float x) {
+    final int cellY = Math.min(Math.max(Math.round(y / outputStride), 0), height - 1);
+    final int cellX = Math.min(Math.max(Math.round(x / outputStride), 0), width - 1);
+    return cellY * width + cellX;
+  }
+
+  /** Mean score of the keypoints of {@code pose} that no earlier person already has. */
+  private float getInstanceScore(final int pose) {
+    final int base = pose * NUM_KEYPOINTS;
+    float score = 0.0f;
+    for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+      if (!isClaimed(pose, k, keypointY[base + k], keypointX[base + k])) {
+        score += keypointScores[base + k];
+      }
+    }
+    return score / NUM_KEYPOINTS;
+  }
+}
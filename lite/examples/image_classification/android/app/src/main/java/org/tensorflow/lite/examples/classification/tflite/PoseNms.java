@@ -0,0 +1,207 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * Suppresses duplicate people by object keypoint similarity (OKS), the COCO keypoint metric.
+ *
+ * <p>People are visited in decreasing score order and a person is dropped when its OKS with an
+ * already kept one exceeds a threshold. Since the order is by score, the first person under the
+ * minimum score ends the pass. Two people whose bounding boxes are too far apart for their OKS to
+ * reach the threshold are not compared keypoint by keypoint.
+ *
+ * <p>Poses are read as flat arrays of {@link PoseDecoder#NUM_KEYPOINTS} entries per person, in
+ * model input pixels. Nothing is allocated once the suppressor has been created.
+ */
+public class PoseNms {
+  private static final int NUM_KEYPOINTS = PoseDecoder.NUM_KEYPOINTS;
+
+  /** COCO per-keypoint standard deviations, relative to the object scale. */
+  private static final float[] SIGMAS = {
+    .026f, .025f, .025f, .035f, .035f, .079f, .079f, .072f, .072f, .062f, .062f, .107f, .107f,
+    .087f, .087f, .089f, .089f
+  };
+
+  /** 1 / (2 * kappa^2) per keypoint, with kappa = 2 * sigma. */
+  private static final float[] INV_TWO_KAPPA_SQUARED = new float[NUM_KEYPOINTS];
+
+  /** The smallest of {@link #INV_TWO_KAPPA_SQUARED}, for the keypoint with the largest sigma. */
+  private static final float MIN_INV_TWO_KAPPA_SQUARED;
+
+  static {
+    float min = Float.MAX_VALUE;
+    for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+      INV_TWO_KAPPA_SQUARED[k] = 1.0f / (8.0f * SIGMAS[k] * SIGMAS[k]);
+      min = Math.min(min, INV_TWO_KAPPA_SQUARED[k]);
+    }
+    MIN_INV_TWO_KAPPA_SQUARED = min;
+  }
+
+  private final int maxPoses;
+  private final float oksThreshold;
+  private final float minPoseScore;
+  private final float minKeypointScore;
+
+  /** -ln(oksThreshold): no keypoint term reaches the threshold beyond this normalized distance. */
+  private final float maxNormalizedSquaredDistance;
+
+  // Indices of the candidate people, sorted by decreasing score.
+  private final int[] order;
+
+  // Kept people and their bounding boxes.
+  private final int[] kept;
+  private final float[] keptTop;
+  private final float[] keptLeft;
+  private final float[] keptBottom;
+  private final float[] keptRight;
+  private int numKept;
+
+  /**
+   * Creates a suppressor.
+   *
+   * @param maxPoses Maximum number of people handed in and kept.
+   * @param oksThreshold OKS above which a person is a duplicate of a better scoring one.
+   * @param minPoseScore Minimum score of a kept person.
+   * @param minKeypointScore Minimum score of both keypoints for a keypoint to count in the OKS.
+   */
+  public PoseNms(
+      final int maxPoses,
+      final float oksThreshold,
+      final float minPoseScore,
+      final float minKeypointScore) {
+    this.maxPoses = maxPoses;
+    this.oksThreshold = oksThreshold;
+    this.minPoseScore = minPoseScore;
+    this.minKeypointScore = minKeypointScore;
+    maxNormalizedSquaredDistance = (float) -Math.log(oksThreshold);
+    order = new int[maxPoses];
+    kept = new int[maxPoses];
+    keptTop = new float[maxPoses];
+    keptLeft = new float[maxPoses];
+    keptBottom = new float[maxPoses];
+    keptRight = new float[maxPoses];
+  }
+
+  /**
+   * Suppresses the duplicates among {@code numPoses} people.
+   *
+   * @param numPoses Number of people, at most {@code maxPoses}.
+   * @param poseScores Score of each person.
+   * @param keypointScores Score of each keypoint.
+   * @param keypointY Y coordinate of each keypoint.
+   * @param keypointX X coordinate of each keypoint.
+   * @return The number of people kept; see {@link #getKept}.
+   */
+  public int filter(
+      final int numPoses,
+      final float[] poseScores,
+      final float[] keypointScores,
+      final float[] keypointY,
+      final float[] keypointX) {
+    final int count = Math.min(numPoses, maxPoses);
+    for (int i = 0; i < count; ++i) {
+      int j = i;
+      for (; j > 0 && poseScores[order[j - 1]] < poseScores[i]; --j) {
+        order[j] = order[j - 1];
+      }
+      order[j] = i;
+    }
+
+    numKept = 0;
+    for (int i = 0; i < count; ++i) {
+      final int pose = order[i];
+      if (poseScores[pose] < minPoseScore) {
+        break;
+      }
+
+      final int base = pose * NUM_KEYPOINTS;
+      float top = Float.MAX_VALUE;
+      float left = Float.MAX_VALUE;
+      float bottom = -Float.MAX_VALUE;
+      float right = -Float.MAX_VALUE;
+      for (int k = base; k < base + NUM_KEYPOINTS; ++k) {
+        top = Math.min(top, keypointY[k]);
+        left = Math.min(left, keypointX[k]);
+        bottom = Math.max(bottom, keypointY[k]);
+        right = Math.max(right, keypointX[k]);
+      }
+
+      boolean duplicate = false;
+      for (int j = 0; j < numKept && !duplicate; ++j) {
+        duplicate =
+            isDuplicate(pose, top, left, bottom, right, j, keypointScores, keypointY, keypointX);
+      }
+      if (duplicate) {
+        continue;
+      }
+
+      kept[numKept] = pose;
+      keptTop[numKept] = top;
+      keptLeft[numKept] = left;
+      keptBottom[numKept] = bottom;
+      keptRight[numKept] = right;
+      ++numKept;
+    }
+    return numKept;
+  }
+
+  public int getNumKept() {
+    return numKept;
+  }
+
+  /** Index, in the arrays handed to {@link #filter}, of the {@code i}-th best kept person. */
+  public int getKept(final int i) {
+    return kept[i];
+  }
+
+  /** Whether {@code pose} is a duplicate of kept person {@code j}, whose box sets the scale. */
+  private boolean isDuplicate(
+      final int pose,
+      final float top,
+      final float left,
+      final float bottom,
+      final float right,
+      final int j,
+      final float[] keypointScores,
+      final float[] keypointY,
+      final float[] keypointX) {
+    final float area = Math.max((keptBottom[j] - keptTop[j]) * (keptRight[j] - keptLeft[j]), 1.0f);
+
+    // Every keypoint pair is at least as far apart as the boxes are, so if that gap alone makes the
+    // largest keypoint term fall under the threshold, so does the mean.
+    final float gapY = Math.max(0.0f, Math.max(top - keptBottom[j], keptTop[j] - bottom));
+    final float gapX = Math.max(0.0f, Math.max(left - keptRight[j], keptLeft[j] - right));
+    if ((gapY * gapY + gapX * gapX) * MIN_INV_TWO_KAPPA_SQUARED / area
+        >= maxNormalizedSquaredDistance) {
+      return false;
+    }
+
+    final int a = pose * NUM_KEYPOINTS;
+    final int b = kept[j] * NUM_KEYPOINTS;
+    float similarity = 0.0f;
+    int visible = 0;
+    for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+      if (keypointScores[a + k] < minKeypointScore || keypointScores[b + k] < minKeypointScore) {
+        continue;
+      }
+      final float dy = keypointY[a + k] - keypointY[b + k];
+      final float dx = keypointX[a + k] - keypointX[b + k];
+      similarity += (float) Math.exp(-(dy * dy + dx * dx) * INV_TWO_KAPPA_SQUARED[k] / area);
+      ++visible;
+    }
+    return visible > 0 && similarity > oksThreshold * visible;
+  }
+}
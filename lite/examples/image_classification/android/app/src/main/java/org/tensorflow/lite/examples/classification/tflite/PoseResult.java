@@ -0,0 +1,100 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * The people found in one frame, {@link #NUM_KEYPOINTS} keypoints each, held in flat primitive
+ * arrays. Instances are allocated once for a maximum number of people and refilled every frame.
+ */
+public class PoseResult {
+  public static final int NUM_KEYPOINTS = PoseDecoder.NUM_KEYPOINTS;
+
+  private final int capacity;
+  private final float[] x;
+  private final float[] y;
+  private final float[] scores;
+  private final float[] poseScores;
+  private int numPoses;
+
+  /**
+   * Creates an empty result.
+   *
+   * @param capacity Maximum number of people.
+   */
+  public PoseResult(final int capacity) {
+    this.capacity = capacity;
+    x = new float[capacity * NUM_KEYPOINTS];
+    y = new float[capacity * NUM_KEYPOINTS];
+    scores = new float[capacity * NUM_KEYPOINTS];
+    poseScores = new float[capacity];
+  }
+
+  /** Copies {@code other}, which must not hold more people than this result can. */
+  public void copyFrom(final PoseResult other) {
+    final int length = other.numPoses * NUM_KEYPOINTS;
+    System.arraycopy(other.x, 0, x, 0, length);
+    System.arraycopy(other.y, 0, y, 0, length);
+    System.arraycopy(other.scores, 0, scores, 0, length);
+    System.arraycopy(other.poseScores, 0, poseScores, 0, other.numPoses);
+    numPoses = other.numPoses;
+  }
+
+  public void clear() {
+    numPoses = 0;
+  }
+
+  /**
+   * Appends a person, whose keypoints are then set with {@link #setKeypoint}.
+   *
+   * @return The index of the person.
+   */
+  public int addPose(final float score) {
+    poseScores[numPoses] = score;
+    return numPoses++;
+  }
+
+  public void setKeypoint(
+      final int pose, final int keypoint, final float x, final float y, final float score) {
+    final int i = pose * NUM_KEYPOINTS + keypoint;
+    this.x[i] = x;
+    this.y[i] = y;
+    scores[i] = score;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public int getNumPoses() {
+    return numPoses;
+  }
+
+  public float getPoseScore(final int pose) {
+    return poseScores[pose];
+  }
+
+  public float getX(final int pose, final int keypoint) {
+    return x[pose * NUM_KEYPOINTS + keypoint];
+  }
+
+  public float getY(final int pose, final int keypoint) {
+    return y[pose * NUM_KEYPOINTS + keypoint];
+  }
+
+  public float getScore(final int pose, final int keypoint) {
+    return scores[pose * NUM_KEYPOINTS + keypoint];
+  }
+}
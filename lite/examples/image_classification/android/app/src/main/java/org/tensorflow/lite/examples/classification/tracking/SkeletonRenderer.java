@@ -0,0 +1,163 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tracking;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Paint.Cap;
+import android.graphics.Paint.Style;
+import org.tensorflow.lite.examples.classification.tflite.PoseResult;
+
+/**
+ * Draws the skeletons of any number of people from a static table of bones.
+ *
+ * <p>All keypoints of all people are mapped to the canvas with a single {@code Matrix.mapPoints}
+ * call. The bones sharing a color are then drawn with one {@code Canvas.drawLines} call and the
+ * face keypoints with one {@code Canvas.drawPoints} call. Paints and point buffers are allocated
+ * up front and only grow when a frame holds more people than any frame before it.
+ */
+public class SkeletonRenderer {
+  private static final int NUM_KEYPOINTS = PoseResult.NUM_KEYPOINTS;
+
+  private static final float STROKE_WIDTH = 10.0f;
+  private static final float KEYPOINT_RADIUS = 10.0f;
+
+  /** Keypoints drawn as dots: nose, eyes and ears. */
+  private static final int NUM_FACE_KEYPOINTS = 5;
+
+  /** Keypoint pairs of the bones, grouped by color. */
+  private static final int[][] BONES = {
+    {5, 7, 7, 9}, // Left arm.
+    {6, 8, 8, 10}, // Right arm.
+    {11, 13, 13, 15}, // Left leg.
+    {12, 14, 14, 16}, // Right leg.
+    {5, 6, 5, 11, 6, 12, 11, 12}, // Body.
+  };
+
+  private static final int[] BONE_COLORS = {
+    Color.MAGENTA, Color.CYAN, Color.BLUE, Color.GREEN, Color.YELLOW,
+  };
+
+  private final float minKeypointScore;
+  private final float minBoneScore;
+
+  private final Paint keypointPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final Paint[] bonePaints = new Paint[BONES.length];
+
+  // Keypoints in frame and canvas coordinates, and the lines and dots of one frame.
+  private float[] framePoints = new float[0];
+  private float[] canvasPoints = new float[0];
+  private float[][] lines = new float[BONES.length][0];
+  private float[] dots = new float[0];
+
+  /**
+   * Creates a renderer.
+   *
+   * @param minKeypointScore Minimum score of a face keypoint to be drawn.
+   * @param minBoneScore Minimum score of both ends of a bone for it to be drawn.
+   */
+  public SkeletonRenderer(final float minKeypointScore, final float minBoneScore) {
+    this.minKeypointScore = minKeypointScore;
+    this.minBoneScore = minBoneScore;
+
+    keypointPaint.setColor(Color.GREEN);
+    keypointPaint.setStyle(Style.STROKE);
+    keypointPaint.setStrokeCap(Cap.ROUND);
+    keypointPaint.setStrokeWidth(2 * KEYPOINT_RADIUS);
+    for (int i = 0; i < BONES.length; ++i) {
+      bonePaints[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+      bonePaints[i].setColor(BONE_COLORS[i]);
+      bonePaints[i].setStyle(Style.STROKE);
+      bonePaints[i].setStrokeWidth(STROKE_WIDTH);
+    }
+  }
+
+  /**
+   * Draws all people of {@code poses}.
+   *
+   * @param canvas The canvas to draw on.
+   * @param poses The people to draw.
+   * @param scale Factor from pose coordinates to frame coordinates.
+   * @param frameToCanvas Transformation from frame coordinates to canvas coordinates.
+   */
+  public void draw(
+      final Canvas canvas, final PoseResult poses, final float scale, final Matrix frameToCanvas) {
+    final int numPoses = poses.getNumPoses();
+    if (numPoses == 0) {
+      return;
+    }
+    ensureCapacity(numPoses);
+
+    for (int pose = 0, i = 0; pose < numPoses; ++pose) {
+      for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+        framePoints[i++] = poses.getX(pose, k) * scale;
+        framePoints[i++] = poses.getY(pose, k) * scale;
+      }
+    }
+    frameToCanvas.mapPoints(canvasPoints, 0, framePoints, 0, numPoses * NUM_KEYPOINTS);
+
+    for (int group = 0; group < BONES.length; ++group) {
+      final int[] bones = BONES[group];
+      final float[] groupLines = lines[group];
+      int count = 0;
+      for (int pose = 0; pose < numPoses; ++pose) {
+        final int base = pose * NUM_KEYPOINTS;
+        for (int b = 0; b < bones.length; b += 2) {
+          final int from = bones[b];
+          final int to = bones[b + 1];
+          if (poses.getScore(pose, from) > minBoneScore
+              && poses.getScore(pose, to) > minBoneScore) {
+            groupLines[count++] = canvasPoints[2 * (base + from)];
+            groupLines[count++] = canvasPoints[2 * (base + from) + 1];
+            groupLines[count++] = canvasPoints[2 * (base + to)];
+            groupLines[count++] = canvasPoints[2 * (base + to) + 1];
+          }
+        }
+      }
+      if (count > 0) {
+        canvas.drawLines(groupLines, 0, count, bonePaints[group]);
+      }
+    }
+
+    int count = 0;
+    for (int pose = 0; pose < numPoses; ++pose) {
+      final int base = pose * NUM_KEYPOINTS;
+      for (int k = 0; k < NUM_FACE_KEYPOINTS; ++k) {
+        if (poses.getScore(pose, k) > minKeypointScore) {
+          dots[count++] = canvasPoints[2 * (base + k)];
+          dots[count++] = canvasPoints[2 * (base + k) + 1];
+        }
+      }
+    }
+    if (count > 0) {
+      canvas.drawPoints(dots, 0, count, keypointPaint);
+    }
+  }
+
+  private void ensureCapacity(final int numPoses) {
+    if (framePoints.length >= 2 * numPoses * NUM_KEYPOINTS) {
+      return;
+    }
+    framePoints = new float[2 * numPoses * NUM_KEYPOINTS];
+    canvasPoints = new float[2 * numPoses * NUM_KEYPOINTS];
+    for (int i = 0; i < BONES.length; ++i) {
+      lines[i] = new float[2 * numPoses * BONES[i].length];
+    }
+    dots = new float[2 * numPoses * NUM_FACE_KEYPOINTS];
+  }
+}
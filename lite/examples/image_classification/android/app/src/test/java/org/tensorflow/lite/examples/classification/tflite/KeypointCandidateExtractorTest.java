@@ -0,0 +1,97 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class KeypointCandidateExtractorTest {
+  private static final int HEIGHT = 12;
+  private static final int WIDTH = 10;
+  private static final int NUM_KEYPOINTS = 3;
+
+  @Test
+  public void keepsLocalMaximaAboveThreshold() {
+    final float[] heatmaps = new float[HEIGHT * WIDTH * NUM_KEYPOINTS];
+    set(heatmaps, 3, 4, 2, 0.9f);
+    // Next to a higher score of the same keypoint, and below the threshold.
+    set(heatmaps, 3, 5, 2, 0.8f);
+    set(heatmaps, 10, 8, 0, 0.3f);
+    // Next to the peak, but of another keypoint.
+    set(heatmaps, 3, 5, 1, 0.7f);
+
+    final KeypointCandidateExtractor extractor =
+        new KeypointCandidateExtractor(HEIGHT, WIDTH, NUM_KEYPOINTS, 10, 1, 0.5f);
+    assertEquals(2, extractor.extract(heatmaps));
+    assertCandidate(extractor, 0, 3, 4, 2, 0.9f);
+    assertCandidate(extractor, 1, 3, 5, 1, 0.7f);
+  }
+
+  @Test
+  public void keepsTheBestCandidatesAtCapacity() {
+    final float[] heatmaps = new float[HEIGHT * WIDTH * NUM_KEYPOINTS];
+    for (int cell = 0; cell < HEIGHT * WIDTH; ++cell) {
+      heatmaps[cell * NUM_KEYPOINTS] = 0.5f + 0.001f * cell;
+    }
+
+    final KeypointCandidateExtractor extractor =
+        new KeypointCandidateExtractor(HEIGHT, WIDTH, NUM_KEYPOINTS, 3, 0, 0.5f);
+    assertEquals(3, extractor.extract(heatmaps));
+    // The last cells score highest.
+    for (int i = 0; i < 3; ++i) {
+      final int cell = HEIGHT * WIDTH - 1 - i;
+      assertCandidate(extractor, i, cell / WIDTH, cell % WIDTH, 0, 0.5f + 0.001f * cell);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsAZeroCapacity() {
+    new KeypointCandidateExtractor(HEIGHT, WIDTH, NUM_KEYPOINTS, 0, 1, 0.5f);
+  }
+
+  @Test
+  public void reusesItsStorageAcrossFrames() {
+    final float[] heatmaps = new float[HEIGHT * WIDTH * NUM_KEYPOINTS];
+    set(heatmaps, 1, 1, 0, 0.9f);
+    final KeypointCandidateExtractor extractor =
+        new KeypointCandidateExtractor(HEIGHT, WIDTH, NUM_KEYPOINTS, 10, 1, 0.5f);
+    assertEquals(1, extractor.extract(heatmaps));
+
+    set(heatmaps, 1, 1, 0, 0.0f);
+    assertEquals(0, extractor.extract(heatmaps));
+    assertEquals(0, extractor.size());
+  }
+
+  private static void set(
+      final float[] heatmaps, final int y, final int x, final int keypoint, final float score) {
+    heatmaps[(y * WIDTH + x) * NUM_KEYPOINTS + keypoint] = score;
+  }
+
+  private static void assertCandidate(
+      final KeypointCandidateExtractor extractor,
+      final int i,
+      final int y,
+      final int x,
+      final int keypoint,
+      final float score) {
+    assertEquals(y, extractor.getY(i));
+    assertEquals(x, extractor.getX(i));
+    assertEquals(y * WIDTH + x, extractor.getCell(i));
+    assertEquals(keypoint, extractor.getKeypoint(i));
+    assertEquals(score, extractor.getScore(i), 0.0f);
+  }
+}
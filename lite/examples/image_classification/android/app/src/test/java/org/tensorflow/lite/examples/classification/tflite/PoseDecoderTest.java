@@ -0,0 +1,83 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PoseDecoderTest {
+  private static final float EPSILON = 1e-3f;
+
+  @Test
+  public void decodesEveryPersonOfACrowd() {
+    final PoseTensors tensors =
+        new PoseTensors(
+            new float[][] {{20, 20}, {180, 170}, {20, 170}}, new float[] {0.9f, 0.8f, 0.7f});
+    final PoseDecoder decoder = createDecoder(5);
+
+    assertEquals(3, decoder.decode(tensors.heatmaps, tensors.shortOffsets, tensors.midOffsets));
+    // Roots are taken by decreasing score, so the people come out in order.
+    for (int p = 0; p < 3; ++p) {
+      assertPerson(tensors.people[p], decoder, p);
+    }
+    assertEquals(0.9f, decoder.getPoseScore(0), EPSILON);
+    assertEquals(0.8f, decoder.getPoseScore(1), EPSILON);
+    assertEquals(0.7f, decoder.getPoseScore(2), EPSILON);
+  }
+
+  @Test
+  public void keepsTheBestPeopleUpToTheLimit() {
+    final PoseTensors tensors =
+        new PoseTensors(
+            new float[][] {{20, 20}, {180, 170}, {20, 170}}, new float[] {0.6f, 0.9f, 0.8f});
+    final PoseDecoder decoder = createDecoder(2);
+
+    assertEquals(2, decoder.decode(tensors.heatmaps, tensors.shortOffsets, tensors.midOffsets));
+    assertPerson(tensors.people[1], decoder, 0);
+    assertPerson(tensors.people[2], decoder, 1);
+  }
+
+  @Test
+  public void decodesNobodyFromEmptyOutputs() {
+    final PoseTensors tensors = new PoseTensors(new float[0][], new float[0]);
+    final PoseDecoder decoder = createDecoder(5);
+
+    assertEquals(0, decoder.decode(tensors.heatmaps, tensors.shortOffsets, tensors.midOffsets));
+    assertEquals(0, decoder.getNumPoses());
+  }
+
+  private static PoseDecoder createDecoder(final int maxPoses) {
+    final KeypointCandidateExtractor candidates =
+        new KeypointCandidateExtractor(
+            PoseTensors.HEIGHT, PoseTensors.WIDTH, PoseDecoder.NUM_KEYPOINTS, 100, 1, 0.5f);
+    return new PoseDecoder(
+        PoseTensors.HEIGHT,
+        PoseTensors.WIDTH,
+        PoseTensors.OUTPUT_STRIDE,
+        maxPoses,
+        candidates,
+        20.0f);
+  }
+
+  private static void assertPerson(
+      final float[][] expected, final PoseDecoder decoder, final int pose) {
+    for (int k = 0; k < PoseDecoder.NUM_KEYPOINTS; ++k) {
+      assertEquals(expected[k][0], decoder.getKeypointY(pose, k), EPSILON);
+      assertEquals(expected[k][1], decoder.getKeypointX(pose, k), EPSILON);
+    }
+  }
+}
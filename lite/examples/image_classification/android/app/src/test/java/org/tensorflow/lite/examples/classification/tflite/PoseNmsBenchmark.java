@@ -0,0 +1,78 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link PoseNms} on crowds of randomly placed people, about one in three of them a near
+ * copy of another one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseNmsBenchmark {
+  @Param({"1", "10", "50"})
+  public int numPoses;
+
+  private PoseNmsTest.Poses poses;
+  private PoseNms nms;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(1);
+    poses = new PoseNmsTest.Poses(numPoses);
+    for (int p = 0; p < numPoses; ++p) {
+      if (p % 3 == 2) {
+        // A copy of the previous person a couple of pixels off; its nose is 70 pixels above its
+        // centre.
+        final int original = (p - 1) * PoseDecoder.NUM_KEYPOINTS;
+        poses.add(random.nextFloat(), poses.y[original] + 72, poses.x[original] + 2, 3, 0.8f);
+      } else {
+        poses.add(
+            random.nextFloat(), random.nextFloat() * 353, random.nextFloat() * 257, 5, 0.8f);
+      }
+    }
+    nms = new PoseNms(numPoses, 0.5f, 0.1f, 0.1f);
+  }
+
+  @Benchmark
+  public int filter() {
+    return nms.filter(numPoses, poses.scores, poses.keypointScores, poses.y, poses.x);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(PoseNmsBenchmark.class.getSimpleName()).build()).run();
+  }
+}
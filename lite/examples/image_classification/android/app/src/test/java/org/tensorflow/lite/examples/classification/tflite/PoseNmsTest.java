@@ -0,0 +1,221 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class PoseNmsTest {
+  private static final int NUM_KEYPOINTS = PoseDecoder.NUM_KEYPOINTS;
+  private static final float OKS_THRESHOLD = 0.5f;
+  private static final float MIN_KEYPOINT_SCORE = 0.1f;
+
+  /** COCO per-keypoint standard deviations, as in the suppressor. */
+  private static final float[] SIGMAS = {
+    .026f, .025f, .025f, .035f, .035f, .079f, .079f, .072f, .072f, .062f, .062f, .107f, .107f,
+    .087f, .087f, .089f, .089f
+  };
+
+  private final Poses poses = new Poses(4);
+
+  @Test
+  public void dropsNearCopiesOfABetterPerson() {
+    poses.add(0.6f, 100, 100, 0.0f, 0.9f);
+    poses.add(0.9f, 102, 99, 0.0f, 0.9f);
+    final PoseNms nms = new PoseNms(4, OKS_THRESHOLD, 0.1f, MIN_KEYPOINT_SCORE);
+
+    assertEquals(1, filter(nms));
+    assertEquals(1, nms.getKept(0));
+  }
+
+  @Test
+  public void keepsSeparatePeopleByScore() {
+    poses.add(0.5f, 60, 60, 0.0f, 0.9f);
+    poses.add(0.8f, 250, 180, 0.0f, 0.9f);
+    // Overlapping the first one, but much smaller, hence a low similarity.
+    poses.add(0.7f, 60, 60, 0.0f, 0.9f, 0.3f);
+    final PoseNms nms = new PoseNms(4, OKS_THRESHOLD, 0.1f, MIN_KEYPOINT_SCORE);
+
+    assertEquals(3, filter(nms));
+    assertEquals(1, nms.getKept(0));
+    assertEquals(2, nms.getKept(1));
+    assertEquals(0, nms.getKept(2));
+  }
+
+  @Test
+  public void dropsPeopleUnderTheMinimumScore() {
+    poses.add(0.05f, 60, 60, 0.0f, 0.9f);
+    poses.add(0.8f, 250, 180, 0.0f, 0.9f);
+    final PoseNms nms = new PoseNms(4, OKS_THRESHOLD, 0.1f, MIN_KEYPOINT_SCORE);
+
+    assertEquals(1, filter(nms));
+    assertEquals(1, nms.getKept(0));
+    assertEquals(1, nms.getNumKept());
+  }
+
+  @Test
+  public void comparesOnlyConfidentKeypoints() {
+    poses.add(0.9f, 100, 100, 0.0f, 0.9f);
+    // Same place, but none of its keypoints is confident enough to be compared.
+    poses.add(0.5f, 100, 100, 0.0f, 0.05f);
+    final PoseNms nms = new PoseNms(4, OKS_THRESHOLD, 0.1f, MIN_KEYPOINT_SCORE);
+
+    assertEquals(2, filter(nms));
+  }
+
+  @Test
+  public void boxGapShortcutMatchesFullSimilarity() {
+    final Random random = new Random(1);
+    final int maxPoses = 50;
+    for (int trial = 0; trial < 20; ++trial) {
+      final Poses crowd = new Poses(maxPoses);
+      for (int p = 0; p < maxPoses; ++p) {
+        crowd.add(
+            random.nextFloat(),
+            random.nextFloat() * 353,
+            random.nextFloat() * 257,
+            random.nextFloat() * 10,
+            0.1f + random.nextFloat() * 0.9f,
+            0.3f + random.nextFloat());
+      }
+      final PoseNms nms = new PoseNms(maxPoses, OKS_THRESHOLD, 0.1f, MIN_KEYPOINT_SCORE);
+      final int numKept =
+          nms.filter(maxPoses, crowd.scores, crowd.keypointScores, crowd.y, crowd.x);
+
+      final int[] expected = filterWithFullSimilarity(crowd, 0.1f);
+      assertEquals(expected.length, numKept);
+      for (int i = 0; i < numKept; ++i) {
+        assertEquals(expected[i], nms.getKept(i));
+      }
+    }
+  }
+
+  private int filter(final PoseNms nms) {
+    return nms.filter(poses.size, poses.scores, poses.keypointScores, poses.y, poses.x);
+  }
+
+  /** Greedy OKS suppression computing the similarity of every pair in full. */
+  private static int[] filterWithFullSimilarity(final Poses poses, final float minPoseScore) {
+    final Integer[] order = new Integer[poses.size];
+    for (int i = 0; i < poses.size; ++i) {
+      order[i] = i;
+    }
+    // A stable sort, as the suppressor's insertion sort is.
+    Arrays.sort(order, (a, b) -> Float.compare(poses.scores[b], poses.scores[a]));
+
+    final int[] kept = new int[poses.size];
+    int numKept = 0;
+    for (final int pose : order) {
+      if (poses.scores[pose] < minPoseScore) {
+        break;
+      }
+      boolean duplicate = false;
+      for (int j = 0; j < numKept && !duplicate; ++j) {
+        duplicate = getSimilarity(poses, pose, kept[j]) > OKS_THRESHOLD;
+      }
+      if (!duplicate) {
+        kept[numKept++] = pose;
+      }
+    }
+    return Arrays.copyOf(kept, numKept);
+  }
+
+  /** OKS of {@code a} against {@code b}, scaled by the area of the box of {@code b}. */
+  private static float getSimilarity(final Poses poses, final int a, final int b) {
+    float top = Float.MAX_VALUE;
+    float left = Float.MAX_VALUE;
+    float bottom = -Float.MAX_VALUE;
+    float right = -Float.MAX_VALUE;
+    for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+      top = Math.min(top, poses.y[b * NUM_KEYPOINTS + k]);
+      left = Math.min(left, poses.x[b * NUM_KEYPOINTS + k]);
+      bottom = Math.max(bottom, poses.y[b * NUM_KEYPOINTS + k]);
+      right = Math.max(right, poses.x[b * NUM_KEYPOINTS + k]);
+    }
+    final float area = Math.max((bottom - top) * (right - left), 1.0f);
+
+    float similarity = 0.0f;
+    int visible = 0;
+    for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+      final int i = a * NUM_KEYPOINTS + k;
+      final int j = b * NUM_KEYPOINTS + k;
+      if (poses.keypointScores[i] < MIN_KEYPOINT_SCORE
+          || poses.keypointScores[j] < MIN_KEYPOINT_SCORE) {
+        continue;
+      }
+      final float dy = poses.y[i] - poses.y[j];
+      final float dx = poses.x[i] - poses.x[j];
+      final float kappa = 2 * SIGMAS[k];
+      similarity += (float) Math.exp(-(dy * dy + dx * dx) / (2 * kappa * kappa) / area);
+      ++visible;
+    }
+    return visible > 0 ? similarity / visible : 0.0f;
+  }
+
+  /** People in the flat layout the suppressor reads, built from a fixed body shape. */
+  static class Poses {
+    /** Keypoints of a person relative to its centre, as {y, x} in input pixels. */
+    private static final float[][] BODY = {
+      {-70, 0}, {-75, 5}, {-75, -5}, {-70, 13}, {-70, -13},
+      {-40, 18}, {-40, -18}, {-15, 25}, {-15, -25}, {10, 27}, {10, -27},
+      {15, 10}, {15, -10}, {45, 11}, {45, -11}, {75, 12}, {75, -12}
+    };
+
+    final float[] scores;
+    final float[] keypointScores;
+    final float[] y;
+    final float[] x;
+    int size;
+
+    Poses(final int capacity) {
+      scores = new float[capacity];
+      keypointScores = new float[capacity * NUM_KEYPOINTS];
+      y = new float[capacity * NUM_KEYPOINTS];
+      x = new float[capacity * NUM_KEYPOINTS];
+    }
+
+    void add(
+        final float score,
+        final float centreY,
+        final float centreX,
+        final float jitter,
+        final float keypointScore) {
+      add(score, centreY, centreX, jitter, keypointScore, 1.0f);
+    }
+
+    /** Appends a person, its keypoints moved by up to {@code jitter} pixels each way. */
+    void add(
+        final float score,
+        final float centreY,
+        final float centreX,
+        final float jitter,
+        final float keypointScore,
+        final float scale) {
+      scores[size] = score;
+      for (int k = 0; k < NUM_KEYPOINTS; ++k) {
+        final int i = size * NUM_KEYPOINTS + k;
+        final float wobble = jitter * (float) Math.sin(7 * k + size);
+        y[i] = centreY + BODY[k][0] * scale + wobble;
+        x[i] = centreX + BODY[k][1] * scale - wobble;
+        keypointScores[i] = keypointScore;
+      }
+      ++size;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares getting the pose model outputs into the decoder and decoding them, with outputs bound
+ * as nested {@code float[1][23][17][c]} arrays as the classifier used to, against direct buffers
+ * bulk copied into flat arrays.
+ *
+ * <p>Direct buffers stand for the output tensors. For nested arrays the binding copies one
+ * innermost array at a time, which is what the first benchmark does, before flattening them for
+ * the decoder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoseOutputBenchmark {
+  private static final int HEIGHT = PoseTensors.HEIGHT;
+  private static final int WIDTH = PoseTensors.WIDTH;
+
+  private FloatBuffer heatmapsTensor;
+  private FloatBuffer shortOffsetsTensor;
+  private FloatBuffer midOffsetsTensor;
+
+  private final float[][][][] nestedHeatmaps = new float[1][HEIGHT][WIDTH][17];
+  private final float[][][][] nestedShortOffsets = new float[1][HEIGHT][WIDTH][34];
+  private final float[][][][] nestedMidOffsets = new float[1][HEIGHT][WIDTH][64];
+
+  private final float[] heatmaps = new float[HEIGHT * WIDTH * 17];
+  private final float[] shortOffsets = new float[HEIGHT * WIDTH * 34];
+  private final float[] midOffsets = new float[HEIGHT * WIDTH * 64];
+
+  private PoseDecoder decoder;
+
+  @Setup
+  public void setUp() {
+    final PoseTensors tensors =
+        new PoseTensors(
+            new float[][] {{20, 20}, {180, 170}, {20, 170}}, new float[] {0.9f, 0.8f, 0.7f});
+    heatmapsTensor = allocate(tensors.heatmaps);
+    shortOffsetsTensor = allocate(tensors.shortOffsets);
+    midOffsetsTensor = allocate(tensors.midOffsets);
+    decoder =
+        new PoseDecoder(
+            HEIGHT,
+            WIDTH,
+            PoseTensors.OUTPUT_STRIDE,
+            10,
+            new KeypointCandidateExtractor(HEIGHT, WIDTH, 17, 100, 1, 0.5f),
+            20.0f);
+  }
+
+  @Benchmark
+  public int nestedArrays() {
+    copyToNested(heatmapsTensor, nestedHeatmaps);
+    copyToNested(shortOffsetsTensor, nestedShortOffsets);
+    copyToNested(midOffsetsTensor, nestedMidOffsets);
+    flatten(nestedHeatmaps, heatmaps);
+    flatten(nestedShortOffsets, shortOffsets);
+    flatten(nestedMidOffsets, midOffsets);
+    return decoder.decode(heatmaps, shortOffsets, midOffsets);
+  }
+
+  @Benchmark
+  public int flatBuffers() {
+    heatmapsTensor.rewind();
+    heatmapsTensor.get(heatmaps);
+    shortOffsetsTensor.rewind();
+    shortOffsetsTensor.get(shortOffsets);
+    midOffsetsTensor.rewind();
+    midOffsetsTensor.get(midOffsets);
+    return decoder.decode(heatmaps, shortOffsets, midOffsets);
+  }
+
+  private static FloatBuffer allocate(final float[] values) {
+    final FloatBuffer buffer =
+        ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    buffer.put(values);
+    return buffer;
+  }
+
+  private static void copyToNested(final FloatBuffer src, final float[][][][] dst) {
+    src.rewind();
+    for (final float[][] row : dst[0]) {
+      for (final float[] cell : row) {
+        src.get(cell);
+      }
+    }
+  }
+
+  private static void flatten(final float[][][][] src, final float[] dst) {
+    int offset = 0;
+    for (final float[][] row : src[0]) {
+      for (final float[] cell : row) {
+        System.arraycopy(cell, 0, dst, offset, cell.length);
+        offset += cell.length;
+      }
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(PoseOutputBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -0,0 +1,102 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+/**
+ * Synthesizes the heatmaps, short-range offsets and mid-range displacements a PersonLab model
+ * outputs for people at known positions, with exact offsets, so that decoding them recovers the
+ * keypoints to float precision.
+ */
+public class PoseTensors {
+  public static final int HEIGHT = 23;
+  public static final int WIDTH = 17;
+  public static final float OUTPUT_STRIDE = 16.0f;
+
+  /** Keypoints of a person relative to its nose, as {y, x} in input pixels. */
+  private static final float[][] BODY = {
+    {0, 20}, {-5, 25}, {-5, 15}, {0, 33}, {0, 7},
+    {30, 38}, {30, 2}, {55, 45}, {55, -5}, {80, 47}, {80, -7},
+    {85, 30}, {85, 10}, {115, 31}, {115, 9}, {145, 32}, {145, 8}
+  };
+
+  /** Same order as the decoder's tree: parent then child of each edge. */
+  private static final int[] EDGE_PARENTS = {0, 1, 0, 2, 0, 5, 7, 5, 11, 13, 0, 6, 8, 6, 12, 14};
+  private static final int[] EDGE_CHILDREN = {
+    1, 3, 2, 4, 5, 7, 9, 11, 13, 15, 6, 8, 10, 12, 14, 16
+  };
+
+  public final float[] heatmaps = new float[HEIGHT * WIDTH * PoseDecoder.NUM_KEYPOINTS];
+  public final float[] shortOffsets = new float[HEIGHT * WIDTH * 2 * PoseDecoder.NUM_KEYPOINTS];
+  public final float[] midOffsets = new float[HEIGHT * WIDTH * 4 * PoseDecoder.NUM_EDGES];
+
+  /** Keypoints of each person, as {y, x} per keypoint. */
+  public final float[][][] people;
+
+  /**
+   * @param noses Nose of each person, as {y, x} in input pixels.
+   * @param scores Heatmap score of every keypoint of each person.
+   */
+  public PoseTensors(final float[][] noses, final float[] scores) {
+    final int numKeypoints = PoseDecoder.NUM_KEYPOINTS;
+    final int numEdges = PoseDecoder.NUM_EDGES;
+    people = new float[noses.length][numKeypoints][];
+    for (int p = 0; p < noses.length; ++p) {
+      for (int k = 0; k < numKeypoints; ++k) {
+        people[p][k] = new float[] {noses[p][0] + BODY[k][0], noses[p][1] + BODY[k][1]};
+        heatmaps[nearestCell(people[p][k]) * numKeypoints + k] = scores[p];
+      }
+      for (int e = 0; e < numEdges; ++e) {
+        setDisplacement(people[p], e, EDGE_PARENTS[e], EDGE_CHILDREN[e]);
+        setDisplacement(people[p], numEdges + e, EDGE_CHILDREN[e], EDGE_PARENTS[e]);
+      }
+    }
+
+    // Every cell points at the nearest person's keypoint of each type.
+    for (int cell = 0; cell < HEIGHT * WIDTH; ++cell) {
+      final float cellY = (cell / WIDTH) * OUTPUT_STRIDE;
+      final float cellX = (cell % WIDTH) * OUTPUT_STRIDE;
+      for (int k = 0; k < numKeypoints; ++k) {
+        float[] nearest = null;
+        float nearestDistance = Float.MAX_VALUE;
+        for (final float[][] person : people) {
+          final float dy = person[k][0] - cellY;
+          final float dx = person[k][1] - cellX;
+          if (dy * dy + dx * dx < nearestDistance) {
+            nearestDistance = dy * dy + dx * dx;
+            nearest = person[k];
+          }
+        }
+        if (nearest != null) {
+          shortOffsets[cell * 2 * numKeypoints + k] = nearest[0] - cellY;
+          shortOffsets[cell * 2 * numKeypoints + numKeypoints + k] = nearest[1] - cellX;
+        }
+      }
+    }
+  }
+
+  private void setDisplacement(
+      final float[][] person, final int edge, final int source, final int target) {
+    final int i = nearestCell(person[source]) * 4 * PoseDecoder.NUM_EDGES + edge;
+    midOffsets[i] = person[target][0] - person[source][0];
+    midOffsets[i + 2 * PoseDecoder.NUM_EDGES] = person[target][1] - person[source][1];
+  }
+
+  private static int nearestCell(final float[] point) {
+    final int y = Math.min(Math.max(Math.round(point[0] / OUTPUT_STRIDE), 0), HEIGHT - 1);
+    final int x = Math.min(Math.max(Math.round(point[1] / OUTPUT_STRIDE), 0), WIDTH - 1);
+    return y * WIDTH + x;
+  }
+}
@@ -0,0 +1,111 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.classification.tflite;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares writing the 257x353 pose input pixel by pixel, with three normalizations and three
+ * {@code putFloat} calls each as the classifier used to, against {@link TensorWriter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TensorWriterBenchmark {
+  private static final int WIDTH = 257;
+  private static final int HEIGHT = 353;
+  private static final float IMAGE_MEAN = 127.5f;
+  private static final float IMAGE_STD = 127.5f;
+
+  private int[] pixels;
+  private ByteBuffer floatInput;
+  private ByteBuffer quantizedInput;
+  private TensorWriter floatWriter;
+  private TensorWriter quantizedWriter;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(1);
+    pixels = new int[WIDTH * HEIGHT];
+    for (int i = 0; i < pixels.length; ++i) {
+      pixels[i] = random.nextInt();
+    }
+    floatInput = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3 * 4);
+    floatInput.order(ByteOrder.nativeOrder());
+    quantizedInput = ByteBuffer.allocateDirect(WIDTH * HEIGHT * 3);
+    quantizedInput.order(ByteOrder.nativeOrder());
+    floatWriter = new TensorWriter(floatInput, WIDTH, HEIGHT, IMAGE_MEAN, IMAGE_STD);
+    quantizedWriter = new TensorWriter(quantizedInput, WIDTH, HEIGHT);
+  }
+
+  @Benchmark
+  public ByteBuffer perPixelFloat() {
+    floatInput.rewind();
+    for (final int pixel : pixels) {
+      floatInput.putFloat((((pixel >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+      floatInput.putFloat((((pixel >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+      floatInput.putFloat(((pixel & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+    }
+    return floatInput;
+  }
+
+  @Benchmark
+  public ByteBuffer tableFloat() {
+    floatWriter.write(pixels);
+    return floatInput;
+  }
+
+  @Benchmark
+  public ByteBuffer perPixelQuantized() {
+    quantizedInput.rewind();
+    for (final int pixel : pixels) {
+      quantizedInput.put((byte) ((pixel >> 16) & 0xFF));
+      quantizedInput.put((byte) ((pixel >> 8) & 0xFF));
+      quantizedInput.put((byte) (pixel & 0xFF));
+    }
+    return quantizedInput;
+  }
+
+  @Benchmark
+  public ByteBuffer rowQuantized() {
+    quantizedWriter.write(pixels);
+    return quantizedInput;
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(TensorWriterBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
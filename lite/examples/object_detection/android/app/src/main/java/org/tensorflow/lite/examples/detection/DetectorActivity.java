@@ -31,15 +31,21 @@ import android.util.Size;
 import android.util.TypedValue;
 import android.widget.Toast;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import org.tensorflow.lite.examples.detection.customview.OverlayView;
 import org.tensorflow.lite.examples.detection.customview.OverlayView.DrawCallback;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
+import org.tensorflow.lite.examples.detection.env.FramePipeline;
+import org.tensorflow.lite.examples.detection.env.FrameScheduler;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.MotionGate;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
 import org.tensorflow.lite.examples.detection.tflite.Classifier;
 import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel;
+import org.tensorflow.lite.examples.detection.tflite.TiledDetector;
 import org.tensorflow.lite.examples.detection.tracking.MultiBoxTracker;
 
 /**
@@ -57,28 +63,65 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
   private static final DetectorMode MODE = DetectorMode.TF_OD_API;
   // Minimum detection confidence to track a detection.
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
+  // Maximum number of detections tracked per frame.
+  private static final int MAX_RESULTS_TF_OD_API = 10;
   private static final boolean MAINTAIN_ASPECT = false;
+  // Grid of overlapping tiles the frame is split into in TF_OD_API_TILED mode.
+  private static final int TILE_COLUMNS = 2;
+  private static final int TILE_ROWS = 2;
+  private static final float TILE_OVERLAP = 0.2f;
+  // Run all tiles with one batched inference instead of one after another. Only models without
+  // the detection postprocessing op, which the default model ends in, batch; others fall back to
+  // one inference per tile.
+  private static final boolean TILE_BATCHED = false;
+  // Overlap above which boxes of a class found by neighbouring tiles are merged.
+  private static final float TILE_MERGE_IOU_THRESHOLD = 0.5f;
   private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
   private static final boolean SAVE_PREVIEW_BITMAP = false;
+  // Write the model input straight from the camera's YUV planes instead of through a Bitmap.
+  private static final boolean FUSED_PREPROCESSING = true;
   private static final float TEXT_SIZE_DIP = 10;
+  // Which frames to detect on; the tracker predicts the boxes in between.
+  private static final SchedulingMode SCHEDULING = SchedulingMode.MOTION_TRIGGERED;
+  // Minimum time between two detections for the fixed interval and motion triggered modes.
+  private static final long DETECTION_INTERVAL_MS = 100;
+  // Fraction of the time spent detecting in the latency budget mode.
+  private static final float DETECTION_BUSY_FRACTION = 0.5f;
+  // Number of latest detections their average latency is taken over.
+  private static final int LATENCY_WINDOW = 16;
+  // Run the input preparation, inference and tracking of consecutive frames on their own threads,
+  // overlapping, with up to PIPELINE_DEPTH frames in flight. Not for the tiled mode, which batches
+  // its tiles instead. The latency scheduling goes by is then that of inference alone.
+  private static final boolean PIPELINED = true;
+  private static final int PIPELINE_DEPTH = 3;
+  // Follow the tracked objects by optical flow on the luminance of every frame.
+  private static final boolean USE_OPTICAL_FLOW = true;
+  // In the motion triggered mode, skip detection on frames whose luminance, sampled every
+  // MOTION_GATE_STEP pixels, differs from the last detected frame by less than
+  // MOTION_GATE_THRESHOLD grey levels on average, but detect at least every MOTION_GATE_MAX_GATED
+  // frames due for detection.
+  private static final int MOTION_GATE_STEP = 8;
+  private static final float MOTION_GATE_THRESHOLD = 4.0f;
+  private static final int MOTION_GATE_MAX_GATED = 10;
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
 
-  private Classifier detector;
+  private TFLiteObjectDetectionAPIModel detector;
+  private TiledDetector tiledDetector;
+  private FramePipeline<DetectionFrame> pipeline;
 
   private long lastProcessingTimeMs;
   private Bitmap rgbFrameBitmap = null;
   private Bitmap croppedBitmap = null;
   private Bitmap cropCopyBitmap = null;
 
-  private boolean computingDetection = false;
-
   private long timestamp = 0;
 
   private Matrix frameToCropTransform;
   private Matrix cropToFrameTransform;
 
   private MultiBoxTracker tracker;
+  private FrameScheduler scheduler;
 
   private BorderedText borderedText;
 
@@ -101,7 +144,9 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
               TF_OD_API_MODEL_FILE,
               TF_OD_API_LABELS_FILE,
               TF_OD_API_INPUT_SIZE,
-              TF_OD_API_IS_QUANTIZED);
+              TF_OD_API_IS_QUANTIZED,
+              MAX_RESULTS_TF_OD_API,
+              MINIMUM_CONFIDENCE_TF_OD_API);
       cropSize = TF_OD_API_INPUT_SIZE;
     } catch (final IOException e) {
       e.printStackTrace();
@@ -132,6 +177,24 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
     cropToFrameTransform = new Matrix();
     frameToCropTransform.invert(cropToFrameTransform);
 
+    if (tiledDetector != null) {
+      tiledDetector.close();
+      tiledDetector = null;
+    }
+    if (MODE == DetectorMode.TF_OD_API_TILED) {
+      tiledDetector =
+          new TiledDetector(
+              detector,
+              cropSize,
+              TILE_COLUMNS,
+              TILE_ROWS,
+              TILE_OVERLAP,
+              sensorOrientation,
+              TILE_BATCHED,
+              TILE_MERGE_IOU_THRESHOLD,
+              MINIMUM_CONFIDENCE_TF_OD_API);
+    }
+
     trackingOverlay = (OverlayView) findViewById(R.id.tracking_overlay);
     trackingOverlay.addCallback(
         new DrawCallback() {
@@ -145,31 +208,198 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
         });
 
     tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+    if (pipeline != null) {
+      pipeline.close();
+      pipeline = null;
+    }
+    if (PIPELINED && tiledDetector == null && detector != null) {
+      pipeline = createPipeline(cropSize);
+      scheduler = new FrameScheduler(createSchedulingPolicy(), LATENCY_WINDOW, PIPELINE_DEPTH);
+    } else {
+      scheduler = new FrameScheduler(createSchedulingPolicy(), LATENCY_WINDOW);
+    }
+  }
+
+  @Override
+  public synchronized void onDestroy() {
+    if (pipeline != null) {
+      pipeline.close();
+      pipeline = null;
+    }
+    if (tiledDetector != null) {
+      // Detections still running finish on their own thread.
+      tiledDetector.close();
+    }
+    super.onDestroy();
+  }
+
+  /**
+   * Creates the detection pipeline: the camera thread captures each frame into a free slot, then
+   * the stages write the model input from the crop, run the model, and track the results.
+   */
+  private FramePipeline<DetectionFrame> createPipeline(final int cropSize) {
+    final DetectionFrame[] frames = new DetectionFrame[PIPELINE_DEPTH];
+    for (int i = 0; i < frames.length; ++i) {
+      frames[i] =
+          new DetectionFrame(
+              detector.createSlot(), Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888));
+    }
+    final List<FramePipeline.Stage<DetectionFrame>> stages = new ArrayList<>();
+    stages.add(
+        frame -> {
+          if (!frame.inputWritten) {
+            detector.writeInput(frame.slot, frame.croppedBitmap);
+          }
+        });
+    stages.add(
+        frame -> {
+          final long startTime = SystemClock.uptimeMillis();
+          try {
+            detector.run(frame.slot);
+          } finally {
+            frame.inferenceTimeMs = SystemClock.uptimeMillis() - startTime;
+          }
+        });
+    stages.add(
+        new FramePipeline.Stage<DetectionFrame>() {
+          @Override
+          public void process(final DetectionFrame frame) {
+            trackFrame(frame);
+          }
+
+          @Override
+          public void skip(final DetectionFrame frame) {
+            // The outputs of the slot are stale; only count the frame done.
+            finishFrame(frame);
+          }
+        });
+    return new FramePipeline<>("detection", frames, stages);
+  }
+
+  /** Captures the current camera frame into a free pipeline slot and hands it to the stages. */
+  private void submitToPipeline(final long currTimestamp) {
+    final DetectionFrame frame = pipeline.acquire();
+    if (frame == null) {
+      // The last stage finishes a frame with the scheduler just before freeing its slot.
+      scheduler.cancel();
+      readyForNextImage();
+      return;
+    }
+    scheduler.commit();
+    frame.timestamp = currTimestamp;
+    // Stays 0 if the frame fails before inference.
+    frame.inferenceTimeMs = 0;
+    final YuvFrame yuvFrame = FUSED_PREPROCESSING ? getYuvFrame() : null;
+    frame.inputWritten = yuvFrame != null;
+    if (yuvFrame != null) {
+      // Releases the frame as soon as the input is written.
+      detector.writeInput(frame.slot, yuvFrame, cropToFrameTransform);
+    } else {
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+      readyForNextImage();
+      final Canvas canvas = new Canvas(frame.croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+    }
+    pipeline.submit(frame);
+  }
+
+  /** Last stage of the pipeline: maps the detections of a frame into it and tracks them. */
+  private void trackFrame(final DetectionFrame frame) {
+    try {
+      final List<Classifier.Recognition> results = detector.readResults(frame.slot);
+      final List<Classifier.Recognition> mappedRecognitions = frame.mappedRecognitions;
+      mappedRecognitions.clear();
+      for (final Classifier.Recognition result : results) {
+        // The pooled location of the slot, mapped in place; readResults refills it next time.
+        final RectF location = result.getLocation();
+        if (location != null) {
+          cropToFrameTransform.mapRect(location);
+          mappedRecognitions.add(result);
+        }
+      }
+      tracker.trackResults(mappedRecognitions, frame.timestamp);
+      trackingOverlay.postInvalidate();
+    } finally {
+      // Even if tracking failed, the pipeline frees the slot, so the scheduler must count it done.
+      finishFrame(frame);
+    }
+    final String cropInfo =
+        frame.croppedBitmap.getWidth() + "x" + frame.croppedBitmap.getHeight();
+    runOnUiThread(
+        () -> {
+          showFrameInfo(previewWidth + "x" + previewHeight);
+          showCropInfo(cropInfo);
+          showInference(lastProcessingTimeMs + "ms");
+        });
+  }
+
+  /** Counts a frame leaving the pipeline done with the scheduler. */
+  private void finishFrame(final DetectionFrame frame) {
+    lastProcessingTimeMs = frame.inferenceTimeMs;
+    scheduler.finish(frame.inferenceTimeMs);
+  }
+
+  private FrameScheduler.Policy createSchedulingPolicy() {
+    switch (SCHEDULING) {
+      case LATENCY_BUDGET:
+        return new FrameScheduler.LatencyBudget(DETECTION_BUSY_FRACTION);
+      case MOTION_TRIGGERED:
+        return new FrameScheduler.MotionTriggered(
+            new MotionGate(
+                previewWidth,
+                previewHeight,
+                MOTION_GATE_STEP,
+                MOTION_GATE_THRESHOLD,
+                MOTION_GATE_MAX_GATED),
+            DETECTION_INTERVAL_MS);
+      case FIXED_INTERVAL:
+      default:
+        return new FrameScheduler.FixedInterval(DETECTION_INTERVAL_MS);
+    }
   }
 
   @Override
   protected void processImage() {
     ++timestamp;
     final long currTimestamp = timestamp;
+    final boolean hasLuminance = getYuvFrame() != null;
+    if (USE_OPTICAL_FLOW && hasLuminance) {
+      tracker.onFrame(getLuminance(), getLuminanceStride(), currTimestamp);
+    }
+    tracker.predict(currTimestamp);
     trackingOverlay.postInvalidate();
 
-    // No mutex needed as this method is not reentrant.
-    if (computingDetection) {
+    // Frames arriving while a detection runs are dropped, so each detection runs on the freshest
+    // frame. Skipped frames keep the tracker coasting on its results.
+    if (!scheduler.tryStart(
+        SystemClock.uptimeMillis(),
+        hasLuminance ? getLuminance() : null,
+        hasLuminance ? getLuminanceStride() : 0)) {
       readyForNextImage();
       return;
     }
-    computingDetection = true;
+    LOGGER.v("Scheduler: " + scheduler.getStatString());
     LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
+    if (pipeline != null) {
+      submitToPipeline(currTimestamp);
+      return;
+    }
+    scheduler.commit();
 
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+    // The tiles are all cut from the frame bitmap, which the fused preprocessing skips.
+    final YuvFrame yuvFrame =
+        FUSED_PREPROCESSING && tiledDetector == null ? getYuvFrame() : null;
+    if (yuvFrame == null) {
+      rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
 
-    readyForNextImage();
+      readyForNextImage();
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
-    // For examining the actual TF input.
-    if (SAVE_PREVIEW_BITMAP) {
-      ImageUtils.saveBitmap(croppedBitmap);
+      final Canvas canvas = new Canvas(croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmap, frameToCropTransform, null);
+      // For examining the actual TF input.
+      if (SAVE_PREVIEW_BITMAP) {
+        ImageUtils.saveBitmap(croppedBitmap);
+      }
     }
 
     runInBackground(
@@ -178,7 +408,17 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
           public void run() {
             LOGGER.i("Running detection on image " + currTimestamp);
             final long startTime = SystemClock.uptimeMillis();
-            final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
+            final List<Classifier.Recognition> results;
+            if (tiledDetector != null) {
+              // Already in frame coordinates.
+              results = tiledDetector.recognizeImage(rgbFrameBitmap);
+              LOGGER.v("Tile timings:\n" + tiledDetector.getStatString());
+            } else if (yuvFrame != null) {
+              // Releases the frame as soon as the input is written.
+              results = detector.recognizeImage(yuvFrame, cropToFrameTransform);
+            } else {
+              results = detector.recognizeImage(croppedBitmap);
+            }
             lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
 
             cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
@@ -188,22 +428,17 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
             paint.setStyle(Style.STROKE);
             paint.setStrokeWidth(2.0f);
 
-            float minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-            switch (MODE) {
-              case TF_OD_API:
-                minimumConfidence = MINIMUM_CONFIDENCE_TF_OD_API;
-                break;
-            }
-
+            // The detector only returns the detections scoring at least the minimum confidence.
             final List<Classifier.Recognition> mappedRecognitions =
                 new LinkedList<Classifier.Recognition>();
 
             for (final Classifier.Recognition result : results) {
               final RectF location = result.getLocation();
-              if (location != null && result.getConfidence() >= minimumConfidence) {
-                canvas.drawRect(location, paint);
-
-                cropToFrameTransform.mapRect(location);
+              if (location != null) {
+                if (tiledDetector == null) {
+                  canvas.drawRect(location, paint);
+                  cropToFrameTransform.mapRect(location);
+                }
 
                 result.setLocation(location);
                 mappedRecognitions.add(result);
@@ -213,7 +448,7 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
             tracker.trackResults(mappedRecognitions, currTimestamp);
             trackingOverlay.postInvalidate();
 
-            computingDetection = false;
+            scheduler.finish(lastProcessingTimeMs);
 
             runOnUiThread(
                 new Runnable() {
@@ -240,8 +475,36 @@ public class DetectorActivity extends CameraActivity implements OnImageAvailable
 
   // Which detection model to use: by default uses Tensorflow Object Detection API frozen
   // checkpoints.
+  // TF_OD_API_TILED runs the same model on overlapping tiles of the full frame to find small
+  // objects.
   private enum DetectorMode {
-    TF_OD_API;
+    TF_OD_API,
+    TF_OD_API_TILED;
+  }
+
+  /** A frame in flight through the detection pipeline. */
+  private static class DetectionFrame extends FramePipeline.Frame {
+    final TFLiteObjectDetectionAPIModel.Slot slot;
+    final Bitmap croppedBitmap;
+    long timestamp;
+    // Whether the model input was written straight from the camera frame.
+    boolean inputWritten;
+    long inferenceTimeMs;
+    // Detections of the frame in frame coordinates, reused by the next frame in the slot.
+    final List<Classifier.Recognition> mappedRecognitions = new ArrayList<>();
+
+    DetectionFrame(final TFLiteObjectDetectionAPIModel.Slot slot, final Bitmap croppedBitmap) {
+      this.slot = slot;
+      this.croppedBitmap = croppedBitmap;
+    }
+  }
+
+  // How to pick the frames to detect on: at a fixed rate, at the rate keeping the detector busy
+  // for a fraction of the time, or at most at a fixed rate and only when the scene moved.
+  private enum SchedulingMode {
+    FIXED_INTERVAL,
+    LATENCY_BUDGET,
+    MOTION_TRIGGERED;
   }
 
   @Override
@@ -0,0 +1,156 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.List;
+
+/**
+ * Runs frames through a sequence of stages, each on its own thread, so that the stages of
+ * consecutive frames overlap: while one frame is in the second stage, the next can already be in
+ * the first. Throughput is then bounded by the slowest stage rather than by the sum of them.
+ *
+ * <p>Frames are preallocated slots holding whatever the stages need, which circulate through
+ * {@link SpscRing}s: the caller acquires a free slot and fills it, submits it to the first stage,
+ * each stage hands it to the next, and the last one puts it back with the free slots. Since every
+ * ring has one producer and one consumer, the caller must acquire and submit from a single thread.
+ *
+ * <p>A frame a stage throws on is marked failed, and the later stages {@link Stage#skip} it instead
+ * of processing it, so that none of them works on what the failed stage left half done.
+ */
+public class FramePipeline<T extends FramePipeline.Frame> {
+  private static final Logger LOGGER = new Logger();
+
+  /** Base of the frame slots, recording whether a stage failed on the frame. */
+  public static class Frame {
+    // Only touched by the thread holding the frame; the rings publish it to the next one.
+    boolean failed;
+
+    /** Whether a stage threw on the frame since it was last acquired. */
+    public boolean hasFailed() {
+      return failed;
+    }
+  }
+
+  /**
+   * One step of the processing of a frame. A runtime exception it throws is logged, and the frame
+   * goes on to the next stages marked failed.
+   */
+  public interface Stage<T> {
+    void process(T frame);
+
+    /**
+     * Called instead of {@link #process} on a frame an earlier stage failed on, e.g. to account for
+     * the frame being done. Does nothing by default.
+     */
+    default void skip(T frame) {}
+  }
+
+  private final SpscRing<T> freeFrames;
+  // Input of each stage; the last stage feeds the free frames.
+  private final SpscRing<?>[] inputs;
+  private final Thread[] threads;
+
+  /**
+   * Creates a pipeline and starts its threads.
+   *
+   * @param name Prefix of the names of the stage threads.
+   * @param frames The frame slots, initially free.
+   * @param stages The stages, in order.
+   */
+  public FramePipeline(final String name, final T[] frames, final List<Stage<T>> stages) {
+    freeFrames = new SpscRing<T>(frames.length);
+    for (final T frame : frames) {
+      freeFrames.offer(frame);
+    }
+    final int numStages = stages.size();
+    inputs = new SpscRing<?>[numStages];
+    for (int i = 0; i < numStages; ++i) {
+      inputs[i] = new SpscRing<T>(frames.length);
+    }
+    threads = new Thread[numStages];
+    for (int i = 0; i < numStages; ++i) {
+      final int index = i;
+      final Stage<T> stage = stages.get(i);
+      final SpscRing<T> input = getInput(i);
+      final SpscRing<T> output = i + 1 < numStages ? getInput(i + 1) : freeFrames;
+      threads[i] =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  try {
+                    while (true) {
+                      final T frame = input.take();
+                      try {
+                        if (frame.failed) {
+                          stage.skip(frame);
+                        } else {
+                          stage.process(frame);
+                        }
+                      } catch (final RuntimeException e) {
+                        // Letting it through would end the thread and lose the slot of the frame,
+                        // which goes on marked failed so that the next stages skip it.
+                        LOGGER.e(e, "Stage %d failed on a frame.", index);
+                        frame.failed = true;
+                      }
+                      output.offer(frame);
+                    }
+                  } catch (final InterruptedException e) {
+                    // Closed.
+                  }
+                }
+              },
+              name + "-" + i);
+      threads[i].start();
+    }
+  }
+
+  /** Returns a free frame slot, no longer marked failed, or null if all of them are in flight. */
+  public T acquire() {
+    final T frame = freeFrames.poll();
+    if (frame != null) {
+      frame.failed = false;
+    }
+    return frame;
+  }
+
+  /** Hands a frame slot obtained from {@link #acquire} to the first stage. */
+  public void submit(final T frame) {
+    getInput(0).offer(frame);
+  }
+
+  @SuppressWarnings("unchecked")
+  private SpscRing<T> getInput(final int stage) {
+    // Every input is created as a SpscRing<T>; arrays of a generic type cannot be.
+    return (SpscRing<T>) inputs[stage];
+  }
+
+  /** Stops the stage threads once their current frames are processed. */
+  public void close() {
+    for (final Thread thread : threads) {
+      thread.interrupt();
+    }
+    for (final Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (final InterruptedException e) {
+        LOGGER.e(e, "Interrupted while closing the pipeline.");
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded queue between exactly one producer thread and one consumer thread.
+ *
+ * <p>Each side only ever writes its own index, so no locks are needed: the producer publishes an
+ * item by advancing the tail after storing it, and the consumer frees its cell by advancing the
+ * head after reading it. A consumer finding the ring empty parks until the producer's next offer
+ * unparks it.
+ */
+public class SpscRing<T> {
+  private final Object[] items;
+  private final int mask;
+  // Next cell to read, written by the consumer only, and next cell to write, by the producer only.
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private volatile Thread consumer;
+
+  /** Creates a ring holding at least {@code capacity} items. */
+  public SpscRing(final int capacity) {
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    items = new Object[size];
+    mask = size - 1;
+  }
+
+  /** Adds an item, from the producer thread; returns false if the ring is full. */
+  public boolean offer(final T item) {
+    final long t = tail.get();
+    if (t - head.get() == items.length) {
+      return false;
+    }
+    items[(int) t & mask] = item;
+    // A full volatile write, so it cannot be reordered after the read of the consumer below: a
+    // consumer that found the ring empty and is about to park is then either seen and unparked,
+    // or sees the item on its next poll.
+    tail.set(t + 1);
+    final Thread waiting = consumer;
+    if (waiting != null) {
+      LockSupport.unpark(waiting);
+    }
+    return true;
+  }
+
+  /** Removes the oldest item, from the consumer thread; returns null if the ring is empty. */
+  @SuppressWarnings("unchecked")
+  public T poll() {
+    final long h = head.get();
+    if (h == tail.get()) {
+      return null;
+    }
+    final int index = (int) h & mask;
+    final T item = (T) items[index];
+    items[index] = null;
+    head.lazySet(h + 1);
+    return item;
+  }
+
+  /** Removes the oldest item, from the consumer thread, waiting for one if the ring is empty. */
+  public T take() throws InterruptedException {
+    consumer = Thread.currentThread();
+    T item;
+    while ((item = poll()) == null) {
+      LockSupport.park(this);
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+    }
+    return item;
+  }
+}
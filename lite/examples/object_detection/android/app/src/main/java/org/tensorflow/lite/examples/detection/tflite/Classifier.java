@@ -16,13 +16,35 @@ limitations under the License.
 package org.tensorflow.lite.examples.detection.tflite;
 
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.RectF;
 import java.util.List;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
 
 /** Generic interface for interacting with different recognition engines. */
 public interface Classifier {
   List<Recognition> recognizeImage(Bitmap bitmap);
 
+  /**
+   * Recognizes a camera frame without going through a Bitmap. The frame is released as soon as the
+   * model input has been written, before inference runs.
+   *
+   * @param frame The camera frame.
+   * @param cropToFrameTransform Maps model input coordinates into frame coordinates.
+   */
+  List<Recognition> recognizeImage(YuvFrame frame, Matrix cropToFrameTransform);
+
+  /**
+   * Recognizes several images with a single inference call, for offline processing where latency
+   * per image does not matter. Models that only take one image at a time, such as those ending in
+   * the detection postprocessing op, run the images one after another instead. Unlike the single
+   * image methods, the results are not reused.
+   *
+   * @param bitmaps Images of the model input size.
+   * @return The recognitions of each image, in the order of {@code bitmaps}.
+   */
+  List<List<Recognition>> recognizeImages(List<Bitmap> bitmaps);
+
   void enableStatLogging(final boolean debug);
 
   String getStatString();
@@ -33,27 +55,36 @@ public interface Classifier {
 
   void setUseNNAPI(boolean isChecked);
 
-  /** An immutable result returned by a Classifier describing what was recognized. */
+  /**
+   * A result returned by a Classifier describing what was recognized. Classifiers may reuse their
+   * results from one call to the next, so callers must copy what they keep.
+   */
   public class Recognition {
     /**
      * A unique identifier for what has been recognized. Specific to the class, not the instance of
      * the object.
      */
-    private final String id;
+    private String id;
 
     /** Display name for the recognition. */
-    private final String title;
+    private String title;
 
     /**
      * A sortable score for how good the recognition is relative to others. Higher should be better.
      */
-    private final Float confidence;
+    private float confidence;
 
     /** Optional location within the source image for the location of the recognized object. */
     private RectF location;
 
     public Recognition(
-        final String id, final String title, final Float confidence, final RectF location) {
+        final String id, final String title, final float confidence, final RectF location) {
+      set(id, title, confidence, location);
+    }
+
+    /** Refills a pooled recognition. */
+    public void set(
+        final String id, final String title, final float confidence, final RectF location) {
       this.id = id;
       this.title = title;
       this.confidence = confidence;
@@ -68,12 +99,13 @@ public interface Classifier {
       return title;
     }
 
-    public Float getConfidence() {
+    public float getConfidence() {
       return confidence;
     }
 
+    /** The location itself, not a copy, so that it can be mapped in place; null if none. */
     public RectF getLocation() {
-      return new RectF(location);
+      return location;
     }
 
     public void setLocation(RectF location) {
@@ -91,9 +123,7 @@ public interface Classifier {
         resultString += title + " ";
       }
 
-      if (confidence != null) {
-        resultString += String.format("(%.1f%%) ", confidence * 100.0f);
-      }
+      resultString += String.format("(%.1f%%) ", confidence * 100.0f);
 
       if (location != null) {
         resultString += location + " ";
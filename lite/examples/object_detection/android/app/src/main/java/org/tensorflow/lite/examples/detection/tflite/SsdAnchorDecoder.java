@@ -0,0 +1,319 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import org.tensorflow.lite.examples.detection.tracking.NonMaxSuppression;
+
+/**
+ * Decodes the raw outputs of an SSD model exported without the {@code
+ * TFLite_Detection_PostProcess} op: box encodings of shape [numAnchors][4] and class logits of
+ * shape [numAnchors][numClasses], class 0 being the background.
+ *
+ * <p>Every anchor is scored by its best non-background class. The logits are compared against the
+ * logit of the minimum score first, which for a sigmoid is exact and for a softmax is a safe bound,
+ * since a class can never have more probability than its sigmoid against the background alone.
+ * Only the anchors passing it have their score computed and their box decoded, and those go
+ * through {@link NonMaxSuppression}.
+ *
+ * <p>The results are written in the layout of {@code TFLite_Detection_PostProcess}: normalized
+ * [top, left, bottom, right] boxes, class indices without the background, and scores, best first.
+ * Anchors are held in one flat array and nothing is allocated once the decoder has been created.
+ */
+public class SsdAnchorDecoder {
+  /** How class logits are turned into scores. */
+  public enum ScoreFunction {
+    SIGMOID,
+    SOFTMAX;
+  }
+
+  // Box encoding scale factors of the TF Object Detection API SSD configs.
+  public static final float DEFAULT_Y_SCALE = 10.0f;
+  public static final float DEFAULT_X_SCALE = 10.0f;
+  public static final float DEFAULT_H_SCALE = 5.0f;
+  public static final float DEFAULT_W_SCALE = 5.0f;
+
+  private final float[] anchors;
+  private final int numAnchors;
+  private final int numClasses;
+  private final float yScale;
+  private final float xScale;
+  private final float hScale;
+  private final float wScale;
+  private final ScoreFunction scoreFunction;
+  private final float minScore;
+
+  /** Logit of {@link #minScore}: no anchor scoring under it can pass. */
+  private final float minLogit;
+
+  private final NonMaxSuppression nms;
+
+  // Anchors passing the score threshold, in normalized coordinates.
+  private final float[] top;
+  private final float[] left;
+  private final float[] bottom;
+  private final float[] right;
+  private final float[] scores;
+  private final int[] classes;
+
+  /**
+   * Creates a decoder.
+   *
+   * @param anchors Anchors as consecutive [yCenter, xCenter, height, width] in normalized
+   *     coordinates, for instance from {@link #generateSsdAnchors}.
+   * @param numClasses Number of classes of the logits, including the background.
+   * @param yScale Scale factor of the y center encodings.
+   * @param xScale Scale factor of the x center encodings.
+   * @param hScale Scale factor of the height encodings.
+   * @param wScale Scale factor of the width encodings.
+   * @param scoreFunction How class logits are turned into scores.
+   * @param minScore Minimum score of a detection.
+   * @param iouThreshold Intersection over union above which overlapping detections are suppressed.
+   * @param classAgnostic Whether detections of different classes suppress each other.
+   */
+  public SsdAnchorDecoder(
+      final float[] anchors,
+      final int numClasses,
+      final float yScale,
+      final float xScale,
+      final float hScale,
+      final float wScale,
+      final ScoreFunction scoreFunction,
+      final float minScore,
+      final float iouThreshold,
+      final boolean classAgnostic) {
+    this.anchors = anchors;
+    this.numAnchors = anchors.length / 4;
+    this.numClasses = numClasses;
+    this.yScale = yScale;
+    this.xScale = xScale;
+    this.hScale = hScale;
+    this.wScale = wScale;
+    this.scoreFunction = scoreFunction;
+    this.minScore = minScore;
+    if (minScore <= 0.0f) {
+      minLogit = -Float.MAX_VALUE;
+    } else if (minScore >= 1.0f) {
+      minLogit = Float.MAX_VALUE;
+    } else {
+      minLogit = (float) Math.log(minScore / (1.0f - minScore));
+    }
+
+    nms =
+        new NonMaxSuppression(
+            numAnchors, NonMaxSuppression.Method.HARD, iouThreshold, 0.0f, minScore, classAgnostic);
+    top = new float[numAnchors];
+    left = new float[numAnchors];
+    bottom = new float[numAnchors];
+    right = new float[numAnchors];
+    scores = new float[numAnchors];
+    classes = new int[numAnchors];
+  }
+
+  /**
+   * Generates the anchors of the TF Object Detection API {@code ssd_anchor_generator}, feature map
+   * by feature map, row by row, column by column.
+   *
+   * @param featureMapSizes Size of each square feature map, from the finest to the coarsest.
+   * @param minScale Anchor scale of the finest feature map.
+   * @param maxScale Anchor scale of the coarsest feature map.
+   * @param aspectRatios Width to height ratios of the anchors of every cell.
+   * @param reduceBoxesInLowestLayer Whether the finest feature map only gets the three anchors
+   *     (0.1, 1), (minScale, 2) and (minScale, 0.5).
+   * @param interpolatedScaleAspectRatio Aspect ratio of an extra anchor per cell, at the geometric
+   *     mean of the scales of this and the next feature map, or 0 for none.
+   * @return The anchors as consecutive [yCenter, xCenter, height, width].
+   */
+  public static float[] generateSsdAnchors(
+      final int[] featureMapSizes,
+      final float minScale,
+      final float maxScale,
+      final float[] aspectRatios,
+      final boolean reduceBoxesInLowestLayer,
+      final float interpolatedScaleAspectRatio) {
+    final int numLayers = featureMapSizes.length;
+    final float[] layerScales = new float[numLayers + 1];
+    for (int layer = 0; layer < numLayers; ++layer) {
+      layerScales[layer] =
+          numLayers == 1
+              ? minScale
+              : minScale + (maxScale - minScale) * layer / (numLayers - 1.0f);
+    }
+    layerScales[numLayers] = 1.0f;
+
+    // Scales and aspect ratios of the anchors of a cell, per layer.
+    final float[][] boxScales = new float[numLayers][];
+    final float[][] boxRatios = new float[numLayers][];
+    int numAnchors = 0;
+    for (int layer = 0; layer < numLayers; ++layer) {
+      final float scale = layerScales[layer];
+      if (layer == 0 && reduceBoxesInLowestLayer) {
+        boxScales[layer] = new float[] {0.1f, scale, scale};
+        boxRatios[layer] = new float[] {1.0f, 2.0f, 0.5f};
+      } else {
+        final int numBoxes = aspectRatios.length + (interpolatedScaleAspectRatio > 0.0f ? 1 : 0);
+        boxScales[layer] = new float[numBoxes];
+        boxRatios[layer] = new float[numBoxes];
+        for (int i = 0; i < aspectRatios.length; ++i) {
+          boxScales[layer][i] = scale;
+          boxRatios[layer][i] = aspectRatios[i];
+        }
+        if (interpolatedScaleAspectRatio > 0.0f) {
+          boxScales[layer][numBoxes - 1] = (float) Math.sqrt(scale * layerScales[layer + 1]);
+          boxRatios[layer][numBoxes - 1] = interpolatedScaleAspectRatio;
+        }
+      }
+      numAnchors += featureMapSizes[layer] * featureMapSizes[layer] * boxScales[layer].length;
+    }
+
+    final float[] anchors = new float[numAnchors * 4];
+    int i = 0;
+    for (int layer = 0; layer < numLayers; ++layer) {
+      final int size = featureMapSizes[layer];
+      for (int y = 0; y < size; ++y) {
+        for (int x = 0; x < size; ++x) {
+          for (int box = 0; box < boxScales[layer].length; ++box) {
+            final float ratioSqrt = (float) Math.sqrt(boxRatios[layer][box]);
+            anchors[i++] = (y + 0.5f) / size;
+            anchors[i++] = (x + 0.5f) / size;
+            anchors[i++] = boxScales[layer][box] / ratioSqrt;
+            anchors[i++] = boxScales[layer][box] * ratioSqrt;
+          }
+        }
+      }
+    }
+    return anchors;
+  }
+
+  /** The 1917 anchors of the 300x300 SSD MobileNet configs of the TF Object Detection API. */
+  public static float[] generateMobileNetSsdAnchors() {
+    return generateSsdAnchors(
+        new int[] {19, 10, 5, 3, 2, 1},
+        0.2f,
+        0.95f,
+        new float[] {1.0f, 2.0f, 0.5f, 3.0f, 1.0f / 3.0f},
+        true,
+        1.0f);
+  }
+
+  public int getNumAnchors() {
+    return numAnchors;
+  }
+
+  public int getNumClasses() {
+    return numClasses;
+  }
+
+  /**
+   * Decodes the detections of one image.
+   *
+   * @param boxEncodings Box encodings, [yCenter, xCenter, height, width] per anchor.
+   * @param boxOffset Index in {@code boxEncodings} of the first encoding of the image.
+   * @param logits Class logits, {@link #getNumClasses} per anchor.
+   * @param logitOffset Index in {@code logits} of the first logit of the image.
+   * @param maxOutputs Maximum number of detections written.
+   * @param outLocations Receives [top, left, bottom, right] per detection.
+   * @param outClasses Receives the class of each detection, not counting the background.
+   * @param outScores Receives the score of each detection.
+   * @param outOffset Index, in detections, of the first detection written.
+   * @return The number of detections written.
+   */
+  public int decode(
+      final float[] boxEncodings,
+      final int boxOffset,
+      final float[] logits,
+      final int logitOffset,
+      final int maxOutputs,
+      final float[] outLocations,
+      final float[] outClasses,
+      final float[] outScores,
+      final int outOffset) {
+    int numCandidates = 0;
+    for (int anchor = 0; anchor < numAnchors; ++anchor) {
+      final int base = logitOffset + anchor * numClasses;
+      int bestClass = 1;
+      for (int c = 2; c < numClasses; ++c) {
+        if (logits[base + c] > logits[base + bestClass]) {
+          bestClass = c;
+        }
+      }
+      final float bestLogit = logits[base + bestClass];
+
+      final float score;
+      if (scoreFunction == ScoreFunction.SIGMOID) {
+        if (bestLogit < minLogit) {
+          continue;
+        }
+        score = 1.0f / (1.0f + (float) Math.exp(-bestLogit));
+      } else {
+        if (bestLogit - logits[base] < minLogit) {
+          continue;
+        }
+        score = getSoftmax(logits, base, bestLogit);
+        if (score < minScore) {
+          continue;
+        }
+      }
+
+      decodeBox(boxEncodings, boxOffset + anchor * 4, anchor * 4, numCandidates);
+      scores[numCandidates] = score;
+      classes[numCandidates] = bestClass;
+      ++numCandidates;
+    }
+
+    final int numKept =
+        nms.run(numCandidates, left, top, right, bottom, scores, classes, maxOutputs);
+    for (int i = 0; i < numKept; ++i) {
+      final int candidate = nms.getKept(i);
+      final int out = outOffset + i;
+      outLocations[out * 4] = top[candidate];
+      outLocations[out * 4 + 1] = left[candidate];
+      outLocations[out * 4 + 2] = bottom[candidate];
+      outLocations[out * 4 + 3] = right[candidate];
+      outClasses[out] = classes[candidate] - 1;
+      outScores[out] = nms.getKeptScore(i);
+    }
+    return numKept;
+  }
+
+  /** Softmax probability of the class with logit {@code logit} among the logits of one anchor. */
+  private float getSoftmax(final float[] logits, final int base, final float logit) {
+    float max = logits[base];
+    for (int c = 1; c < numClasses; ++c) {
+      max = Math.max(max, logits[base + c]);
+    }
+    float sum = 0.0f;
+    for (int c = 0; c < numClasses; ++c) {
+      sum += (float) Math.exp(logits[base + c] - max);
+    }
+    return (float) Math.exp(logit - max) / sum;
+  }
+
+  private void decodeBox(
+      final float[] boxEncodings, final int encoding, final int anchor, final int candidate) {
+    final float yCenter =
+        boxEncodings[encoding] / yScale * anchors[anchor + 2] + anchors[anchor];
+    final float xCenter =
+        boxEncodings[encoding + 1] / xScale * anchors[anchor + 3] + anchors[anchor + 1];
+    final float halfHeight =
+        0.5f * (float) Math.exp(boxEncodings[encoding + 2] / hScale) * anchors[anchor + 2];
+    final float halfWidth =
+        0.5f * (float) Math.exp(boxEncodings[encoding + 3] / wScale) * anchors[anchor + 3];
+    top[candidate] = yCenter - halfHeight;
+    left[candidate] = xCenter - halfWidth;
+    bottom[candidate] = yCenter + halfHeight;
+    right[candidate] = xCenter + halfWidth;
+  }
+}
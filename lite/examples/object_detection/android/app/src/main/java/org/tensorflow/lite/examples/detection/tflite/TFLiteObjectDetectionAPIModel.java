@@ -18,6 +18,7 @@ package org.tensorflow.lite.examples.detection.tflite;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
+import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.os.Trace;
 import java.io.BufferedReader;
@@ -27,52 +28,134 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
 
 /**
  * Wrapper for frozen detection models trained using the Tensorflow Object Detection API:
  * github.com/tensorflow/models/tree/master/research/object_detection
+ *
+ * <p>Besides the {@link Classifier} calls, detection splits into three steps on a {@link Slot},
+ * which holds the input, outputs and results of one image: {@link #writeInput}, {@link #run} and
+ * {@link #readResults}. Each step may run on its own thread, on different slots at once, so that
+ * preparing the next image and decoding the previous one overlap with inference.
  */
 public class TFLiteObjectDetectionAPIModel implements Classifier {
   private static final Logger LOGGER = new Logger();
 
-  // Only return this many results.
-  private static final int NUM_DETECTIONS = 10;
+  // Only return this many results unless told otherwise.
+  private static final int DEFAULT_MAX_RESULTS = 10;
+  // Minimum confidence of the detections returned when the caller sets none. Models with raw
+  // outputs only decode and suppress the anchors scoring at least this.
+  private static final float DEFAULT_MIN_SCORE = 0.1f;
   // Float model
   private static final float IMAGE_MEAN = 128.0f;
   private static final float IMAGE_STD = 128.0f;
   // Number of threads in the java app
   private static final int NUM_THREADS = 4;
+  // Models exported without the detection postprocessing op output box encodings and class logits.
+  private static final int NUM_RAW_OUTPUTS = 2;
+  // Overlap above which the decoded detections of raw models are suppressed.
+  private static final float RAW_NMS_IOU_THRESHOLD = 0.6f;
   private boolean isModelQuantized;
   // Config values.
   private int inputSize;
-  // Pre-allocated buffers.
+  private int maxResults;
+  private float minScore;
+  // Number of detection slots the model outputs, whatever numDetections says for a frame.
+  private int numOutputDetections;
   private Vector<String> labels = new Vector<String>();
-  private int[] intValues;
-  // outputLocations: array of shape [Batchsize, NUM_DETECTIONS,4]
-  // contains the location of detected boxes
-  private float[][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[] numDetections;
-
-  private ByteBuffer imgData;
-
-  private Interpreter tfLite;
+  // Decodes the outputs of raw models into the postprocessing op's layout; null for models ending
+  // in the detection postprocessing op.
+  private SsdAnchorDecoder rawDecoder;
+  // Whether the model takes batches of images. TFLite_Detection_PostProcess only supports a batch
+  // of one, so models ending in it run batches one image at a time.
+  private boolean supportsBatching;
+  private int boxEncodingsIndex;
+  private int logitsIndex;
+  // Number of floats of the box encodings and logits of one image of a raw model.
+  private int rawBoxEncodingsLength;
+  private int rawLogitsLength;
+  // Ids of the results, shared by all slots.
+  private String[] ids;
+
+  private int numBytesPerChannel;
+  // Slot of the Classifier calls.
+  private Slot slot;
+  // Batch size the input of each interpreter is currently resized to.
+  private int[] interpreterBatchSizes;
+  // Inputs and outputs of recognizeImages, reallocated when the batch size changes.
+  private int batchSize;
+  // Pixels of one image of the batch; its own, so that a batch never races the default slot.
+  private int[] batchIntValues;
+  private TensorWriter[] batchWriters;
+  private float[] batchLocations;
+  private float[] batchClasses;
+  private float[] batchScores;
+  private float[] batchNumDetections;
+  private float[] batchRawBoxEncodings;
+  private float[] batchRawLogits;
+  private Object[] batchInputArray;
+  private Map<Integer, Object> batchOutputMap;
+  private FloatBuffer[] batchOutputViews;
+
+  private InterpreterPool interpreters;
+
+  /**
+   * Pre-allocated input, outputs and results of one image. Results are reused from one image to
+   * the next in the same slot, and sized for maxResults, not for the model outputs.
+   */
+  public static class Slot {
+    private int[] intValues;
+    private ByteBuffer imgData;
+    // Normalizes pixels into imgData a row at a time.
+    private TensorWriter tensorWriter;
+    // Values of the crop to frame transform handed to the fused YUV preprocessing.
+    private final float[] cropToFrameValues = new float[9];
+    private Object[] inputArray;
+    // Direct, native order buffers the interpreter writes the outputs into, bound once, and float
+    // views of them by output index.
+    private Map<Integer, Object> outputMap;
+    private FloatBuffer[] outputViews;
+    // Runs this slot on the interpreter it is handed; created once, as every run needs it.
+    private InterpreterPool.Task<Void> runTask;
+    // outputLocations: array of shape [Batchsize, numOutputDetections, 4], flattened
+    // contains the location of detected boxes
+    private float[] outputLocations;
+    // outputClasses: array of shape [Batchsize, numOutputDetections]
+    // contains the classes of detected boxes
+    private float[] outputClasses;
+    // outputScores: array of shape [Batchsize, numOutputDetections]
+    // contains the scores of detected boxes
+    private float[] outputScores;
+    // numDetections: array of shape [Batchsize]
+    // contains the number of detected boxes
+    private float[] numDetections;
+    // Raw model outputs, copied out of the output buffers for decoding.
+    private float[] rawBoxEncodings;
+    private float[] rawLogits;
+    private Recognition[] recognitionPool;
+    private RectF[] locationPool;
+    private ArrayList<Recognition> recognitions;
+
+    private Slot() {}
+
+    /** The view of output {@code index}, for tests writing the outputs by hand. */
+    FloatBuffer getOutputView(final int index) {
+      return outputViews[index];
+    }
+  }
 
   private TFLiteObjectDetectionAPIModel() {}
 
@@ -88,7 +171,8 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   }
 
   /**
-   * Initializes a native TensorFlow session for classifying images.
+   * Initializes a native TensorFlow session for classifying images, returning the best detections
+   * scoring at least {@value #DEFAULT_MIN_SCORE}.
    *
    * @param assetManager The asset manager to be used to load assets.
    * @param modelFilename The filepath of the model GraphDef protocol buffer.
@@ -103,6 +187,74 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
       final int inputSize,
       final boolean isQuantized)
       throws IOException {
+    return create(
+        assetManager,
+        modelFilename,
+        labelFilename,
+        inputSize,
+        isQuantized,
+        DEFAULT_MAX_RESULTS,
+        DEFAULT_MIN_SCORE);
+  }
+
+  /**
+   * Initializes a native TensorFlow session for classifying images, keeping only the best
+   * detections. Runs as many interpreters of {@value #NUM_THREADS} threads as the cores keep busy.
+   *
+   * @param assetManager The asset manager to be used to load assets.
+   * @param modelFilename The filepath of the model GraphDef protocol buffer.
+   * @param labelFilename The filepath of label file for classes.
+   * @param inputSize The size of image input
+   * @param isQuantized Boolean representing model is quantized or not
+   * @param maxResults Maximum number of recognitions returned per image.
+   * @param minScore Minimum confidence of a returned recognition.
+   */
+  public static TFLiteObjectDetectionAPIModel create(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final int maxResults,
+      final float minScore)
+      throws IOException {
+    return create(
+        assetManager,
+        modelFilename,
+        labelFilename,
+        inputSize,
+        isQuantized,
+        maxResults,
+        minScore,
+        InterpreterPool.getDefaultSize(NUM_THREADS),
+        NUM_THREADS);
+  }
+
+  /**
+   * Initializes a native TensorFlow session for classifying images, with several interpreters so
+   * that slots run from several threads are inferred at once.
+   *
+   * @param assetManager The asset manager to be used to load assets.
+   * @param modelFilename The filepath of the model GraphDef protocol buffer.
+   * @param labelFilename The filepath of label file for classes.
+   * @param inputSize The size of image input
+   * @param isQuantized Boolean representing model is quantized or not
+   * @param maxResults Maximum number of recognitions returned per image.
+   * @param minScore Minimum confidence of a returned recognition.
+   * @param numInterpreters Number of interpreters, sharing the memory-mapped model.
+   * @param numThreads Number of threads of each interpreter.
+   */
+  public static TFLiteObjectDetectionAPIModel create(
+      final AssetManager assetManager,
+      final String modelFilename,
+      final String labelFilename,
+      final int inputSize,
+      final boolean isQuantized,
+      final int maxResults,
+      final float minScore,
+      final int numInterpreters,
+      final int numThreads)
+      throws IOException {
     final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
 
     InputStream labelsInput = null;
@@ -120,106 +272,531 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
     d.inputSize = inputSize;
 
     try {
-      d.tfLite = new Interpreter(loadModelFile(assetManager, modelFilename));
+      d.interpreters =
+          new InterpreterPool(
+              loadModelFile(assetManager, modelFilename),
+              new Interpreter.Options().setNumThreads(numThreads),
+              numInterpreters);
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
 
-    d.isModelQuantized = isQuantized;
+    d.setQuantized(isQuantized);
+    d.interpreterBatchSizes = new int[numInterpreters];
+    Arrays.fill(d.interpreterBatchSizes, 1);
+    d.minScore = minScore;
+    // All interpreters run the same model, so any of them tells its outputs.
+    d.interpreters.run(
+        (interpreter, index) -> {
+          if (interpreter.getOutputTensorCount() == NUM_RAW_OUTPUTS) {
+            d.initRawOutputs(interpreter, maxResults);
+          } else {
+            // The scores output is [1, numOutputDetections]; SSD exports use 10, others up to 100.
+            final int[] scoresShape = interpreter.getOutputTensor(2).shape();
+            d.numOutputDetections = scoresShape[scoresShape.length - 1];
+          }
+          return null;
+        });
+    d.initResults(maxResults);
+    return d;
+  }
+
+  /**
+   * Creates a model without interpreters, for tests of the steps around inference, which fill the
+   * outputs of its slots by hand. The outputs are laid out as those of the detection
+   * postprocessing op.
+   */
+  static TFLiteObjectDetectionAPIModel createWithoutInterpreters(
+      final List<String> labels,
+      final int inputSize,
+      final boolean isQuantized,
+      final int numOutputDetections,
+      final int maxResults,
+      final float minScore) {
+    final TFLiteObjectDetectionAPIModel d = new TFLiteObjectDetectionAPIModel();
+    d.labels.addAll(labels);
+    d.inputSize = inputSize;
+    d.setQuantized(isQuantized);
+    d.minScore = minScore;
+    d.numOutputDetections = numOutputDetections;
+    d.initResults(maxResults);
+    return d;
+  }
+
+  private void setQuantized(final boolean isQuantized) {
+    isModelQuantized = isQuantized;
     // Pre-allocate buffers.
-    int numBytesPerChannel;
     if (isQuantized) {
       numBytesPerChannel = 1; // Quantized
     } else {
       numBytesPerChannel = 4; // Floating point
     }
-    d.imgData = ByteBuffer.allocateDirect(1 * d.inputSize * d.inputSize * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
-    d.intValues = new int[d.inputSize * d.inputSize];
+  }
+
+  /** Sizes the results once the outputs of the model are known, and creates the default slot. */
+  private void initResults(final int requestedMaxResults) {
+    supportsBatching = rawDecoder != null;
+    maxResults = Math.min(requestedMaxResults, numOutputDetections);
+    ids = new String[maxResults];
+    for (int i = 0; i < maxResults; ++i) {
+      ids[i] = "" + i;
+    }
+    slot = createSlot();
+  }
 
-    d.tfLite.setNumThreads(NUM_THREADS);
-    d.outputLocations = new float[1][NUM_DETECTIONS][4];
-    d.outputClasses = new float[1][NUM_DETECTIONS];
-    d.outputScores = new float[1][NUM_DETECTIONS];
-    d.numDetections = new float[1];
-    return d;
+  /** Allocates the input, outputs and results of one more image in flight. */
+  public Slot createSlot() {
+    final Slot slot = new Slot();
+    slot.imgData = ByteBuffer.allocateDirect(getImageBytes());
+    slot.imgData.order(ByteOrder.nativeOrder());
+    slot.intValues = new int[inputSize * inputSize];
+    slot.tensorWriter = createTensorWriter(slot.imgData);
+    slot.inputArray = new Object[] {slot.imgData};
+
+    slot.outputLocations = new float[numOutputDetections * 4];
+    slot.outputClasses = new float[numOutputDetections];
+    slot.outputScores = new float[numOutputDetections];
+    slot.numDetections = new float[1];
+    slot.outputMap = new HashMap<>();
+    if (rawDecoder != null) {
+      slot.rawBoxEncodings = new float[rawBoxEncodingsLength];
+      slot.rawLogits = new float[rawLogitsLength];
+      slot.outputMap.put(boxEncodingsIndex, allocateOutput(rawBoxEncodingsLength));
+      slot.outputMap.put(logitsIndex, allocateOutput(rawLogitsLength));
+    } else {
+      slot.outputMap.put(0, allocateOutput(slot.outputLocations.length));
+      slot.outputMap.put(1, allocateOutput(slot.outputClasses.length));
+      slot.outputMap.put(2, allocateOutput(slot.outputScores.length));
+      slot.outputMap.put(3, allocateOutput(slot.numDetections.length));
+    }
+    slot.outputViews = createViews(slot.outputMap);
+    slot.runTask =
+        (interpreter, index) -> {
+          resizeInterpreter(interpreter, index, 1);
+          interpreter.runForMultipleInputsOutputs(slot.inputArray, slot.outputMap);
+          return null;
+        };
+
+    slot.recognitionPool = new Recognition[maxResults];
+    slot.locationPool = new RectF[maxResults];
+    slot.recognitions = new ArrayList<>(maxResults);
+    for (int i = 0; i < maxResults; ++i) {
+      slot.locationPool[i] = new RectF();
+      slot.recognitionPool[i] = new Recognition(ids[i], null, 0.0f, slot.locationPool[i]);
+    }
+    return slot;
+  }
+
+  /**
+   * Sets up the decoding of a model exported without the detection postprocessing op, whose
+   * outputs are box encodings of shape [1, numAnchors, 4] and class logits of shape [1, numAnchors,
+   * numClasses], in either order. The anchors are those of the SSD MobileNet configs.
+   */
+  private void initRawOutputs(final Interpreter interpreter, final int maxResults) {
+    final int[] firstShape = interpreter.getOutputTensor(0).shape();
+    boxEncodingsIndex = firstShape[firstShape.length - 1] == 4 ? 0 : 1;
+    logitsIndex = 1 - boxEncodingsIndex;
+    for (int i = 0; i < NUM_RAW_OUTPUTS; ++i) {
+      if (interpreter.getOutputTensor(i).dataType() != DataType.FLOAT32) {
+        throw new IllegalArgumentException("Raw detection outputs must be float.");
+      }
+    }
+    final int[] logitsShape = interpreter.getOutputTensor(logitsIndex).shape();
+    final int numAnchors = logitsShape[logitsShape.length - 2];
+    final int numClasses = logitsShape[logitsShape.length - 1];
+
+    final float[] anchors = SsdAnchorDecoder.generateMobileNetSsdAnchors();
+    if (anchors.length / 4 != numAnchors) {
+      throw new IllegalArgumentException(
+          "Model has " + numAnchors + " anchors, expected " + anchors.length / 4 + ".");
+    }
+    rawDecoder =
+        new SsdAnchorDecoder(
+            anchors,
+            numClasses,
+            SsdAnchorDecoder.DEFAULT_Y_SCALE,
+            SsdAnchorDecoder.DEFAULT_X_SCALE,
+            SsdAnchorDecoder.DEFAULT_H_SCALE,
+            SsdAnchorDecoder.DEFAULT_W_SCALE,
+            SsdAnchorDecoder.ScoreFunction.SIGMOID,
+            minScore,
+            RAW_NMS_IOU_THRESHOLD,
+            true);
+    rawBoxEncodingsLength = numAnchors * 4;
+    rawLogitsLength = numAnchors * numClasses;
+    // The decoder writes at most maxResults detections in the postprocessing op's layout.
+    numOutputDetections = maxResults;
+  }
+
+  /** Number of bytes of one image of the model input. */
+  private int getImageBytes() {
+    return inputSize * inputSize * 3 * numBytesPerChannel;
+  }
+
+  private TensorWriter createTensorWriter(final ByteBuffer buffer) {
+    return isModelQuantized
+        ? new TensorWriter(buffer, inputSize, inputSize)
+        : new TensorWriter(buffer, inputSize, inputSize, IMAGE_MEAN, IMAGE_STD);
+  }
+
+  private static ByteBuffer allocateOutput(final int numFloats) {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(numFloats * 4);
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  /** Float views of output buffers, by output index. */
+  private static FloatBuffer[] createViews(final Map<Integer, Object> outputMap) {
+    final FloatBuffer[] views = new FloatBuffer[outputMap.size()];
+    for (final Map.Entry<Integer, Object> output : outputMap.entrySet()) {
+      views[output.getKey()] = ((ByteBuffer) output.getValue()).asFloatBuffer();
+    }
+    return views;
+  }
+
+  /** Copies the first {@code length} floats of an output written by the interpreter. */
+  private static void readOutput(final FloatBuffer view, final float[] values, final int length) {
+    view.rewind();
+    view.get(values, 0, length);
   }
 
   @Override
   public List<Recognition> recognizeImage(final Bitmap bitmap) {
     // Log this method so that it can be analyzed with systrace.
     Trace.beginSection("recognizeImage");
+    writeInput(slot, bitmap);
+    run(slot);
+    final List<Recognition> recognitions = readResults(slot);
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
+
+  @Override
+  public List<Recognition> recognizeImage(final YuvFrame frame, final Matrix cropToFrameTransform) {
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImage");
+    writeInput(slot, frame, cropToFrameTransform);
+    run(slot);
+    final List<Recognition> recognitions = readResults(slot);
+    Trace.endSection(); // "recognizeImage"
+    return recognitions;
+  }
 
+  /** Writes the model input of a slot from a bitmap of the input size. */
+  public void writeInput(final Slot slot, final Bitmap bitmap) {
     Trace.beginSection("preprocessBitmap");
     // Preprocess the image data from 0-255 int to normalized float based
     // on the provided parameters.
-    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-
-    imgData.rewind();
-    for (int i = 0; i < inputSize; ++i) {
-      for (int j = 0; j < inputSize; ++j) {
-        int pixelValue = intValues[i * inputSize + j];
-        if (isModelQuantized) {
-          // Quantized model
-          imgData.put((byte) ((pixelValue >> 16) & 0xFF));
-          imgData.put((byte) ((pixelValue >> 8) & 0xFF));
-          imgData.put((byte) (pixelValue & 0xFF));
-        } else { // Float model
-          imgData.putFloat((((pixelValue >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat((((pixelValue >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
-          imgData.putFloat(((pixelValue & 0xFF) - IMAGE_MEAN) / IMAGE_STD);
+    bitmap.getPixels(
+        slot.intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+
+    slot.tensorWriter.write(slot.intValues);
+    Trace.endSection(); // preprocessBitmap
+  }
+
+  /**
+   * Writes the model input of a slot straight from a camera frame, and releases the frame.
+   *
+   * @param cropToFrameTransform Maps the model input into the frame.
+   */
+  public void writeInput(final Slot slot, final YuvFrame frame, final Matrix cropToFrameTransform) {
+    Trace.beginSection("preprocessYuv");
+    cropToFrameTransform.getValues(slot.cropToFrameValues);
+    slot.tensorWriter.write(frame, slot.cropToFrameValues);
+    frame.release();
+    Trace.endSection(); // preprocessYuv
+  }
+
+  @Override
+  public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps) {
+    // Log this method so that it can be analyzed with systrace.
+    Trace.beginSection("recognizeImages");
+    final int size = bitmaps.size();
+    final List<List<Recognition>> results = new ArrayList<>(size);
+    if (size == 0) {
+      Trace.endSection(); // "recognizeImages"
+      return results;
+    }
+    if (!supportsBatching) {
+      for (final Bitmap bitmap : bitmaps) {
+        results.add(copyResults(recognizeImage(bitmap)));
+      }
+      Trace.endSection(); // "recognizeImages"
+      return results;
+    }
+    prepareBatch(size);
+
+    Trace.beginSection("preprocessBitmaps");
+    for (int b = 0; b < size; ++b) {
+      final Bitmap bitmap = bitmaps.get(b);
+      bitmap.getPixels(
+          batchIntValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+      batchWriters[b].write(batchIntValues);
+    }
+    Trace.endSection(); // preprocessBitmaps
+
+    Trace.beginSection("feed");
+    ((ByteBuffer) batchInputArray[0]).rewind();
+    for (final Object output : batchOutputMap.values()) {
+      ((ByteBuffer) output).rewind();
+    }
+    Trace.endSection();
+
+    Trace.beginSection("run");
+    interpreters.run(
+        (interpreter, index) -> {
+          resizeInterpreter(interpreter, index, size);
+          interpreter.runForMultipleInputsOutputs(batchInputArray, batchOutputMap);
+          return null;
+        });
+    Trace.endSection();
+
+    if (rawDecoder != null) {
+      readOutput(
+          batchOutputViews[boxEncodingsIndex], batchRawBoxEncodings, batchRawBoxEncodings.length);
+      readOutput(batchOutputViews[logitsIndex], batchRawLogits, batchRawLogits.length);
+      synchronized (rawDecoder) {
+        for (int b = 0; b < size; ++b) {
+          batchNumDetections[b] =
+              rawDecoder.decode(
+                  batchRawBoxEncodings,
+                  b * rawBoxEncodingsLength,
+                  batchRawLogits,
+                  b * rawLogitsLength,
+                  maxResults,
+                  batchLocations,
+                  batchClasses,
+                  batchScores,
+                  b * numOutputDetections);
         }
       }
+    } else {
+      readOutput(batchOutputViews[0], batchLocations, batchLocations.length);
+      readOutput(batchOutputViews[1], batchClasses, batchClasses.length);
+      readOutput(batchOutputViews[2], batchScores, batchScores.length);
+      readOutput(batchOutputViews[3], batchNumDetections, size);
     }
-    Trace.endSection(); // preprocessBitmap
 
+    unpackBatch(batchLocations, batchClasses, batchScores, batchNumDetections, size, results);
+    Trace.endSection(); // "recognizeImages"
+    return results;
+  }
+
+  /**
+   * Unpacks the results of each image of a batch from outputs laid out as those of the detection
+   * postprocessing op. The slots of image b start at b * numOutputDetections.
+   *
+   * @param results Receives one new list of results per image.
+   */
+  void unpackBatch(
+      final float[] locations,
+      final float[] classes,
+      final float[] scores,
+      final float[] numDetections,
+      final int size,
+      final List<List<Recognition>> results) {
+    for (int b = 0; b < size; ++b) {
+      final int base = b * numOutputDetections;
+      final int numResults = countResults(scores, base, (int) numDetections[b]);
+      final List<Recognition> imageResults = new ArrayList<>(numResults);
+      for (int i = 0; i < numResults; ++i) {
+        final int j = base + i;
+        // Labels start with the background class, as in readResults.
+        imageResults.add(
+            new Recognition(
+                ids[i],
+                labels.get((int) classes[j] + 1),
+                scores[j],
+                new RectF(
+                    locations[j * 4 + 1] * inputSize,
+                    locations[j * 4] * inputSize,
+                    locations[j * 4 + 3] * inputSize,
+                    locations[j * 4 + 2] * inputSize)));
+      }
+      results.add(imageResults);
+    }
+  }
+
+  /** Copies pooled results and their locations, so they outlive the next call. */
+  private static List<Recognition> copyResults(final List<Recognition> pooled) {
+    final List<Recognition> copies = new ArrayList<>(pooled.size());
+    for (final Recognition recognition : pooled) {
+      final RectF location = recognition.getLocation();
+      copies.add(
+          new Recognition(
+              recognition.getId(),
+              recognition.getTitle(),
+              recognition.getConfidence(),
+              location != null ? new RectF(location) : null));
+    }
+    return copies;
+  }
+
+  /** Allocates the input and outputs of a batch of {@code size} images, unless already there. */
+  private void prepareBatch(final int size) {
+    if (batchSize == size) {
+      return;
+    }
+    if (batchIntValues == null) {
+      batchIntValues = new int[inputSize * inputSize];
+    }
+    // Every image gets its own writer over its slice of the batched input.
+    final int imageBytes = getImageBytes();
+    final ByteBuffer batchImgData = ByteBuffer.allocateDirect(size * imageBytes);
+    batchImgData.order(ByteOrder.nativeOrder());
+    batchWriters = new TensorWriter[size];
+    for (int b = 0; b < size; ++b) {
+      batchImgData.position(b * imageBytes);
+      batchImgData.limit((b + 1) * imageBytes);
+      final ByteBuffer slice = batchImgData.slice();
+      slice.order(ByteOrder.nativeOrder());
+      batchWriters[b] = createTensorWriter(slice);
+    }
+    batchImgData.clear();
+
+    batchLocations = new float[size * numOutputDetections * 4];
+    batchClasses = new float[size * numOutputDetections];
+    batchScores = new float[size * numOutputDetections];
+    batchNumDetections = new float[size];
+    batchInputArray = new Object[] {batchImgData};
+    batchOutputMap = new HashMap<>();
+    if (rawDecoder != null) {
+      batchRawBoxEncodings = new float[size * rawBoxEncodingsLength];
+      batchRawLogits = new float[size * rawLogitsLength];
+      batchOutputMap.put(boxEncodingsIndex, allocateOutput(batchRawBoxEncodings.length));
+      batchOutputMap.put(logitsIndex, allocateOutput(batchRawLogits.length));
+    } else {
+      batchOutputMap.put(0, allocateOutput(batchLocations.length));
+      batchOutputMap.put(1, allocateOutput(batchClasses.length));
+      batchOutputMap.put(2, allocateOutput(batchScores.length));
+      batchOutputMap.put(3, allocateOutput(batchNumDetections.length));
+    }
+    batchOutputViews = createViews(batchOutputMap);
+    batchSize = size;
+  }
+
+  /**
+   * Resizes the batch dimension of an interpreter input, which reallocates its tensors. Only called
+   * from tasks of the interpreter pool, which hold the interpreter.
+   */
+  private void resizeInterpreter(final Interpreter interpreter, final int index, final int size) {
+    if (interpreterBatchSizes[index] != size) {
+      interpreter.resizeInput(0, new int[] {size, inputSize, inputSize, 3});
+      interpreterBatchSizes[index] = size;
+    }
+  }
+
+  /**
+   * Counts the detections of one image that make it into the results. Only the first numDetections
+   * slots are valid, and the detection postprocessing sorts them by decreasing score, so the
+   * results are the prefix scoring at least minScore.
+   *
+   * @param scores Scores of all slots.
+   * @param offset Index in {@code scores} of the first slot of the image.
+   * @param numDetections Number of valid slots, as output by the model.
+   */
+  private int countResults(final float[] scores, final int offset, final int numDetections) {
+    final int numValid = Math.min(Math.max(numDetections, 0), numOutputDetections);
+    int numResults = 0;
+    while (numResults < numValid
+        && numResults < maxResults
+        && scores[offset + numResults] >= minScore) {
+      ++numResults;
+    }
+    return numResults;
+  }
+
+  /**
+   * Runs the model on the input written into a slot. Slots handed in from several threads run at
+   * once on different interpreters, as long as the pool has idle ones; the others wait.
+   */
+  public void run(final Slot slot) {
     // Copy the input data into TensorFlow.
     Trace.beginSection("feed");
-    outputLocations = new float[1][NUM_DETECTIONS][4];
-    outputClasses = new float[1][NUM_DETECTIONS];
-    outputScores = new float[1][NUM_DETECTIONS];
-    numDetections = new float[1];
-
-    Object[] inputArray = {imgData};
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-    outputMap.put(2, outputScores);
-    outputMap.put(3, numDetections);
+    for (final Object output : slot.outputMap.values()) {
+      ((ByteBuffer) output).rewind();
+    }
     Trace.endSection();
 
     // Run the inference call.
     /////////////////////////////////////////////// MG: INFERENCE ////////////////////////////////////////////
     Trace.beginSection("run");
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
+    interpreters.run(slot.runTask);
     Trace.endSection();
     //////////////////////////////////////////////////////////////////////////////////////////////////////////
+  }
+
+  /**
+   * Collects the detections of the last run of a slot. The returned list and its recognitions are
+   * reused by the next call on the same slot. Results of different slots may be read from several
+   * threads at once; raw model outputs then take turns on the decoder.
+   */
+  public List<Recognition> readResults(final Slot slot) {
+    final int numResults;
+    if (rawDecoder != null) {
+      Trace.beginSection("decode");
+      readOutput(slot.outputViews[boxEncodingsIndex], slot.rawBoxEncodings, rawBoxEncodingsLength);
+      readOutput(slot.outputViews[logitsIndex], slot.rawLogits, rawLogitsLength);
+      // The decoder keeps its candidates in buffers of its own.
+      synchronized (rawDecoder) {
+        numResults =
+            rawDecoder.decode(
+                slot.rawBoxEncodings,
+                0,
+                slot.rawLogits,
+                0,
+                maxResults,
+                slot.outputLocations,
+                slot.outputClasses,
+                slot.outputScores,
+                0);
+      }
+      Trace.endSection();
+    } else {
+      // Only read as much of the outputs as the results need.
+      final float[] numDetections = slot.numDetections;
+      readOutput(slot.outputViews[3], numDetections, 1);
+      readOutput(
+          slot.outputViews[2],
+          slot.outputScores,
+          Math.min(Math.max((int) numDetections[0], 0), numOutputDetections));
+      numResults = countResults(slot.outputScores, 0, (int) numDetections[0]);
+      readOutput(slot.outputViews[0], slot.outputLocations, numResults * 4);
+      readOutput(slot.outputViews[1], slot.outputClasses, numResults);
+    }
 
     // Show the best detections.
     // after scaling them back to the input size.
-    final ArrayList<Recognition> recognitions = new ArrayList<>(NUM_DETECTIONS);
-    for (int i = 0; i < NUM_DETECTIONS; ++i) {
-      final RectF detection =
-          new RectF(
-              outputLocations[0][i][1] * inputSize,
-              outputLocations[0][i][0] * inputSize,
-              outputLocations[0][i][3] * inputSize,
-              outputLocations[0][i][2] * inputSize);
+    final float[] outputLocations = slot.outputLocations;
+    final ArrayList<Recognition> recognitions = slot.recognitions;
+    recognitions.clear();
+    for (int i = 0; i < numResults; ++i) {
+      final Recognition recognition = slot.recognitionPool[i];
+      final RectF detection = slot.locationPool[i];
+      detection.set(
+          outputLocations[i * 4 + 1] * inputSize,
+          outputLocations[i * 4] * inputSize,
+          outputLocations[i * 4 + 3] * inputSize,
+          outputLocations[i * 4 + 2] * inputSize);
       // SSD Mobilenet V1 Model assumes class 0 is background class
       // in label file and class labels start from 1 to number_of_classes+1,
       // while outputClasses correspond to class index from 0 to number_of_classes
       int labelOffset = 1;
-      recognitions.add(
-          new Recognition(
-              "" + i,
-              labels.get((int) outputClasses[0][i] + labelOffset),
-              outputScores[0][i],
-              detection));
+      recognition.set(
+          ids[i],
+          labels.get((int) slot.outputClasses[i] + labelOffset),
+          slot.outputScores[i],
+          detection);
+      recognitions.add(recognition);
     }
-    Trace.endSection(); // "recognizeImage"
     return recognitions;
   }
 
+  /** Number of slots that can run at once, one per interpreter. */
+  public int getNumInterpreters() {
+    return interpreters.getSize();
+  }
+
   @Override
   public void enableStatLogging(final boolean logStats) {}
 
@@ -229,14 +806,17 @@ public class TFLiteObjectDetectionAPIModel implements Classifier {
   }
 
   @Override
-  public void close() {}
+  public void close() {
+    interpreters.close();
+  }
 
+  /** Sets the number of threads of every interpreter, once the running slots are done. */
   public void setNumThreads(int num_threads) {
-    if (tfLite != null) tfLite.setNumThreads(num_threads);
+    interpreters.setNumThreads(num_threads);
   }
 
   @Override
   public void setUseNNAPI(boolean isChecked) {
-    if (tfLite != null) tfLite.setUseNNAPI(isChecked);
+    interpreters.setUseNNAPI(isChecked);
   }
 }
@@ -0,0 +1,148 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.YuvFrame;
+
+/**
+ * Writes RGB pixels into a model input buffer one row at a time.
+ *
+ * <p>Float inputs are normalized through a 256-entry table precomputed from the model's mean and
+ * standard deviation, and each row goes into a {@link FloatBuffer} view of the input with a single
+ * bulk put. Quantized inputs take the raw channel values, also with one bulk put per row.
+ */
+public class TensorWriter {
+  private static final int DIM_PIXEL_SIZE = 3;
+
+  private final ByteBuffer buffer;
+  private final FloatBuffer floatBuffer;
+  private final int width;
+  private final int height;
+
+  /** Normalized value of each channel value, or null for quantized inputs. */
+  private final float[] table;
+
+  /** Scratch rows, reused for every row of every frame. */
+  private final int[] pixelRow;
+  private final float[] floatRow;
+  private final byte[] byteRow;
+
+  /**
+   * Creates a writer for a quantized input, which takes one unsigned byte per channel.
+   *
+   * @param buffer The direct, native order input buffer.
+   * @param width Width of the model input.
+   * @param height Height of the model input.
+   */
+  public TensorWriter(final ByteBuffer buffer, final int width, final int height) {
+    this.buffer = buffer;
+    this.width = width;
+    this.height = height;
+    floatBuffer = null;
+    table = null;
+    pixelRow = new int[width];
+    floatRow = null;
+    byteRow = new byte[width * DIM_PIXEL_SIZE];
+  }
+
+  /**
+   * Creates a writer for a float input, normalized as {@code (value - mean) / std}.
+   *
+   * @param buffer The direct, native order input buffer.
+   * @param width Width of the model input.
+   * @param height Height of the model input.
+   * @param mean Value subtracted from each channel.
+   * @param std Value each channel is divided by after subtracting the mean.
+   */
+  public TensorWriter(
+      final ByteBuffer buffer,
+      final int width,
+      final int height,
+      final float mean,
+      final float std) {
+    this.buffer = buffer;
+    this.width = width;
+    this.height = height;
+    // The view shares the buffer's byte order, which must already be set.
+    buffer.rewind();
+    floatBuffer = buffer.asFloatBuffer();
+    table = new float[256];
+    for (int i = 0; i < 256; ++i) {
+      table[i] = (i - mean) / std;
+    }
+    pixelRow = new int[width];
+    floatRow = new float[width * DIM_PIXEL_SIZE];
+    byteRow = null;
+  }
+
+  /**
+   * Writes a whole input.
+   *
+   * @param pixels ARGB pixels, row-major with a stride of the input width.
+   */
+  public void write(final int[] pixels) {
+    rewind();
+    for (int j = 0; j < height; ++j) {
+      writeRow(pixels, j * width);
+    }
+  }
+
+  /**
+   * Writes a whole input from a camera frame, sampling it through {@code cropToFrame} one row at a
+   * time with {@link ImageUtils#sampleYUV420ToARGB8888Row}.
+   *
+   * @param frame The camera frame.
+   * @param cropToFrame The 3x3 matrix, as returned by {@code Matrix.getValues}, mapping input pixel
+   *     coordinates into frame coordinates.
+   */
+  public void write(final YuvFrame frame, final float[] cropToFrame) {
+    rewind();
+    for (int j = 0; j < height; ++j) {
+      ImageUtils.sampleYUV420ToARGB8888Row(frame, cropToFrame, j, width, pixelRow);
+      writeRow(pixelRow, 0);
+    }
+  }
+
+  private void rewind() {
+    buffer.rewind();
+    if (floatBuffer != null) {
+      floatBuffer.rewind();
+    }
+  }
+
+  private void writeRow(final int[] pixels, final int offset) {
+    if (table != null) {
+      for (int i = 0, k = 0; i < width; ++i) {
+        final int pixel = pixels[offset + i];
+        floatRow[k++] = table[(pixel >> 16) & 0xFF];
+        floatRow[k++] = table[(pixel >> 8) & 0xFF];
+        floatRow[k++] = table[pixel & 0xFF];
+      }
+      floatBuffer.put(floatRow);
+    } else {
+      for (int i = 0, k = 0; i < width; ++i) {
+        final int pixel = pixels[offset + i];
+        byteRow[k++] = (byte) ((pixel >> 16) & 0xFF);
+        byteRow[k++] = (byte) ((pixel >> 8) & 0xFF);
+        byteRow[k++] = (byte) (pixel & 0xFF);
+      }
+      buffer.put(byteRow);
+    }
+  }
+}
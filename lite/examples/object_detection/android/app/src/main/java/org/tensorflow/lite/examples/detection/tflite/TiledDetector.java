@@ -0,0 +1,436 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import android.graphics.Bitmap;
+import android.graphics.Bitmap.Config;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.os.Trace;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.tensorflow.lite.examples.detection.env.ImageUtils;
+import org.tensorflow.lite.examples.detection.env.Logger;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+import org.tensorflow.lite.examples.detection.tflite.TFLiteObjectDetectionAPIModel.Slot;
+import org.tensorflow.lite.examples.detection.tracking.NonMaxSuppression;
+
+/**
+ * Detects objects in an image larger than the model input by running the model on a grid of
+ * overlapping tiles, so that small objects are not lost to downscaling.
+ *
+ * <p>Each tile is scaled to the model input size and either run on its own slot of the detector or,
+ * when batched, all tiles go through {@link Classifier#recognizeImages} at once. Unbatched tiles
+ * run on as many threads as the detector has interpreters, so that they are inferred at once. The
+ * boxes are mapped back to image coordinates and the duplicates found by neighbouring tiles are
+ * merged with class-aware {@link NonMaxSuppression}. Tile bitmaps, slots, transforms and result
+ * buffers are allocated when the image size changes or more detections than ever come in, and
+ * reused otherwise.
+ */
+public class TiledDetector {
+  private static final Logger LOGGER = new Logger();
+
+  private final TFLiteObjectDetectionAPIModel detector;
+  private final int tileSize;
+  private final int columns;
+  private final int rows;
+  private final float overlap;
+  private final int sensorOrientation;
+  private final boolean batched;
+  private final float iouThreshold;
+  private final float minScore;
+
+  // Tiles of the current image size.
+  private int imageWidth;
+  private int imageHeight;
+  private final Bitmap[] tileBitmaps;
+  private final List<Bitmap> tileBitmapList;
+  private final Matrix[] imageToTile;
+  private final Matrix[] tileToImage;
+  private final long[] tileTimesMs;
+  private long lastBatchTimeMs;
+
+  // Unbatched tiles: a slot and the results of each, and the workers running them besides the
+  // calling thread. Every worker and the calling thread take the next tile left until none is.
+  private final Slot[] slots;
+  private final List<List<Recognition>> tileResults;
+  private final Worker[] workers;
+  private final ExecutorService executor;
+  private final AtomicInteger nextTile = new AtomicInteger();
+  // State of the tiles in progress, published to the workers by ExecutorService.execute.
+  private Bitmap image;
+  private CountDownLatch pending;
+  private volatile RuntimeException tileFailure;
+
+  // Detections of all tiles in image coordinates, before suppression.
+  private int numCandidates;
+  private float[] candidateLeft = new float[0];
+  private float[] candidateTop = new float[0];
+  private float[] candidateRight = new float[0];
+  private float[] candidateBottom = new float[0];
+  private float[] candidateScores = new float[0];
+  private String[] candidateIds = new String[0];
+  private String[] candidateTitles = new String[0];
+  private int[] candidateClasses = new int[0];
+  private final List<String> classTitles = new ArrayList<>();
+  private NonMaxSuppression nms;
+  private final RectF scratchRect = new RectF();
+
+  // Merged results, reused from one call to the next.
+  private final List<Recognition> recognitionPool = new ArrayList<>();
+  private final List<RectF> locationPool = new ArrayList<>();
+  private final List<Recognition> recognitions = new ArrayList<>();
+
+  /**
+   * Creates a tiled detector.
+   *
+   * @param detector Detector run on every tile, on as many tiles at once as it has interpreters.
+   * @param tileSize Model input size the tiles are scaled to.
+   * @param columns Number of tiles across the image.
+   * @param rows Number of tiles down the image.
+   * @param overlap Fraction of a tile's width and height shared with each neighbour, in [0, 1).
+   * @param sensorOrientation Rotation applied to the tiles, as for the full frame crop.
+   * @param batched Whether to run all tiles with a single batched inference.
+   * @param iouThreshold Intersection over union above which two boxes of a class are merged.
+   * @param minScore Minimum confidence of a merged detection.
+   */
+  public TiledDetector(
+      final TFLiteObjectDetectionAPIModel detector,
+      final int tileSize,
+      final int columns,
+      final int rows,
+      final float overlap,
+      final int sensorOrientation,
+      final boolean batched,
+      final float iouThreshold,
+      final float minScore) {
+    this.detector = detector;
+    this.tileSize = tileSize;
+    this.columns = columns;
+    this.rows = rows;
+    this.overlap = overlap;
+    this.sensorOrientation = sensorOrientation;
+    this.batched = batched;
+    this.iouThreshold = iouThreshold;
+    this.minScore = minScore;
+    nms = createNms(0);
+
+    final int numTiles = columns * rows;
+    tileBitmaps = new Bitmap[numTiles];
+    tileBitmapList = new ArrayList<>(numTiles);
+    imageToTile = new Matrix[numTiles];
+    tileToImage = new Matrix[numTiles];
+    tileTimesMs = new long[numTiles];
+    for (int i = 0; i < numTiles; ++i) {
+      tileBitmaps[i] = Bitmap.createBitmap(tileSize, tileSize, Config.ARGB_8888);
+      tileBitmapList.add(tileBitmaps[i]);
+      imageToTile[i] = new Matrix();
+      tileToImage[i] = new Matrix();
+    }
+
+    slots = new Slot[batched ? 0 : numTiles];
+    tileResults = new ArrayList<>(numTiles);
+    for (int i = 0; i < slots.length; ++i) {
+      slots[i] = detector.createSlot();
+      tileResults.add(null);
+    }
+    final int numWorkers = batched ? 0 : Math.min(numTiles, detector.getNumInterpreters()) - 1;
+    workers = new Worker[numWorkers];
+    for (int i = 0; i < numWorkers; ++i) {
+      workers[i] = new Worker();
+    }
+    executor =
+        numWorkers > 0
+            ? Executors.newFixedThreadPool(
+                numWorkers,
+                new ThreadFactory() {
+                  private int count = 0;
+
+                  @Override
+                  public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "tile-" + count++);
+                    thread.setDaemon(true);
+                    return thread;
+                  }
+                })
+            : null;
+  }
+
+  /**
+   * Detects the objects of a whole image.
+   *
+   * @param image The image, of any size.
+   * @return The merged detections in image coordinates. The list and its recognitions are reused
+   *     by the next call.
+   */
+  public List<Recognition> recognizeImage(final Bitmap image) {
+    Trace.beginSection("recognizeTiles");
+    if (image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+      layoutTiles(image.getWidth(), image.getHeight());
+    }
+
+    numCandidates = 0;
+    final int numTiles = tileBitmaps.length;
+    if (batched) {
+      final long startTime = SystemClock.uptimeMillis();
+      for (int i = 0; i < numTiles; ++i) {
+        drawTile(image, i);
+      }
+      final List<List<Recognition>> results = detector.recognizeImages(tileBitmapList);
+      for (int i = 0; i < numTiles; ++i) {
+        addCandidates(results.get(i), i);
+      }
+      lastBatchTimeMs = SystemClock.uptimeMillis() - startTime;
+      Arrays.fill(tileTimesMs, lastBatchTimeMs / numTiles);
+    } else {
+      runTiles(image);
+      for (int i = 0; i < numTiles; ++i) {
+        addCandidates(tileResults.get(i), i);
+      }
+    }
+
+    Trace.beginSection("mergeTiles");
+    suppressDuplicates();
+    Trace.endSection(); // mergeTiles
+    Trace.endSection(); // recognizeTiles
+    return recognitions;
+  }
+
+  /** Stops the worker threads. Later calls run the tiles on the calling thread only. */
+  public synchronized void close() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  /** The time spent on each tile by the last call; with batching, the batch time split evenly. */
+  public String getStatString() {
+    final StringBuilder builder = new StringBuilder();
+    if (batched) {
+      builder.append("batch: ").append(lastBatchTimeMs).append("ms\n");
+    }
+    for (int i = 0; i < tileTimesMs.length; ++i) {
+      builder.append("tile ").append(i).append(": ").append(tileTimesMs[i]).append("ms\n");
+    }
+    return builder.toString();
+  }
+
+  /** Spreads the tiles evenly over the image, each sharing {@link #overlap} with its neighbours. */
+  private void layoutTiles(final int width, final int height) {
+    imageWidth = width;
+    imageHeight = height;
+    final float tileWidth = width / (columns - (columns - 1) * overlap);
+    final float tileHeight = height / (rows - (rows - 1) * overlap);
+    for (int row = 0; row < rows; ++row) {
+      for (int column = 0; column < columns; ++column) {
+        final int i = row * columns + column;
+        final Matrix matrix =
+            ImageUtils.getTransformationMatrix(
+                Math.round(tileWidth),
+                Math.round(tileHeight),
+                tileSize,
+                tileSize,
+                sensorOrientation,
+                false);
+        matrix.preTranslate(
+            -column * tileWidth * (1.0f - overlap), -row * tileHeight * (1.0f - overlap));
+        imageToTile[i].set(matrix);
+        imageToTile[i].invert(tileToImage[i]);
+      }
+    }
+  }
+
+  /** Runs every tile on its slot, on the workers and the calling thread, and waits for them. */
+  private void runTiles(final Bitmap image) {
+    this.image = image;
+    nextTile.set(0);
+    tileFailure = null;
+    // Checking for shutdown and handing out the work is atomic with respect to close().
+    synchronized (this) {
+      if (executor == null || executor.isShutdown()) {
+        pending = null;
+      } else {
+        pending = new CountDownLatch(workers.length);
+        for (final Worker worker : workers) {
+          executor.execute(worker);
+        }
+      }
+    }
+    try {
+      runRemainingTiles();
+    } finally {
+      if (pending != null) {
+        awaitWorkers();
+      }
+    }
+    if (tileFailure != null) {
+      throw tileFailure;
+    }
+  }
+
+  private void awaitWorkers() {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          // The workers use the tile bitmaps and slots, so they must be done before returning.
+          pending.await();
+          return;
+        } catch (final InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Runs tiles until none is left, from a worker or the calling thread. */
+  private void runRemainingTiles() {
+    int tile;
+    while ((tile = nextTile.getAndIncrement()) < slots.length) {
+      final long startTime = SystemClock.uptimeMillis();
+      final Slot slot = slots[tile];
+      drawTile(image, tile);
+      detector.writeInput(slot, tileBitmaps[tile]);
+      detector.run(slot);
+      tileResults.set(tile, detector.readResults(slot));
+      tileTimesMs[tile] = SystemClock.uptimeMillis() - startTime;
+    }
+  }
+
+  private class Worker implements Runnable {
+    @Override
+    public void run() {
+      try {
+        runRemainingTiles();
+      } catch (final RuntimeException e) {
+        LOGGER.e(e, "Failed to detect objects in a tile.");
+        tileFailure = e;
+        // Stops the others from taking more tiles.
+        nextTile.set(slots.length);
+      } finally {
+        pending.countDown();
+      }
+    }
+  }
+
+  private void drawTile(final Bitmap image, final int tile) {
+    final Canvas canvas = new Canvas(tileBitmaps[tile]);
+    canvas.drawBitmap(image, imageToTile[tile], null);
+  }
+
+  /** Maps the detections of one tile to image coordinates and appends them to the candidates. */
+  private void addCandidates(final List<Recognition> results, final int tile) {
+    ensureCapacity(numCandidates + results.size());
+    for (final Recognition result : results) {
+      final RectF location = result.getLocation();
+      if (location == null) {
+        continue;
+      }
+      tileToImage[tile].mapRect(scratchRect, location);
+      candidateLeft[numCandidates] = scratchRect.left;
+      candidateTop[numCandidates] = scratchRect.top;
+      candidateRight[numCandidates] = scratchRect.right;
+      candidateBottom[numCandidates] = scratchRect.bottom;
+      candidateScores[numCandidates] = result.getConfidence();
+      candidateIds[numCandidates] = result.getId();
+      candidateTitles[numCandidates] = result.getTitle();
+      candidateClasses[numCandidates] = getClassIndex(result.getTitle());
+      ++numCandidates;
+    }
+  }
+
+  /** Keeps, best first, every candidate not overlapping a better one of the same class. */
+  private void suppressDuplicates() {
+    final int numKept =
+        nms.run(
+            numCandidates,
+            candidateLeft,
+            candidateTop,
+            candidateRight,
+            candidateBottom,
+            candidateScores,
+            candidateClasses,
+            numCandidates);
+    recognitions.clear();
+    for (int i = 0; i < numKept; ++i) {
+      addRecognition(nms.getKept(i), nms.getKeptScore(i));
+    }
+  }
+
+  /** Index of {@code title} among the titles seen so far, for the class-aware suppression. */
+  private int getClassIndex(final String title) {
+    final int index = classTitles.indexOf(title);
+    if (index >= 0) {
+      return index;
+    }
+    classTitles.add(title);
+    return classTitles.size() - 1;
+  }
+
+  private void addRecognition(final int candidate, final float score) {
+    final int i = recognitions.size();
+    if (i == recognitionPool.size()) {
+      locationPool.add(new RectF());
+      recognitionPool.add(new Recognition(null, null, 0.0f, locationPool.get(i)));
+    }
+    final Recognition recognition = recognitionPool.get(i);
+    final RectF location = locationPool.get(i);
+    location.set(
+        candidateLeft[candidate],
+        candidateTop[candidate],
+        candidateRight[candidate],
+        candidateBottom[candidate]);
+    recognition.set(
+        candidateIds[candidate],
+        candidateTitles[candidate],
+        score,
+        location);
+    recognitions.add(recognition);
+  }
+
+  private void ensureCapacity(final int capacity) {
+    if (candidateScores.length >= capacity) {
+      return;
+    }
+    final int length = Math.max(capacity, 2 * candidateScores.length);
+    candidateLeft = Arrays.copyOf(candidateLeft, length);
+    candidateTop = Arrays.copyOf(candidateTop, length);
+    candidateRight = Arrays.copyOf(candidateRight, length);
+    candidateBottom = Arrays.copyOf(candidateBottom, length);
+    candidateScores = Arrays.copyOf(candidateScores, length);
+    candidateIds = Arrays.copyOf(candidateIds, length);
+    candidateTitles = Arrays.copyOf(candidateTitles, length);
+    candidateClasses = Arrays.copyOf(candidateClasses, length);
+    nms = createNms(length);
+  }
+
+  private NonMaxSuppression createNms(final int capacity) {
+    return new NonMaxSuppression(
+        capacity, NonMaxSuppression.Method.HARD, iouThreshold, 0.0f, minScore, false);
+  }
+}
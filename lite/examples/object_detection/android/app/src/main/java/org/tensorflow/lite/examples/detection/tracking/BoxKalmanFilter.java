@@ -0,0 +1,180 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import android.graphics.RectF;
+
+/**
+ * A constant velocity Kalman filter over the 8-dimensional state of a box: center x, center y,
+ * width, height and their velocities per frame. Boxes are measured as center, width and height.
+ *
+ * <p>Process and measurement noise are independent per coordinate, with standard deviations
+ * proportional to the box size as in DeepSORT. The coordinates then never get correlated, so the
+ * 8x8 covariance stays made of four 2x2 position and velocity blocks. Only their three distinct
+ * entries are stored, and predict and update are a few unrolled multiply-adds per coordinate.
+ * Nothing is allocated after construction.
+ */
+public class BoxKalmanFilter {
+  private static final int NUM_COORDINATES = 4;
+  private static final int CENTER_X = 0;
+  private static final int CENTER_Y = 1;
+  private static final int WIDTH = 2;
+  private static final int HEIGHT = 3;
+
+  // Standard deviations relative to the box size, per frame for the process noise.
+  private static final float POSITION_STD = 1.0f / 20.0f;
+  private static final float VELOCITY_STD = 1.0f / 160.0f;
+  private static final float MEASUREMENT_STD = 1.0f / 20.0f;
+  // Initial velocity uncertainty, relative to the box size.
+  private static final float INITIAL_VELOCITY_STD = 10.0f / 160.0f;
+
+  // Position and velocity of each coordinate.
+  private final float[] position = new float[NUM_COORDINATES];
+  private final float[] velocity = new float[NUM_COORDINATES];
+
+  // Covariance block of each coordinate: position variance, covariance and velocity variance.
+  private final float[] positionVariance = new float[NUM_COORDINATES];
+  private final float[] covariance = new float[NUM_COORDINATES];
+  private final float[] velocityVariance = new float[NUM_COORDINATES];
+
+  // Scratch box of the RectF overload of getPredictedBox.
+  private final float[] predictedBox = new float[4];
+
+  /** Starts the filter at a measured box, with no velocity. */
+  public void init(
+      final float centerX, final float centerY, final float width, final float height) {
+    position[CENTER_X] = centerX;
+    position[CENTER_Y] = centerY;
+    position[WIDTH] = width;
+    position[HEIGHT] = height;
+    for (int i = 0; i < NUM_COORDINATES; ++i) {
+      final float scale = getScale(i);
+      velocity[i] = 0.0f;
+      positionVariance[i] = square(2.0f * POSITION_STD * scale);
+      covariance[i] = 0.0f;
+      velocityVariance[i] = square(INITIAL_VELOCITY_STD * scale);
+    }
+  }
+
+  /** Starts the filter at a measured box, with no velocity. */
+  public void init(final RectF box) {
+    init(box.centerX(), box.centerY(), box.width(), box.height());
+  }
+
+  /** Advances the state by {@code frames} frames. */
+  public void predict(final float frames) {
+    for (int i = 0; i < NUM_COORDINATES; ++i) {
+      final float scale = getScale(i);
+      final float p00 = positionVariance[i];
+      final float p01 = covariance[i];
+      final float p11 = velocityVariance[i];
+      position[i] += velocity[i] * frames;
+      positionVariance[i] =
+          p00 + 2.0f * frames * p01 + frames * frames * p11
+              + square(POSITION_STD * scale) * frames;
+      covariance[i] = p01 + frames * p11;
+      velocityVariance[i] = p11 + square(VELOCITY_STD * scale) * frames;
+    }
+  }
+
+  /** Corrects the state with a measured box. */
+  public void update(
+      final float centerX, final float centerY, final float width, final float height) {
+    updateCoordinate(CENTER_X, centerX);
+    updateCoordinate(CENTER_Y, centerY);
+    updateCoordinate(WIDTH, width);
+    updateCoordinate(HEIGHT, height);
+  }
+
+  /** Corrects the state with a measured box. */
+  public void update(final RectF box) {
+    update(box.centerX(), box.centerY(), box.width(), box.height());
+  }
+
+  /** Writes the box the state is expected to reach after {@code frames} more frames. */
+  public void getPredictedBox(final float frames, final RectF box) {
+    getPredictedBox(frames, predictedBox);
+    box.set(predictedBox[0], predictedBox[1], predictedBox[2], predictedBox[3]);
+  }
+
+  /**
+   * Writes the box the state is expected to reach after {@code frames} more frames, as left, top,
+   * right and bottom.
+   */
+  public void getPredictedBox(final float frames, final float[] box) {
+    final float centerX = position[CENTER_X] + velocity[CENTER_X] * frames;
+    final float centerY = position[CENTER_Y] + velocity[CENTER_Y] * frames;
+    final float halfWidth = 0.5f * Math.max(position[WIDTH] + velocity[WIDTH] * frames, 0.0f);
+    final float halfHeight = 0.5f * Math.max(position[HEIGHT] + velocity[HEIGHT] * frames, 0.0f);
+    box[0] = centerX - halfWidth;
+    box[1] = centerY - halfHeight;
+    box[2] = centerX + halfWidth;
+    box[3] = centerY + halfHeight;
+  }
+
+  public float getCenterX() {
+    return position[CENTER_X];
+  }
+
+  public float getCenterY() {
+    return position[CENTER_Y];
+  }
+
+  public float getWidth() {
+    return position[WIDTH];
+  }
+
+  public float getHeight() {
+    return position[HEIGHT];
+  }
+
+  public float getVelocityX() {
+    return velocity[CENTER_X];
+  }
+
+  public float getVelocityY() {
+    return velocity[CENTER_Y];
+  }
+
+  /** Variance of the position of coordinate {@code i}: center x, center y, width or height. */
+  public float getPositionVariance(final int i) {
+    return positionVariance[i];
+  }
+
+  private void updateCoordinate(final int i, final float measurement) {
+    final float p00 = positionVariance[i];
+    final float p01 = covariance[i];
+    final float p11 = velocityVariance[i];
+    final float innovationVariance = p00 + square(MEASUREMENT_STD * getScale(i));
+    final float positionGain = p00 / innovationVariance;
+    final float velocityGain = p01 / innovationVariance;
+    final float innovation = measurement - position[i];
+    position[i] += positionGain * innovation;
+    velocity[i] += velocityGain * innovation;
+    positionVariance[i] = (1.0f - positionGain) * p00;
+    covariance[i] = (1.0f - positionGain) * p01;
+    velocityVariance[i] = p11 - velocityGain * p01;
+  }
+
+  /** Size the noise of coordinate {@code i} is relative to: the width or the height. */
+  private float getScale(final int i) {
+    return i == CENTER_X || i == WIDTH ? position[WIDTH] : position[HEIGHT];
+  }
+
+  private static float square(final float value) {
+    return value * value;
+  }
+}
@@ -0,0 +1,297 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * Solves the assignment of rows to columns of a cost matrix, such as tracked objects to
+ * detections, for the minimum total cost. Pairs costing more than a gate are never assigned.
+ *
+ * <p>The gate is applied first: rows and columns are grouped into the connected components of the
+ * pairs within it, and each component is solved on its own with the Hungarian algorithm in its
+ * shortest augmenting path form. A crowded scene thus costs little more than its largest cluster of
+ * overlapping objects, and the common components of one row and one column are assigned directly.
+ *
+ * <p>The cost matrix is a flat, row-major array. Work buffers grow with the largest problem seen
+ * and are reused, so solving allocates nothing once the sizes have settled.
+ */
+public class LinearAssignment {
+  /** Cost standing in for the gated pairs within a component; never part of an assignment. */
+  private static final double FORBIDDEN = 1e9;
+
+  // Assignment of each row and column, or -1.
+  private int[] rowMatches = new int[0];
+  private int[] columnMatches = new int[0];
+
+  // Components: union-find parents over rows then columns, and the members of each component.
+  private int[] parents = new int[0];
+  private int[] componentOf = new int[0];
+  private int[] componentStarts = new int[1];
+  private int[] members = new int[0];
+  private int[] cursors = new int[0];
+
+  // Hungarian algorithm state for one component, 1-based as in its usual formulation.
+  private double[] subCosts = new double[0];
+  private double[] rowPotentials = new double[0];
+  private double[] columnPotentials = new double[0];
+  private double[] minSlack = new double[0];
+  private int[] assignedRow = new int[0];
+  private int[] way = new int[0];
+  private boolean[] used = new boolean[0];
+  private int[] subRows = new int[0];
+  private int[] subColumns = new int[0];
+
+  /**
+   * Assigns rows to columns.
+   *
+   * @param costs Cost of each pair, row-major.
+   * @param numRows Number of rows.
+   * @param numColumns Number of columns.
+   * @param gate Maximum cost of an assigned pair.
+   * @return The number of pairs assigned; see {@link #getRowMatch} and {@link #getColumnMatch}.
+   */
+  public int solve(final float[] costs, final int numRows, final int numColumns, final float gate) {
+    ensureCapacity(numRows, numColumns);
+    for (int r = 0; r < numRows; ++r) {
+      rowMatches[r] = -1;
+    }
+    for (int c = 0; c < numColumns; ++c) {
+      columnMatches[c] = -1;
+    }
+
+    // Connect every row to the columns within the gate.
+    final int numNodes = numRows + numColumns;
+    for (int i = 0; i < numNodes; ++i) {
+      parents[i] = i;
+    }
+    for (int r = 0; r < numRows; ++r) {
+      for (int c = 0; c < numColumns; ++c) {
+        if (costs[r * numColumns + c] <= gate) {
+          union(r, numRows + c);
+        }
+      }
+    }
+
+    // Bucket the nodes by component, rows before columns within each.
+    final int numComponents = groupComponents(numNodes);
+    int numMatches = 0;
+    for (int k = 0; k < numComponents; ++k) {
+      numMatches +=
+          solveComponent(
+              costs, numRows, numColumns, gate, componentStarts[k], componentStarts[k + 1]);
+    }
+    return numMatches;
+  }
+
+  /** Column assigned to row {@code r} by the last {@link #solve}, or -1. */
+  public int getRowMatch(final int r) {
+    return rowMatches[r];
+  }
+
+  /** Row assigned to column {@code c} by the last {@link #solve}, or -1. */
+  public int getColumnMatch(final int c) {
+    return columnMatches[c];
+  }
+
+  private int find(int i) {
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
+  }
+
+  private void union(final int a, final int b) {
+    final int rootA = find(a);
+    final int rootB = find(b);
+    if (rootA != rootB) {
+      parents[rootB] = rootA;
+    }
+  }
+
+  /** Counting sort of the nodes by component root; returns the number of components. */
+  private int groupComponents(final int numNodes) {
+    for (int i = 0; i < numNodes; ++i) {
+      componentOf[i] = -1;
+    }
+    int numComponents = 0;
+    for (int i = 0; i < numNodes; ++i) {
+      final int root = find(i);
+      if (componentOf[root] < 0) {
+        componentOf[root] = numComponents++;
+      }
+    }
+    for (int k = 0; k <= numComponents; ++k) {
+      componentStarts[k] = 0;
+    }
+    for (int i = 0; i < numNodes; ++i) {
+      ++componentStarts[componentOf[find(i)] + 1];
+    }
+    for (int k = 0; k < numComponents; ++k) {
+      componentStarts[k + 1] += componentStarts[k];
+      cursors[k] = componentStarts[k];
+    }
+    for (int i = 0; i < numNodes; ++i) {
+      members[cursors[componentOf[find(i)]]++] = i;
+    }
+    return numComponents;
+  }
+
+  /** Solves the component made of {@code members[start..end)}; returns its number of pairs. */
+  private int solveComponent(
+      final float[] costs,
+      final int numRows,
+      final int numColumns,
+      final float gate,
+      final int start,
+      final int end) {
+    int numSubRows = 0;
+    int numSubColumns = 0;
+    for (int i = start; i < end; ++i) {
+      if (members[i] < numRows) {
+        subRows[numSubRows++] = members[i];
+      } else {
+        subColumns[numSubColumns++] = members[i] - numRows;
+      }
+    }
+    if (numSubRows == 0 || numSubColumns == 0) {
+      return 0;
+    }
+    if (numSubRows == 1 && numSubColumns == 1) {
+      // Connected, hence within the gate.
+      rowMatches[subRows[0]] = subColumns[0];
+      columnMatches[subColumns[0]] = subRows[0];
+      return 1;
+    }
+
+    // The algorithm below needs no more rows than columns, so transpose tall components.
+    final boolean transposed = numSubRows > numSubColumns;
+    final int n = transposed ? numSubColumns : numSubRows;
+    final int m = transposed ? numSubRows : numSubColumns;
+    for (int i = 0; i < n; ++i) {
+      for (int j = 0; j < m; ++j) {
+        final int r = transposed ? subRows[j] : subRows[i];
+        final int c = transposed ? subColumns[i] : subColumns[j];
+        final float cost = costs[r * numColumns + c];
+        subCosts[i * m + j] = cost <= gate ? cost : FORBIDDEN;
+      }
+    }
+    runHungarian(n, m);
+
+    int numMatches = 0;
+    for (int j = 1; j <= m; ++j) {
+      final int i = assignedRow[j];
+      if (i == 0 || subCosts[(i - 1) * m + j - 1] >= FORBIDDEN) {
+        continue;
+      }
+      final int r = transposed ? subRows[j - 1] : subRows[i - 1];
+      final int c = transposed ? subColumns[i - 1] : subColumns[j - 1];
+      rowMatches[r] = c;
+      columnMatches[c] = r;
+      ++numMatches;
+    }
+    return numMatches;
+  }
+
+  /**
+   * Minimum cost assignment of the n rows of {@link #subCosts} to distinct columns among m >= n,
+   * adding one row at a time along a shortest augmenting path. Leaves the row assigned to each
+   * column j in {@code assignedRow[j]}, 1-based, 0 for none.
+   */
+  private void runHungarian(final int n, final int m) {
+    for (int j = 0; j <= m; ++j) {
+      columnPotentials[j] = 0.0;
+      assignedRow[j] = 0;
+      way[j] = 0;
+    }
+    for (int i = 0; i <= n; ++i) {
+      rowPotentials[i] = 0.0;
+    }
+    for (int i = 1; i <= n; ++i) {
+      assignedRow[0] = i;
+      int j0 = 0;
+      for (int j = 0; j <= m; ++j) {
+        minSlack[j] = Double.MAX_VALUE;
+        used[j] = false;
+      }
+      do {
+        used[j0] = true;
+        final int i0 = assignedRow[j0];
+        double delta = Double.MAX_VALUE;
+        int j1 = 0;
+        for (int j = 1; j <= m; ++j) {
+          if (used[j]) {
+            continue;
+          }
+          final double slack =
+              subCosts[(i0 - 1) * m + j - 1] - rowPotentials[i0] - columnPotentials[j];
+          if (slack < minSlack[j]) {
+            minSlack[j] = slack;
+            way[j] = j0;
+          }
+          if (minSlack[j] < delta) {
+            delta = minSlack[j];
+            j1 = j;
+          }
+        }
+        for (int j = 0; j <= m; ++j) {
+          if (used[j]) {
+            rowPotentials[assignedRow[j]] += delta;
+            columnPotentials[j] -= delta;
+          } else {
+            minSlack[j] -= delta;
+          }
+        }
+        j0 = j1;
+      } while (assignedRow[j0] != 0);
+      do {
+        final int j1 = way[j0];
+        assignedRow[j0] = assignedRow[j1];
+        j0 = j1;
+      } while (j0 != 0);
+    }
+  }
+
+  private void ensureCapacity(final int numRows, final int numColumns) {
+    final int numNodes = numRows + numColumns;
+    if (rowMatches.length < numRows) {
+      rowMatches = new int[numRows];
+    }
+    if (columnMatches.length < numColumns) {
+      columnMatches = new int[numColumns];
+    }
+    if (parents.length < numNodes) {
+      parents = new int[numNodes];
+      componentOf = new int[numNodes];
+      componentStarts = new int[numNodes + 1];
+      members = new int[numNodes];
+      cursors = new int[numNodes];
+    }
+    final int maxSide = Math.max(numRows, numColumns);
+    if (subRows.length < maxSide) {
+      subRows = new int[maxSide];
+      subColumns = new int[maxSide];
+      rowPotentials = new double[maxSide + 1];
+      columnPotentials = new double[maxSide + 1];
+      minSlack = new double[maxSide + 1];
+      assignedRow = new int[maxSide + 1];
+      way = new int[maxSide + 1];
+      used = new boolean[maxSide + 1];
+    }
+    if (subCosts.length < numRows * numColumns) {
+      subCosts = new double[numRows * numColumns];
+    }
+  }
+}
@@ -0,0 +1,329 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sparse pyramidal Lucas-Kanade optical flow on the luminance plane of camera frames.
+ *
+ * <p>Each frame's Y plane is copied into level 0 of a pyramid of byte images, every level half the
+ * size of the one below. Two pyramids are kept, for the previous and the current frame, and swapped
+ * on every frame so that only the new frame's pyramid is built. Points are tracked from the
+ * previous frame to the current one coarse to fine, iterating the Lucas-Kanade update within a
+ * square window at every level. Pyramids and window buffers are allocated once.
+ */
+public class LucasKanadeTracker {
+  // Minimum eigenvalue of a window's gradient matrix, per pixel, for a point to be trackable.
+  private static final float MIN_EIGENVALUE = 4.0f;
+  // Update step, in pixels, under which the iterations at a level stop.
+  private static final float EPSILON = 0.03f;
+
+  private final int numLevels;
+  private final int windowRadius;
+  private final int maxIterations;
+
+  private final int[] levelWidths;
+  private final int[] levelHeights;
+  private byte[][] previous;
+  private byte[][] current;
+  private boolean hasPrevious;
+  private boolean hasCurrent;
+
+  // Previous frame window and its gradients around the point being tracked.
+  private final float[] patch;
+  private final float[] gradientX;
+  private final float[] gradientY;
+
+  /**
+   * Creates a tracker.
+   *
+   * @param width Width of the frames.
+   * @param height Height of the frames.
+   * @param numLevels Number of pyramid levels, 1 for the frame alone.
+   * @param windowRadius Half size of the tracking window, in pixels.
+   * @param maxIterations Maximum number of updates per pyramid level.
+   */
+  public LucasKanadeTracker(
+      final int width,
+      final int height,
+      final int numLevels,
+      final int windowRadius,
+      final int maxIterations) {
+    this.numLevels = numLevels;
+    this.windowRadius = windowRadius;
+    this.maxIterations = maxIterations;
+    levelWidths = new int[numLevels];
+    levelHeights = new int[numLevels];
+    previous = new byte[numLevels][];
+    current = new byte[numLevels][];
+    for (int level = 0; level < numLevels; ++level) {
+      levelWidths[level] = Math.max(width >> level, 1);
+      levelHeights[level] = Math.max(height >> level, 1);
+      previous[level] = new byte[levelWidths[level] * levelHeights[level]];
+      current[level] = new byte[levelWidths[level] * levelHeights[level]];
+    }
+    final int windowSize = (2 * windowRadius + 1) * (2 * windowRadius + 1);
+    patch = new float[windowSize];
+    gradientX = new float[windowSize];
+    gradientY = new float[windowSize];
+  }
+
+  /**
+   * Makes the current frame the previous one and builds the pyramid of a new current frame.
+   *
+   * @param luminance The Y plane of the frame, starting at its position, which is left unchanged.
+   * @param rowStride Number of bytes between the starts of two rows.
+   */
+  public void nextFrame(final ByteBuffer luminance, final int rowStride) {
+    final byte[][] swap = previous;
+    previous = current;
+    current = swap;
+    hasPrevious = hasCurrent;
+    hasCurrent = true;
+
+    final int width = levelWidths[0];
+    final byte[] level0 = current[0];
+    final int position = luminance.position();
+    for (int y = 0; y < levelHeights[0]; ++y) {
+      luminance.position(position + y * rowStride);
+      luminance.get(level0, y * width, width);
+    }
+    luminance.position(position);
+
+    for (int level = 1; level < numLevels; ++level) {
+      downsample(current[level - 1], levelWidths[level - 1], current[level], level);
+    }
+  }
+
+  /** Whether a previous frame is there to track points from. */
+  public boolean hasPreviousFrame() {
+    return hasPrevious;
+  }
+
+  /**
+   * Picks up to {@code pointsPerSide * pointsPerSide} trackable points on a grid within a box of
+   * the current frame.
+   *
+   * @param left Left edge of the box.
+   * @param top Top edge of the box.
+   * @param right Right edge of the box.
+   * @param bottom Bottom edge of the box.
+   * @param pointsPerSide Number of grid points along each side of the box.
+   * @param points Receives the points as consecutive x, y.
+   * @return The number of points picked.
+   */
+  public int selectPoints(
+      final float left,
+      final float top,
+      final float right,
+      final float bottom,
+      final int pointsPerSide,
+      final float[] points) {
+    if (!hasCurrent) {
+      return 0;
+    }
+    int count = 0;
+    for (int j = 0; j < pointsPerSide; ++j) {
+      final float y = top + (bottom - top) * (j + 0.5f) / pointsPerSide;
+      for (int i = 0; i < pointsPerSide; ++i) {
+        final float x = left + (right - left) * (i + 0.5f) / pointsPerSide;
+        if (isInside(x, y, 0) && getMinEigenvalue(current[0], levelWidths[0], x, y) >= 0.0f) {
+          points[2 * count] = x;
+          points[2 * count + 1] = y;
+          ++count;
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Tracks points from the previous frame to the current one.
+   *
+   * @param from Points in the previous frame, as consecutive x, y.
+   * @param to Receives the points in the current frame.
+   * @param count Number of points.
+   * @param found Receives whether each point was tracked.
+   */
+  public void track(final float[] from, final float[] to, final int count, final boolean[] found) {
+    for (int i = 0; i < count; ++i) {
+      found[i] = hasPrevious && trackPoint(from, to, i);
+    }
+  }
+
+  private boolean trackPoint(final float[] from, final float[] to, final int i) {
+    final float x = from[2 * i];
+    final float y = from[2 * i + 1];
+    float guessX = 0.0f;
+    float guessY = 0.0f;
+    for (int level = numLevels - 1; level >= 0; --level) {
+      final float scale = 1.0f / (1 << level);
+      final float levelX = x * scale;
+      final float levelY = y * scale;
+      if (!isInside(levelX, levelY, level)) {
+        return false;
+      }
+      final byte[] previousImage = previous[level];
+      final byte[] currentImage = current[level];
+      final int width = levelWidths[level];
+
+      // Gradient matrix of the previous frame's window.
+      float gxx = 0.0f;
+      float gxy = 0.0f;
+      float gyy = 0.0f;
+      int k = 0;
+      for (int dy = -windowRadius; dy <= windowRadius; ++dy) {
+        for (int dx = -windowRadius; dx <= windowRadius; ++dx, ++k) {
+          final float px = levelX + dx;
+          final float py = levelY + dy;
+          patch[k] = sample(previousImage, width, level, px, py);
+          gradientX[k] =
+              0.5f
+                  * (sample(previousImage, width, level, px + 1, py)
+                      - sample(previousImage, width, level, px - 1, py));
+          gradientY[k] =
+              0.5f
+                  * (sample(previousImage, width, level, px, py + 1)
+                      - sample(previousImage, width, level, px, py - 1));
+          gxx += gradientX[k] * gradientX[k];
+          gxy += gradientX[k] * gradientY[k];
+          gyy += gradientY[k] * gradientY[k];
+        }
+      }
+      final float determinant = gxx * gyy - gxy * gxy;
+      if (getMinEigenvalue(gxx, gxy, gyy) < MIN_EIGENVALUE * k || determinant == 0.0f) {
+        return false;
+      }
+
+      float flowX = 0.0f;
+      float flowY = 0.0f;
+      for (int iteration = 0; iteration < maxIterations; ++iteration) {
+        final float shiftX = levelX + guessX + flowX;
+        final float shiftY = levelY + guessY + flowY;
+        if (!isInside(shiftX, shiftY, level)) {
+          return false;
+        }
+        float bx = 0.0f;
+        float by = 0.0f;
+        k = 0;
+        for (int dy = -windowRadius; dy <= windowRadius; ++dy) {
+          for (int dx = -windowRadius; dx <= windowRadius; ++dx, ++k) {
+            final float difference =
+                patch[k] - sample(currentImage, width, level, shiftX + dx, shiftY + dy);
+            bx += difference * gradientX[k];
+            by += difference * gradientY[k];
+          }
+        }
+        final float stepX = (gyy * bx - gxy * by) / determinant;
+        final float stepY = (gxx * by - gxy * bx) / determinant;
+        flowX += stepX;
+        flowY += stepY;
+        if (stepX * stepX + stepY * stepY < EPSILON * EPSILON) {
+          break;
+        }
+      }
+
+      if (level > 0) {
+        guessX = 2.0f * (guessX + flowX);
+        guessY = 2.0f * (guessY + flowY);
+      } else {
+        guessX += flowX;
+        guessY += flowY;
+      }
+    }
+    to[2 * i] = x + guessX;
+    to[2 * i + 1] = y + guessY;
+    return isInside(to[2 * i], to[2 * i + 1], 0);
+  }
+
+  /** Minimum eigenvalue of the gradient matrix around a point, less the trackable minimum. */
+  private float getMinEigenvalue(
+      final byte[] image, final int width, final float x, final float y) {
+    float gxx = 0.0f;
+    float gxy = 0.0f;
+    float gyy = 0.0f;
+    int count = 0;
+    for (int dy = -windowRadius; dy <= windowRadius; ++dy) {
+      for (int dx = -windowRadius; dx <= windowRadius; ++dx, ++count) {
+        final float px = x + dx;
+        final float py = y + dy;
+        final float gx =
+            0.5f * (sample(image, width, 0, px + 1, py) - sample(image, width, 0, px - 1, py));
+        final float gy =
+            0.5f * (sample(image, width, 0, px, py + 1) - sample(image, width, 0, px, py - 1));
+        gxx += gx * gx;
+        gxy += gx * gy;
+        gyy += gy * gy;
+      }
+    }
+    return getMinEigenvalue(gxx, gxy, gyy) - MIN_EIGENVALUE * count;
+  }
+
+  private static float getMinEigenvalue(final float gxx, final float gxy, final float gyy) {
+    final float halfTrace = 0.5f * (gxx + gyy);
+    final float halfDifference = 0.5f * (gxx - gyy);
+    return halfTrace - (float) Math.sqrt(halfDifference * halfDifference + gxy * gxy);
+  }
+
+  /** Whether the tracking window around a point, with its gradients, lies within a level. */
+  private boolean isInside(final float x, final float y, final int level) {
+    final float margin = windowRadius + 2;
+    return x >= margin
+        && y >= margin
+        && x < levelWidths[level] - margin
+        && y < levelHeights[level] - margin;
+  }
+
+  /** Bilinearly interpolated value of an image, clamped to its edges. */
+  private float sample(
+      final byte[] image, final int width, final int level, final float x, final float y) {
+    final int maxX = width - 1;
+    final int maxY = levelHeights[level] - 1;
+    final float cx = Math.min(Math.max(x, 0.0f), maxX);
+    final float cy = Math.min(Math.max(y, 0.0f), maxY);
+    final int x0 = (int) cx;
+    final int y0 = (int) cy;
+    final int x1 = Math.min(x0 + 1, maxX);
+    final int y1 = Math.min(y0 + 1, maxY);
+    final float fx = cx - x0;
+    final float fy = cy - y0;
+    final float top =
+        (image[y0 * width + x0] & 0xFF) * (1.0f - fx) + (image[y0 * width + x1] & 0xFF) * fx;
+    final float bottom =
+        (image[y1 * width + x0] & 0xFF) * (1.0f - fx) + (image[y1 * width + x1] & 0xFF) * fx;
+    return top * (1.0f - fy) + bottom * fy;
+  }
+
+  /** Averages 2x2 blocks of a level into the next one. */
+  private void downsample(
+      final byte[] source, final int sourceWidth, final byte[] target, final int level) {
+    final int width = levelWidths[level];
+    final int height = levelHeights[level];
+    for (int y = 0; y < height; ++y) {
+      final int row0 = 2 * y * sourceWidth;
+      final int row1 = row0 + sourceWidth;
+      for (int x = 0; x < width; ++x) {
+        final int sum =
+            (source[row0 + 2 * x] & 0xFF)
+                + (source[row0 + 2 * x + 1] & 0xFF)
+                + (source[row1 + 2 * x] & 0xFF)
+                + (source[row1 + 2 * x + 1] & 0xFF);
+        target[y * width + x] = (byte) ((sum + 2) >> 2);
+      }
+    }
+  }
+}
@@ -27,18 +27,42 @@ import android.graphics.RectF;
 import android.text.TextUtils;
 import android.util.Pair;
 import android.util.TypedValue;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import org.tensorflow.lite.examples.detection.env.BorderedText;
 import org.tensorflow.lite.examples.detection.env.ImageUtils;
 import org.tensorflow.lite.examples.detection.env.Logger;
 import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
 
-/** A tracker that handles non-max suppression and matches existing objects to new detections. */
+/**
+ * A tracker that matches existing objects to new detections by intersection over union, keeping
+ * their ids and colors, and moves them at constant velocity between detections. Each object's box
+ * and velocity are estimated by a {@link BoxKalmanFilter}. The matching and prediction live in
+ * {@link ObjectTracks}; this class maps the detections in and draws the objects.
+ *
+ * <p>Timestamps are frame numbers. Detections come in through {@link #trackResults}, tagged with
+ * the frame they were run on; {@link #predict} moves the tracked objects to any later frame, so the
+ * overlay keeps following them on the frames the detector skips.
+ *
+ * <p>When the luminance of every frame is handed to {@link #onFrame}, keypoints within each object
+ * are followed by {@link LucasKanadeTracker} instead, and the box estimated at the last detection
+ * is carried along by the median motion of its keypoints since the frame the detector ran on.
+ */
 public class MultiBoxTracker {
   private static final float TEXT_SIZE_DIP = 18;
-  private static final float MIN_SIZE = 16.0f;
+  // Pyramid levels, window radius and iterations per level of the optical flow.
+  private static final int FLOW_LEVELS = 4;
+  private static final int FLOW_WINDOW_RADIUS = 4;
+  private static final int FLOW_ITERATIONS = 10;
+  // Keypoints picked along each side of an object, and the fewest left before picking them again.
+  private static final int FLOW_POINTS_PER_SIDE = 5;
+  private static final int MAX_FLOW_POINTS = FLOW_POINTS_PER_SIDE * FLOW_POINTS_PER_SIDE;
+  private static final int MIN_FLOW_POINTS = 6;
+  // Distance, in pixels, from the median motion past which a keypoint is dropped as not moving
+  // with its object.
+  private static final float MAX_FLOW_DEVIATION = 4.0f;
   private static final int[] COLORS = {
     Color.BLUE,
     Color.RED,
@@ -58,8 +82,15 @@ public class MultiBoxTracker {
   };
   final List<Pair<Float, RectF>> screenRects = new LinkedList<Pair<Float, RectF>>();
   private final Logger logger = new Logger();
-  private final Queue<Integer> availableColors = new LinkedList<Integer>();
-  private final List<TrackedRecognition> trackedObjects = new LinkedList<TrackedRecognition>();
+  private final ObjectTracks trackedObjects = new ObjectTracks(COLORS, MAX_FLOW_POINTS);
+  // Optical flow, created with the first frame, and the keypoint buffers shared by all objects.
+  private LucasKanadeTracker flowTracker;
+  private long flowTimestamp;
+  private final float[] movedPoints = new float[2 * MAX_FLOW_POINTS];
+  private final boolean[] found = new boolean[MAX_FLOW_POINTS];
+  private final float[] shiftsX = new float[MAX_FLOW_POINTS];
+  private final float[] shiftsY = new float[MAX_FLOW_POINTS];
+  private final float[] ratios = new float[MAX_FLOW_POINTS];
   private final Paint boxPaint = new Paint();
   private final float textSizePx;
   private final BorderedText borderedText;
@@ -69,10 +100,6 @@ public class MultiBoxTracker {
   private int sensorOrientation;
 
   public MultiBoxTracker(final Context context) {
-    for (final int color : COLORS) {
-      availableColors.add(color);
-    }
-
     boxPaint.setColor(Color.RED);
     boxPaint.setStyle(Style.STROKE);
     boxPaint.setStrokeWidth(10.0f);
@@ -91,6 +118,7 @@ public class MultiBoxTracker {
     frameWidth = width;
     frameHeight = height;
     this.sensorOrientation = sensorOrientation;
+    flowTracker = null;
   }
 
   public synchronized void drawDebug(final Canvas canvas) {
@@ -113,7 +141,33 @@ public class MultiBoxTracker {
 
   public synchronized void trackResults(final List<Recognition> results, final long timestamp) {
     logger.i("Processing %d results from %d", results.size(), timestamp);
-    processResults(results);
+    processResults(results, timestamp);
+  }
+
+  /**
+   * Follows the tracked objects into a new frame by optical flow.
+   *
+   * @param luminance The Y plane of the frame, read before this returns.
+   * @param rowStride Number of bytes between the starts of two rows of the plane.
+   * @param timestamp The frame number, one more than the last frame handed in.
+   */
+  public synchronized void onFrame(
+      final ByteBuffer luminance, final int rowStride, final long timestamp) {
+    if (flowTracker == null) {
+      flowTracker =
+          new LucasKanadeTracker(
+              frameWidth, frameHeight, FLOW_LEVELS, FLOW_WINDOW_RADIUS, FLOW_ITERATIONS);
+    }
+    flowTracker.nextFrame(luminance, rowStride);
+    flowTimestamp = timestamp;
+    for (int i = 0; i < trackedObjects.size(); ++i) {
+      followFlow(trackedObjects.get(i), timestamp);
+    }
+  }
+
+  /** Moves the tracked objects to where they are expected to be at {@code timestamp}. */
+  public synchronized void predict(final long timestamp) {
+    trackedObjects.predict(timestamp);
   }
 
   private Matrix getFrameToCanvasMatrix() {
@@ -134,8 +188,10 @@ public class MultiBoxTracker {
             (int) (multiplier * (rotated ? frameWidth : frameHeight)),
             sensorOrientation,
             false);
-    for (final TrackedRecognition recognition : trackedObjects) {
-      final RectF trackedPos = new RectF(recognition.location);
+    for (int i = 0; i < trackedObjects.size(); ++i) {
+      final ObjectTracks.Track recognition = trackedObjects.get(i);
+      final float[] location = recognition.location;
+      final RectF trackedPos = new RectF(location[0], location[1], location[2], location[3]);
 
       getFrameToCanvasMatrix().mapRect(trackedPos);
       boxPaint.setColor(recognition.color);
@@ -145,8 +201,11 @@ public class MultiBoxTracker {
 
       final String labelString =
           !TextUtils.isEmpty(recognition.title)
-              ? String.format("%s %.2f", recognition.title, (100 * recognition.detectionConfidence))
-              : String.format("%.2f", (100 * recognition.detectionConfidence));
+              ? String.format(
+                  "#%d %s %.2f",
+                  recognition.id, recognition.title, (100 * recognition.detectionConfidence))
+              : String.format(
+                  "#%d %.2f", recognition.id, (100 * recognition.detectionConfidence));
       //            borderedText.drawText(canvas, trackedPos.left + cornerSize, trackedPos.top,
       // labelString);
       borderedText.drawText(
@@ -154,17 +213,15 @@ public class MultiBoxTracker {
     }
   }
 
-  private void processResults(final List<Recognition> results) {
-    final List<Pair<Float, Recognition>> rectsToTrack = new LinkedList<Pair<Float, Recognition>>();
-
+  private void processResults(final List<Recognition> results, final long timestamp) {
     screenRects.clear();
     final Matrix rgbFrameToScreen = new Matrix(getFrameToCanvasMatrix());
 
     for (final Recognition result : results) {
-      if (result.getLocation() == null) {
+      final RectF detectionFrameRect = result.getLocation();
+      if (detectionFrameRect == null) {
         continue;
       }
-      final RectF detectionFrameRect = new RectF(result.getLocation());
 
       final RectF detectionScreenRect = new RectF();
       rgbFrameToScreen.mapRect(detectionScreenRect, detectionFrameRect);
@@ -174,38 +231,110 @@ public class MultiBoxTracker {
 
       screenRects.add(new Pair<Float, RectF>(result.getConfidence(), detectionScreenRect));
 
-      if (detectionFrameRect.width() < MIN_SIZE || detectionFrameRect.height() < MIN_SIZE) {
+      if (!trackedObjects.addDetection(
+          detectionFrameRect.left,
+          detectionFrameRect.top,
+          detectionFrameRect.right,
+          detectionFrameRect.bottom,
+          result.getConfidence(),
+          result.getTitle())) {
         logger.w("Degenerate rectangle! " + detectionFrameRect);
-        continue;
       }
+    }
+    trackedObjects.update(timestamp);
 
-      rectsToTrack.add(new Pair<Float, Recognition>(result.getConfidence(), result));
+    if (flowTracker != null) {
+      // Bring the objects to the latest frame and pick new keypoints in those just detected.
+      for (int i = 0; i < trackedObjects.size(); ++i) {
+        final ObjectTracks.Track track = trackedObjects.get(i);
+        track.predict(flowTimestamp);
+        if (track.detectedTimestamp == timestamp) {
+          selectPoints(track);
+        }
+      }
     }
+  }
 
-    if (rectsToTrack.isEmpty()) {
-      logger.v("Nothing to track, aborting.");
-      return;
+  /** Moves the keypoints of an object into the latest frame and records their median motion. */
+  private void followFlow(final ObjectTracks.Track track, final long timestamp) {
+    float shiftX = 0.0f;
+    float shiftY = 0.0f;
+    float logScale = 0.0f;
+    final int numPoints = track.numPoints;
+    flowTracker.track(track.points, movedPoints, numPoints, found);
+    int numFound = 0;
+    float oldCenterX = 0.0f;
+    float oldCenterY = 0.0f;
+    float newCenterX = 0.0f;
+    float newCenterY = 0.0f;
+    for (int i = 0; i < numPoints; ++i) {
+      if (found[i]) {
+        shiftsX[numFound] = movedPoints[2 * i] - track.points[2 * i];
+        shiftsY[numFound] = movedPoints[2 * i + 1] - track.points[2 * i + 1];
+        oldCenterX += track.points[2 * i];
+        oldCenterY += track.points[2 * i + 1];
+        newCenterX += movedPoints[2 * i];
+        newCenterY += movedPoints[2 * i + 1];
+        ++numFound;
+      }
     }
 
-    trackedObjects.clear();
-    for (final Pair<Float, Recognition> potential : rectsToTrack) {
-      final TrackedRecognition trackedRecognition = new TrackedRecognition();
-      trackedRecognition.detectionConfidence = potential.first;
-      trackedRecognition.location = new RectF(potential.second.getLocation());
-      trackedRecognition.title = potential.second.getTitle();
-      trackedRecognition.color = COLORS[trackedObjects.size()];
-      trackedObjects.add(trackedRecognition);
-
-      if (trackedObjects.size() >= COLORS.length) {
-        break;
+    if (numFound > 0) {
+      Arrays.sort(shiftsX, 0, numFound);
+      Arrays.sort(shiftsY, 0, numFound);
+      shiftX = shiftsX[numFound / 2];
+      shiftY = shiftsY[numFound / 2];
+      oldCenterX /= numFound;
+      oldCenterY /= numFound;
+      newCenterX /= numFound;
+      newCenterY /= numFound;
+
+      // Keep the keypoints moving with the object, and measure its scale by their spread.
+      int numKept = 0;
+      int numRatios = 0;
+      for (int i = 0; i < numPoints; ++i) {
+        final float oldX = track.points[2 * i];
+        final float oldY = track.points[2 * i + 1];
+        final float newX = movedPoints[2 * i];
+        final float newY = movedPoints[2 * i + 1];
+        if (!found[i]
+            || Math.abs(newX - oldX - shiftX) > MAX_FLOW_DEVIATION
+            || Math.abs(newY - oldY - shiftY) > MAX_FLOW_DEVIATION) {
+          continue;
+        }
+        final float oldDistance = (float) Math.hypot(oldX - oldCenterX, oldY - oldCenterY);
+        if (oldDistance >= 1.0f) {
+          ratios[numRatios++] =
+              (float) Math.hypot(newX - newCenterX, newY - newCenterY) / oldDistance;
+        }
+        track.points[2 * numKept] = newX;
+        track.points[2 * numKept + 1] = newY;
+        ++numKept;
       }
+      track.numPoints = numKept;
+      if (numRatios > 0) {
+        Arrays.sort(ratios, 0, numRatios);
+        logScale = (float) Math.log(Math.max(ratios[numRatios / 2], 0.5f));
+      }
+    } else {
+      track.numPoints = 0;
+    }
+
+    track.addFlow(timestamp, shiftX, shiftY, logScale);
+    track.predict(timestamp);
+    if (track.numPoints < MIN_FLOW_POINTS) {
+      selectPoints(track);
     }
   }
 
-  private static class TrackedRecognition {
-    RectF location;
-    float detectionConfidence;
-    int color;
-    String title;
+  /** Picks the keypoints of an object within its box in the latest frame. */
+  private void selectPoints(final ObjectTracks.Track track) {
+    final float[] box = track.location;
+    track.numPoints =
+        flowTracker.selectPoints(
+            box[0], box[1], box[2], box[3], FLOW_POINTS_PER_SIDE, track.points);
+    if (!track.hasFlow()) {
+      track.addFlow(flowTimestamp, 0.0f, 0.0f, 0.0f);
+    }
   }
 }
@@ -0,0 +1,239 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+/**
+ * Non-maximum suppression of boxes held as a struct of arrays: one array per box coordinate, plus
+ * scores and optional class indices.
+ *
+ * <p>Hard NMS drops every box overlapping a kept one by more than the IoU threshold. Soft-NMS
+ * instead decays its score, linearly by {@code 1 - iou} above the threshold or by the gaussian
+ * {@code exp(-iou^2 / sigma)}, and drops it once the score falls under the minimum. A box whose
+ * score is not positive is dropped whatever the minimum, so hard suppression removes duplicates
+ * even with a minimum of 0. Boxes only suppress boxes of their own class unless the suppressor is
+ * class-agnostic.
+ *
+ * <p>Candidates live in a max-heap of their current scores. Since suppression only ever lowers a
+ * score, the top of the heap is brought up to date against the boxes kept since it was last
+ * looked at, and is kept as soon as it still beats both of its children. Boxes are thus compared
+ * only until {@code maxOutputs} are kept or the best remaining score is under the minimum, and
+ * the boxes never reaching the top are never compared at all. Nothing is allocated once the
+ * suppressor has been created.
+ */
+public class NonMaxSuppression {
+  /** How a kept box lowers the score of the boxes overlapping it. */
+  public enum Method {
+    HARD,
+    LINEAR,
+    GAUSSIAN;
+  }
+
+  private final int capacity;
+  private final Method method;
+  private final float iouThreshold;
+  private final float sigma;
+  private final float minScore;
+  private final boolean classAgnostic;
+
+  // Candidates: current score, number of kept boxes already applied to it, and the heap of indices.
+  private final float[] scores;
+  private final int[] applied;
+  private final int[] heap;
+  private int heapSize;
+
+  // Kept boxes, best first.
+  private final int[] kept;
+  private final float[] keptScores;
+  private int numKept;
+
+  /**
+   * Creates a suppressor.
+   *
+   * @param capacity Maximum number of boxes handed in per call.
+   * @param method How kept boxes suppress the boxes overlapping them.
+   * @param iouThreshold Intersection over union above which a box is suppressed, or for {@link
+   *     Method#LINEAR}, decayed.
+   * @param sigma Spread of the {@link Method#GAUSSIAN} decay.
+   * @param minScore Minimum score of a kept box. Boxes scoring 0 or less are never kept.
+   * @param classAgnostic Whether boxes suppress each other regardless of their class.
+   */
+  public NonMaxSuppression(
+      final int capacity,
+      final Method method,
+      final float iouThreshold,
+      final float sigma,
+      final float minScore,
+      final boolean classAgnostic) {
+    this.capacity = capacity;
+    this.method = method;
+    this.iouThreshold = iouThreshold;
+    this.sigma = sigma;
+    this.minScore = minScore;
+    this.classAgnostic = classAgnostic;
+    scores = new float[capacity];
+    applied = new int[capacity];
+    heap = new int[capacity];
+    kept = new int[capacity];
+    keptScores = new float[capacity];
+  }
+
+  /**
+   * Suppresses the overlapping boxes among {@code numBoxes}.
+   *
+   * @param numBoxes Number of boxes, at most the capacity.
+   * @param left Left edge of each box.
+   * @param top Top edge of each box.
+   * @param right Right edge of each box.
+   * @param bottom Bottom edge of each box.
+   * @param boxScores Score of each box.
+   * @param classes Class of each box, or null for a single class.
+   * @param maxOutputs Maximum number of boxes kept.
+   * @return The number of boxes kept; see {@link #getKept} and {@link #getKeptScore}.
+   */
+  public int run(
+      final int numBoxes,
+      final float[] left,
+      final float[] top,
+      final float[] right,
+      final float[] bottom,
+      final float[] boxScores,
+      final int[] classes,
+      final int maxOutputs) {
+    if (numBoxes > capacity) {
+      throw new IllegalArgumentException(
+          "Got " + numBoxes + " boxes, capacity is " + capacity + ".");
+    }
+
+    heapSize = 0;
+    for (int i = 0; i < numBoxes; ++i) {
+      if (!isDropped(boxScores[i])) {
+        scores[i] = boxScores[i];
+        applied[i] = 0;
+        heap[heapSize++] = i;
+      }
+    }
+    for (int i = heapSize / 2 - 1; i >= 0; --i) {
+      siftDown(i);
+    }
+
+    numKept = 0;
+    final int limit = Math.min(maxOutputs, capacity);
+    while (heapSize > 0 && numKept < limit) {
+      final int box = heap[0];
+      for (int j = applied[box]; j < numKept && !isDropped(scores[box]); ++j) {
+        final int other = kept[j];
+        if (classAgnostic || classes == null || classes[other] == classes[box]) {
+          scores[box] *= getDecay(getIou(box, other, left, top, right, bottom));
+        }
+      }
+      applied[box] = numKept;
+
+      if (isDropped(scores[box])) {
+        heap[0] = heap[--heapSize];
+        siftDown(0);
+      } else if (isHeapTop(box)) {
+        kept[numKept] = box;
+        keptScores[numKept] = scores[box];
+        ++numKept;
+        heap[0] = heap[--heapSize];
+        siftDown(0);
+      } else {
+        siftDown(0);
+      }
+    }
+    return numKept;
+  }
+
+  public int getNumKept() {
+    return numKept;
+  }
+
+  /** Index, in the arrays handed to {@link #run}, of the {@code i}-th best kept box. */
+  public int getKept(final int i) {
+    return kept[i];
+  }
+
+  /** Score of the {@code i}-th best kept box, after any Soft-NMS decay. */
+  public float getKeptScore(final int i) {
+    return keptScores[i];
+  }
+
+  /** Whether a box with this, possibly decayed, score is out. */
+  private boolean isDropped(final float score) {
+    return score <= 0.0f || score < minScore;
+  }
+
+  /** Factor a box's score is multiplied by for overlapping a kept box by {@code iou}. */
+  private float getDecay(final float iou) {
+    switch (method) {
+      case LINEAR:
+        return iou > iouThreshold ? 1.0f - iou : 1.0f;
+      case GAUSSIAN:
+        return (float) Math.exp(-iou * iou / sigma);
+      case HARD:
+      default:
+        return iou > iouThreshold ? 0.0f : 1.0f;
+    }
+  }
+
+  private static float getIou(
+      final int a,
+      final int b,
+      final float[] left,
+      final float[] top,
+      final float[] right,
+      final float[] bottom) {
+    final float width = Math.min(right[a], right[b]) - Math.max(left[a], left[b]);
+    final float height = Math.min(bottom[a], bottom[b]) - Math.max(top[a], top[b]);
+    if (width <= 0.0f || height <= 0.0f) {
+      return 0.0f;
+    }
+    final float intersection = width * height;
+    final float areaA = (right[a] - left[a]) * (bottom[a] - top[a]);
+    final float areaB = (right[b] - left[b]) * (bottom[b] - top[b]);
+    return intersection / (areaA + areaB - intersection);
+  }
+
+  /** Whether the up to date score of the heap's root still beats both of its children. */
+  private boolean isHeapTop(final int box) {
+    for (int child = 1; child <= 2 && child < heapSize; ++child) {
+      if (scores[heap[child]] > scores[box]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void siftDown(int i) {
+    final int box = heap[i];
+    final float score = scores[box];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && scores[heap[child + 1]] > scores[heap[child]]) {
+        ++child;
+      }
+      if (scores[heap[child]] <= score) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = box;
+  }
+}
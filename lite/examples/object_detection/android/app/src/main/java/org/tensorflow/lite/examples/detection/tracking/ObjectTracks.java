@@ -0,0 +1,287 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import org.tensorflow.lite.examples.detection.env.Logger;
+
+/**
+ * The objects followed by {@link MultiBoxTracker}, without its drawing: matches them to each round
+ * of detections by intersection over union, keeping their ids and colors, and predicts their boxes
+ * between detections. Boxes are left, top, right and bottom in frame coordinates.
+ */
+class ObjectTracks {
+  private static final float MIN_SIZE = 16.0f;
+  // Minimum overlap of a detection with the predicted box of a tracked object to continue it. The
+  // tracked objects and detections are then paired for the largest total overlap.
+  static final float MIN_MATCH_IOU = 0.3f;
+  // Number of detection rounds an object may go unmatched before it is dropped.
+  static final int MAX_MISSES = 2;
+  // Number of frames of motion each object remembers.
+  private static final int FLOW_HISTORY = 32;
+
+  private final Logger logger = new Logger();
+  private final int maxPoints;
+  private final Queue<Integer> availableColors = new LinkedList<Integer>();
+  private final List<Track> tracks = new ArrayList<Track>();
+  private int nextId;
+  // Detections of the round being added, as consecutive boxes, and their scores and titles.
+  private int numDetections;
+  private float[] detectionBoxes = new float[0];
+  private float[] detectionConfidences = new float[0];
+  private String[] detectionTitles = new String[0];
+  // One minus the intersection over union of every tracked object with every detection.
+  private float[] costs = new float[0];
+  private final LinearAssignment assignment = new LinearAssignment();
+
+  /**
+   * @param colors Colors handed to new objects, in order, and back once they are dropped. No more
+   *     objects are tracked at once than there are colors.
+   * @param maxPoints Number of keypoints each object holds for optical flow.
+   */
+  ObjectTracks(final int[] colors, final int maxPoints) {
+    for (final int color : colors) {
+      availableColors.add(color);
+    }
+    this.maxPoints = maxPoints;
+  }
+
+  int size() {
+    return tracks.size();
+  }
+
+  Track get(final int index) {
+    return tracks.get(index);
+  }
+
+  /**
+   * Adds a detection to the next call to {@link #update}, unless it is too small to track.
+   *
+   * @return Whether the detection was kept.
+   */
+  boolean addDetection(
+      final float left,
+      final float top,
+      final float right,
+      final float bottom,
+      final float confidence,
+      final String title) {
+    if (right - left < MIN_SIZE || bottom - top < MIN_SIZE) {
+      return false;
+    }
+    if (detectionConfidences.length == numDetections) {
+      final int capacity = Math.max(2 * numDetections, 8);
+      detectionBoxes = Arrays.copyOf(detectionBoxes, 4 * capacity);
+      detectionConfidences = Arrays.copyOf(detectionConfidences, capacity);
+      detectionTitles = Arrays.copyOf(detectionTitles, capacity);
+    }
+    final int offset = 4 * numDetections;
+    detectionBoxes[offset] = left;
+    detectionBoxes[offset + 1] = top;
+    detectionBoxes[offset + 2] = right;
+    detectionBoxes[offset + 3] = bottom;
+    detectionConfidences[numDetections] = confidence;
+    detectionTitles[numDetections] = title;
+    ++numDetections;
+    return true;
+  }
+
+  /**
+   * Matches the detections added since the last call, run on frame {@code timestamp}, to the
+   * tracked objects. Matched objects are corrected by their detection, objects unmatched for more
+   * than {@link #MAX_MISSES} rounds are dropped, and unmatched detections start new objects while
+   * colors are left.
+   */
+  void update(final long timestamp) {
+    final int numTracks = tracks.size();
+    if (costs.length < numTracks * numDetections) {
+      costs = new float[numTracks * numDetections];
+    }
+    for (int t = 0; t < numTracks; ++t) {
+      final Track track = tracks.get(t);
+      track.predict(timestamp);
+      for (int d = 0; d < numDetections; ++d) {
+        costs[t * numDetections + d] = 1.0f - getIou(track.location, detectionBoxes, 4 * d);
+      }
+    }
+    assignment.solve(costs, numTracks, numDetections, 1.0f - MIN_MATCH_IOU);
+
+    for (int t = numTracks - 1; t >= 0; --t) {
+      final Track track = tracks.get(t);
+      final int match = assignment.getRowMatch(t);
+      if (match >= 0) {
+        track.update(detectionBoxes, 4 * match, timestamp);
+        track.detectionConfidence = detectionConfidences[match];
+        track.title = detectionTitles[match];
+      } else if (++track.misses > MAX_MISSES) {
+        logger.v("Lost object %d", track.id);
+        availableColors.add(track.color);
+        tracks.remove(t);
+      }
+    }
+
+    for (int d = 0; d < numDetections; ++d) {
+      if (assignment.getColumnMatch(d) >= 0) {
+        continue;
+      }
+      if (availableColors.isEmpty()) {
+        logger.v("No color left for a new object.");
+        break;
+      }
+      final Track track = new Track(maxPoints);
+      track.id = nextId++;
+      track.color = availableColors.poll();
+      track.detectionConfidence = detectionConfidences[d];
+      track.title = detectionTitles[d];
+      track.start(detectionBoxes, 4 * d, timestamp);
+      tracks.add(track);
+    }
+
+    for (int d = 0; d < numDetections; ++d) {
+      detectionTitles[d] = null;
+    }
+    numDetections = 0;
+  }
+
+  /** Moves the tracked objects to where they are expected to be at {@code timestamp}. */
+  void predict(final long timestamp) {
+    for (final Track track : tracks) {
+      track.predict(timestamp);
+    }
+  }
+
+  private static float getIou(final float[] a, final float[] b, final int offset) {
+    final float width = Math.min(a[2], b[offset + 2]) - Math.max(a[0], b[offset]);
+    final float height = Math.min(a[3], b[offset + 3]) - Math.max(a[1], b[offset + 1]);
+    if (width <= 0.0f || height <= 0.0f) {
+      return 0.0f;
+    }
+    final float intersection = width * height;
+    final float union =
+        (a[2] - a[0]) * (a[3] - a[1])
+            + (b[offset + 2] - b[offset]) * (b[offset + 3] - b[offset + 1])
+            - intersection;
+    return intersection / union;
+  }
+
+  /** One tracked object. */
+  static class Track {
+    int id;
+    // Predicted box, in frame coordinates.
+    final float[] location = new float[4];
+    float detectionConfidence;
+    int color;
+    String title;
+    int misses;
+
+    // Estimate of the box and its velocity at the last detection.
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    long detectedTimestamp;
+
+    // Keypoints in the latest frame, as consecutive x, y.
+    final float[] points;
+    int numPoints;
+    // Motion of the keypoints summed up to each of the latest frames, indexed by frame modulo
+    // the history size: center shift and log of the scale change.
+    final long[] flowTimestamps = new long[FLOW_HISTORY];
+    final float[] flowX = new float[FLOW_HISTORY];
+    final float[] flowY = new float[FLOW_HISTORY];
+    final float[] flowLogScale = new float[FLOW_HISTORY];
+    long firstFlowTimestamp = -1;
+    long lastFlowTimestamp = -1;
+
+    Track(final int maxPoints) {
+      points = new float[2 * maxPoints];
+    }
+
+    void start(final float[] boxes, final int offset, final long timestamp) {
+      filter.init(
+          0.5f * (boxes[offset] + boxes[offset + 2]),
+          0.5f * (boxes[offset + 1] + boxes[offset + 3]),
+          boxes[offset + 2] - boxes[offset],
+          boxes[offset + 3] - boxes[offset + 1]);
+      System.arraycopy(boxes, offset, location, 0, 4);
+      detectedTimestamp = timestamp;
+    }
+
+    void update(final float[] boxes, final int offset, final long timestamp) {
+      filter.predict(timestamp - detectedTimestamp);
+      filter.update(
+          0.5f * (boxes[offset] + boxes[offset + 2]),
+          0.5f * (boxes[offset + 1] + boxes[offset + 3]),
+          boxes[offset + 2] - boxes[offset],
+          boxes[offset + 3] - boxes[offset + 1]);
+      filter.getPredictedBox(0.0f, location);
+      detectedTimestamp = timestamp;
+      misses = 0;
+    }
+
+    void predict(final long timestamp) {
+      // Carry the last estimate along the keypoints' motion when both frames were followed.
+      final int from = getFlowIndex(Math.max(detectedTimestamp, firstFlowTimestamp));
+      final int to = getFlowIndex(timestamp);
+      if (from < 0 || to < 0 || timestamp < detectedTimestamp) {
+        filter.getPredictedBox(timestamp - detectedTimestamp, location);
+        return;
+      }
+      final float scale = (float) Math.exp(flowLogScale[to] - flowLogScale[from]);
+      final float centerX = filter.getCenterX() + flowX[to] - flowX[from];
+      final float centerY = filter.getCenterY() + flowY[to] - flowY[from];
+      final float halfWidth = 0.5f * filter.getWidth() * scale;
+      final float halfHeight = 0.5f * filter.getHeight() * scale;
+      location[0] = centerX - halfWidth;
+      location[1] = centerY - halfHeight;
+      location[2] = centerX + halfWidth;
+      location[3] = centerY + halfHeight;
+    }
+
+    boolean hasFlow() {
+      return lastFlowTimestamp >= 0;
+    }
+
+    /** Records the motion of the keypoints from the previous frame to {@code timestamp}. */
+    void addFlow(
+        final long timestamp, final float shiftX, final float shiftY, final float logScale) {
+      final int index = (int) (timestamp % FLOW_HISTORY);
+      if (lastFlowTimestamp < 0) {
+        firstFlowTimestamp = timestamp;
+        flowX[index] = 0.0f;
+        flowY[index] = 0.0f;
+        flowLogScale[index] = 0.0f;
+      } else {
+        final int previous = (int) (lastFlowTimestamp % FLOW_HISTORY);
+        flowX[index] = flowX[previous] + shiftX;
+        flowY[index] = flowY[previous] + shiftY;
+        flowLogScale[index] = flowLogScale[previous] + logScale;
+      }
+      flowTimestamps[index] = timestamp;
+      lastFlowTimestamp = timestamp;
+    }
+
+    /** Index of the motion recorded up to {@code timestamp}, or -1 if it was not recorded. */
+    int getFlowIndex(final long timestamp) {
+      if (lastFlowTimestamp < 0 || timestamp < 0 || timestamp > lastFlowTimestamp) {
+        return -1;
+      }
+      final int index = (int) (timestamp % FLOW_HISTORY);
+      return flowTimestamps[index] == timestamp ? index : -1;
+    }
+  }
+}
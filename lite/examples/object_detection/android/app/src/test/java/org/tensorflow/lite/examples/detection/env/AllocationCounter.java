@@ -0,0 +1,46 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.lang.management.ManagementFactory;
+
+/** Counts the bytes the calling thread allocates on the heap while running some code. */
+public class AllocationCounter {
+  private static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private AllocationCounter() {}
+
+  /**
+   * Runs a task until it is warmed up, then counts what running it {@code iterations} more times
+   * allocates, less what reading the counter itself allocates.
+   */
+  public static long countBytes(final Runnable task, final int iterations) {
+    for (int i = 0; i < 2 * iterations; ++i) {
+      task.run();
+    }
+    final long overhead = getAllocatedBytes() - getAllocatedBytes();
+    final long start = getAllocatedBytes();
+    for (int i = 0; i < iterations; ++i) {
+      task.run();
+    }
+    return getAllocatedBytes() - start + overhead;
+  }
+
+  private static long getAllocatedBytes() {
+    return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
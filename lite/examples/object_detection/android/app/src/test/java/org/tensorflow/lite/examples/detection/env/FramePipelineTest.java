@@ -0,0 +1,132 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/** Tests {@link FramePipeline}. */
+public class FramePipelineTest {
+  private static final int NUM_FRAMES = 3;
+
+  /** A frame slot recording the stages it went through. */
+  private static class Frame extends FramePipeline.Frame {
+    int value;
+    int stagesRun;
+    int stagesSkipped;
+  }
+
+  private static Frame[] createFrames() {
+    final Frame[] frames = new Frame[NUM_FRAMES];
+    for (int i = 0; i < frames.length; ++i) {
+      frames[i] = new Frame();
+    }
+    return frames;
+  }
+
+  /** Acquires a free frame, waiting for the stages to hand one back. */
+  private static Frame acquire(final FramePipeline<Frame> pipeline) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    Frame frame;
+    while ((frame = pipeline.acquire()) == null && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertNotNull(frame);
+    return frame;
+  }
+
+  @Test
+  public void runsEveryFrameThroughEveryStage() throws InterruptedException {
+    final AtomicInteger sum = new AtomicInteger();
+    final List<FramePipeline.Stage<Frame>> stages = new ArrayList<>();
+    stages.add(frame -> frame.value *= 2);
+    stages.add(frame -> frame.value += 1);
+    stages.add(frame -> sum.addAndGet(frame.value));
+    final FramePipeline<Frame> pipeline = new FramePipeline<>("test", createFrames(), stages);
+
+    for (int i = 0; i < 100; ++i) {
+      final Frame frame = acquire(pipeline);
+      frame.value = i;
+      pipeline.submit(frame);
+    }
+    for (int i = 0; i < NUM_FRAMES; ++i) {
+      acquire(pipeline);
+    }
+    pipeline.close();
+
+    // The sum of 2i + 1 over i < 100.
+    assertEquals(100 * 100, sum.get());
+  }
+
+  @Test
+  public void skipsTheLaterStagesOfAFailedFrame() throws InterruptedException {
+    final AtomicInteger completed = new AtomicInteger();
+    final AtomicInteger skipped = new AtomicInteger();
+    final List<FramePipeline.Stage<Frame>> stages = new ArrayList<>();
+    stages.add(
+        frame -> {
+          ++frame.stagesRun;
+          if (frame.value % 2 == 0) {
+            throw new IllegalStateException("Closed.");
+          }
+        });
+    stages.add(
+        new FramePipeline.Stage<Frame>() {
+          @Override
+          public void process(final Frame frame) {
+            ++frame.stagesRun;
+            completed.incrementAndGet();
+          }
+
+          @Override
+          public void skip(final Frame frame) {
+            ++frame.stagesSkipped;
+            skipped.incrementAndGet();
+          }
+        });
+    final FramePipeline<Frame> pipeline = new FramePipeline<>("test", createFrames(), stages);
+
+    // Every frame slot fails more than once and still comes back, no longer failed.
+    for (int i = 0; i < 10 * NUM_FRAMES; ++i) {
+      final Frame frame = acquire(pipeline);
+      assertFalse(frame.hasFailed());
+      frame.value = i;
+      frame.stagesRun = 0;
+      frame.stagesSkipped = 0;
+      pipeline.submit(frame);
+    }
+    // The last frames are 27, 28 and 29; only 28 failed.
+    for (int i = 0; i < NUM_FRAMES; ++i) {
+      final Frame frame = acquire(pipeline);
+      final boolean failed = frame.value % 2 == 0;
+      assertEquals(failed ? 1 : 2, frame.stagesRun);
+      assertEquals(failed ? 1 : 0, frame.stagesSkipped);
+    }
+    assertNull(pipeline.acquire());
+    pipeline.close();
+
+    assertEquals(5 * NUM_FRAMES, completed.get());
+    assertEquals(5 * NUM_FRAMES, skipped.get());
+  }
+}
@@ -0,0 +1,129 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Tests {@link FrameScheduler} with a {@link MotionGate} policy. */
+public class FrameSchedulerTest {
+  private static final int SIZE = 16;
+
+  private static ByteBuffer frame(final int grey) {
+    final byte[] pixels = new byte[SIZE * SIZE];
+    Arrays.fill(pixels, (byte) grey);
+    return ByteBuffer.wrap(pixels);
+  }
+
+  private static FrameScheduler createScheduler(final MotionGate gate) {
+    return new FrameScheduler(new FrameScheduler.MotionTriggered(gate, 0), 4, 1);
+  }
+
+  @Test
+  public void gatesFramesLikeTheCommittedOne() {
+    final MotionGate gate = new MotionGate(SIZE, SIZE, 4, 10.0f, 100);
+    final FrameScheduler scheduler = createScheduler(gate);
+
+    assertTrue(scheduler.tryStart(0, frame(0), SIZE));
+    scheduler.commit();
+    scheduler.finish(1);
+
+    assertFalse(scheduler.tryStart(1, frame(5), SIZE));
+    assertTrue(scheduler.tryStart(2, frame(50), SIZE));
+    assertEquals(1, gate.getGatedFrames());
+  }
+
+  @Test
+  public void cancelledFrameDoesNotBecomeTheReference() {
+    final MotionGate gate = new MotionGate(SIZE, SIZE, 4, 10.0f, 100);
+    final FrameScheduler scheduler = createScheduler(gate);
+    assertTrue(scheduler.tryStart(0, frame(0), SIZE));
+    scheduler.commit();
+    scheduler.finish(1);
+
+    // A moved frame the pipeline could not take: the next one like it must still be inferred.
+    assertTrue(scheduler.tryStart(1, frame(50), SIZE));
+    scheduler.cancel();
+    assertTrue(scheduler.tryStart(2, frame(50), SIZE));
+    scheduler.commit();
+    scheduler.finish(1);
+
+    assertFalse(scheduler.tryStart(3, frame(50), SIZE));
+    assertEquals(2, gate.getInferredFrames());
+    assertEquals(2, scheduler.getInferredFrames());
+  }
+
+  @Test
+  public void cancelledStartDoesNotHoldBackTheNextFrame() {
+    final FrameScheduler scheduler =
+        new FrameScheduler(new FrameScheduler.FixedInterval(100), 4, 1);
+
+    assertTrue(scheduler.tryStart(0, null, 0));
+    scheduler.cancel();
+    // Within the interval of the cancelled start, but nothing was inferred yet.
+    assertTrue(scheduler.tryStart(10, null, 0));
+    scheduler.commit();
+    scheduler.finish(1);
+
+    // Within the interval of a start that went through, the frame is held back.
+    assertFalse(scheduler.tryStart(50, null, 0));
+    // The interval still runs from the start at 10 after a later start is cancelled.
+    assertTrue(scheduler.tryStart(110, null, 0));
+    scheduler.cancel();
+    assertTrue(scheduler.tryStart(120, null, 0));
+    assertEquals(2, scheduler.getInferredFrames());
+  }
+
+  @Test
+  public void uncommittedFrameDoesNotBecomeTheReference() {
+    final MotionGate gate = new MotionGate(SIZE, SIZE, 4, 10.0f, 100);
+    gate.shouldInfer(frame(0), SIZE);
+
+    assertTrue(gate.evaluate(frame(50), SIZE));
+    assertTrue(gate.evaluate(frame(50), SIZE));
+    gate.commit();
+    assertFalse(gate.evaluate(frame(50), SIZE));
+    assertEquals(2, gate.getInferredFrames());
+  }
+
+  @Test
+  public void frameLetThroughBeforeResetDoesNotBecomeTheReference() {
+    final MotionGate gate = new MotionGate(SIZE, SIZE, 4, 10.0f, 100);
+    gate.shouldInfer(frame(0), SIZE);
+
+    assertTrue(gate.evaluate(frame(50), SIZE));
+    gate.reset();
+    gate.commit();
+    // The reset still holds: the next frame is inferred even though it is like the last one.
+    assertTrue(gate.shouldInfer(frame(50), SIZE));
+    assertFalse(gate.shouldInfer(frame(50), SIZE));
+  }
+
+  @Test
+  public void infersAfterTooManyGatedFrames() {
+    final MotionGate gate = new MotionGate(SIZE, SIZE, 4, 10.0f, 2);
+    gate.shouldInfer(frame(0), SIZE);
+
+    assertFalse(gate.shouldInfer(frame(0), SIZE));
+    assertFalse(gate.shouldInfer(frame(0), SIZE));
+    assertTrue(gate.shouldInfer(frame(0), SIZE));
+  }
+}
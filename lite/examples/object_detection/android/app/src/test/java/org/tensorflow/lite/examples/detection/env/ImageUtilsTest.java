@@ -0,0 +1,47 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+public class ImageUtilsTest {
+  @Test
+  public void tableConversionMatchesFormula() {
+    // Odd sizes leave a last chroma block of one row or column.
+    final int[][] sizes = {{640, 480}, {33, 17}, {1, 1}};
+    for (final int[] size : sizes) {
+      for (final int uvPixelStride : new int[] {1, 2}) {
+        final YuvTestFrame frame = new YuvTestFrame(size[0], size[1], uvPixelStride, 1);
+        final int[] out = new int[size[0] * size[1]];
+        ImageUtils.convertYUV420ToARGB8888(frame.frame, out, 0, size[1]);
+        assertArrayEquals(frame.convertWithFormula(), out);
+      }
+    }
+  }
+
+  @Test
+  public void rowRangesConvertIndependently() {
+    final YuvTestFrame frame = new YuvTestFrame(65, 49, 2, 2);
+    final int[] out = new int[65 * 49];
+    // Converted out of order, each range writing its own rows only.
+    ImageUtils.convertYUV420ToARGB8888(frame.frame, out, 30, 49);
+    ImageUtils.convertYUV420ToARGB8888(frame.frame, out, 0, 12);
+    ImageUtils.convertYUV420ToARGB8888(frame.frame, out, 12, 30);
+    assertArrayEquals(frame.convertWithFormula(), out);
+  }
+}
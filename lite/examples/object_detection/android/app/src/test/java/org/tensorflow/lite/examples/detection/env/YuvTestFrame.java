@@ -0,0 +1,87 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * A YUV420 frame of random content, held both as the byte arrays the original converters take and
+ * as a {@link YuvFrame} over the same data, laid out the way cameras deliver it: rows padded past
+ * the width, and chroma either planar or interleaved.
+ */
+public class YuvTestFrame {
+  public final int width;
+  public final int height;
+  public final int yRowStride;
+  public final int uvRowStride;
+  public final int uvPixelStride;
+  public final byte[] yData;
+  public final byte[] uData;
+  public final byte[] vData;
+  public final YuvFrame frame = new YuvFrame();
+
+  /**
+   * Creates a frame.
+   *
+   * @param uvPixelStride 1 for planar chroma, 2 for interleaved chroma as in NV21.
+   * @param seed Seed of the random content.
+   */
+  public YuvTestFrame(
+      final int width, final int height, final int uvPixelStride, final long seed) {
+    this.width = width;
+    this.height = height;
+    this.uvPixelStride = uvPixelStride;
+    yRowStride = width + 16;
+    uvRowStride = ((width + 1) / 2) * uvPixelStride + 8;
+    final int uvRows = (height + 1) / 2;
+    final Random random = new Random(seed);
+
+    yData = new byte[yRowStride * height];
+    random.nextBytes(yData);
+    final ByteBuffer yPlane = ByteBuffer.wrap(yData);
+
+    final ByteBuffer uPlane;
+    final ByteBuffer vPlane;
+    if (uvPixelStride == 1) {
+      uData = new byte[uvRowStride * uvRows];
+      vData = new byte[uvRowStride * uvRows];
+      random.nextBytes(uData);
+      random.nextBytes(vData);
+      uPlane = ByteBuffer.wrap(uData);
+      vPlane = ByteBuffer.wrap(vData);
+    } else {
+      // Both planes view one buffer of interleaved V and U samples, V first.
+      final byte[] interleaved = new byte[uvRowStride * uvRows + 1];
+      random.nextBytes(interleaved);
+      vData = interleaved;
+      uData = new byte[interleaved.length - 1];
+      System.arraycopy(interleaved, 1, uData, 0, uData.length);
+      vPlane = ByteBuffer.wrap(interleaved);
+      uPlane = ByteBuffer.wrap(interleaved, 1, interleaved.length - 1).slice();
+    }
+    frame.set(
+        yPlane, uPlane, vPlane, width, height, yRowStride, uvRowStride, uvPixelStride, null);
+  }
+
+  /** Converts the frame with the original per pixel formula. */
+  public int[] convertWithFormula() {
+    final int[] out = new int[width * height];
+    ImageUtils.convertYUV420ToARGB8888(
+        yData, uData, vData, width, height, yRowStride, uvRowStride, uvPixelStride, out);
+    return out;
+  }
+}
@@ -0,0 +1,99 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the original per pixel YUV420 to ARGB8888 formula with the table driven kernel, on one
+ * thread and split into bands over all cores, at the usual camera preview sizes. Interleaved
+ * chroma is used, as most cameras deliver it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvToRgbBenchmark {
+  @Param({"640x480", "1280x720", "1920x1080"})
+  public String size;
+
+  private YuvTestFrame frame;
+  private int[] out;
+  private YuvToRgbConverter converter;
+
+  @Setup
+  public void setUp() {
+    final String[] dims = size.split("x");
+    final int width = Integer.parseInt(dims[0]);
+    final int height = Integer.parseInt(dims[1]);
+    frame = new YuvTestFrame(width, height, 2, 1);
+    out = new int[width * height];
+    converter = new YuvToRgbConverter(Runtime.getRuntime().availableProcessors());
+  }
+
+  @TearDown
+  public void tearDown() {
+    converter.close();
+  }
+
+  @Benchmark
+  public int[] formula() {
+    ImageUtils.convertYUV420ToARGB8888(
+        frame.yData,
+        frame.uData,
+        frame.vData,
+        frame.width,
+        frame.height,
+        frame.yRowStride,
+        frame.uvRowStride,
+        frame.uvPixelStride,
+        out);
+    return out;
+  }
+
+  @Benchmark
+  public int[] table() {
+    ImageUtils.convertYUV420ToARGB8888(frame.frame, out, 0, frame.height);
+    return out;
+  }
+
+  @Benchmark
+  public int[] banded() {
+    converter.convert(frame.frame, out);
+    return out;
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(YuvToRgbBenchmark.class.getSimpleName()).build()).run();
+  }
+}
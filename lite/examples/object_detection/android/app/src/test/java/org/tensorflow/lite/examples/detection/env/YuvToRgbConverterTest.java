@@ -0,0 +1,75 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.env;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class YuvToRgbConverterTest {
+  @Test
+  public void bandedConversionMatchesFormula() {
+    final YuvTestFrame frame = new YuvTestFrame(641, 479, 2, 1);
+    final int[] expected = frame.convertWithFormula();
+    for (int numBands = 1; numBands <= 4; ++numBands) {
+      final YuvToRgbConverter converter = new YuvToRgbConverter(numBands);
+      final int[] out = new int[641 * 479];
+      converter.convert(frame.frame, out);
+      converter.close();
+      assertArrayEquals(expected, out);
+    }
+  }
+
+  @Test
+  public void convertsOnCallingThreadAfterClose() {
+    final YuvTestFrame frame = new YuvTestFrame(64, 48, 1, 2);
+    final YuvToRgbConverter converter = new YuvToRgbConverter(3);
+    converter.close();
+    final int[] out = new int[64 * 48];
+    converter.convert(frame.frame, out);
+    assertArrayEquals(frame.convertWithFormula(), out);
+  }
+
+  @Test
+  public void closeWhileConvertingDoesNotReject() throws Exception {
+    final YuvTestFrame frame = new YuvTestFrame(64, 48, 2, 3);
+    final int[] expected = frame.convertWithFormula();
+    for (int attempt = 0; attempt < 50; ++attempt) {
+      final YuvToRgbConverter converter = new YuvToRgbConverter(4);
+      final AtomicReference<Throwable> failure = new AtomicReference<>();
+      final Thread camera =
+          new Thread(
+              () -> {
+                try {
+                  for (int i = 0; i < 20; ++i) {
+                    final int[] out = new int[64 * 48];
+                    converter.convert(frame.frame, out);
+                    assertArrayEquals(expected, out);
+                  }
+                } catch (final Throwable t) {
+                  failure.set(t);
+                }
+              });
+      camera.start();
+      converter.close();
+      camera.join();
+      if (failure.get() != null) {
+        throw new AssertionError(failure.get());
+      }
+    }
+  }
+}
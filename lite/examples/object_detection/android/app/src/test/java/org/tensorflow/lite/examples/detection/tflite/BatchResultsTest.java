@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.Classifier.Recognition;
+
+/**
+ * Checks how the outputs of a batch are split into the results of each image: which slots belong
+ * to which image, and where each image stops. Locations are left out, as RectF is a stub here.
+ */
+public class BatchResultsTest {
+  private static final int INPUT_SIZE = 300;
+  private static final int NUM_OUTPUT_DETECTIONS = 4;
+
+  private static TFLiteObjectDetectionAPIModel createModel(final int maxResults) {
+    final List<String> labels = new ArrayList<>();
+    labels.add("background");
+    for (int i = 0; i < 5; ++i) {
+      labels.add("class" + i);
+    }
+    return TFLiteObjectDetectionAPIModel.createWithoutInterpreters(
+        labels, INPUT_SIZE, false, NUM_OUTPUT_DETECTIONS, maxResults, 0.5f);
+  }
+
+  @Test
+  public void unpacksEachImageFromItsOwnSlots() {
+    final float[] locations = new float[3 * NUM_OUTPUT_DETECTIONS * 4];
+    // Image 0 has three results, image 1 one under the minimum score, image 2 says it has two
+    // detections but its later slots would pass the minimum score too.
+    final float[] scores = {
+      0.9f, 0.8f, 0.7f, 0.1f,
+      0.3f, 0.2f, 0.1f, 0.0f,
+      0.95f, 0.6f, 0.9f, 0.9f
+    };
+    final float[] classes = {
+      0, 1, 2, 3,
+      4, 4, 4, 4,
+      3, 2, 1, 0
+    };
+    final float[] numDetections = {4, 4, 2};
+    final List<List<Recognition>> results = new ArrayList<>();
+
+    createModel(NUM_OUTPUT_DETECTIONS)
+        .unpackBatch(locations, classes, scores, numDetections, 3, results);
+
+    assertEquals(3, results.size());
+    assertResults(results.get(0), new String[] {"class0", "class1", "class2"}, 0.9f, 0.8f, 0.7f);
+    assertResults(results.get(1), new String[] {});
+    assertResults(results.get(2), new String[] {"class3", "class2"}, 0.95f, 0.6f);
+  }
+
+  @Test
+  public void stopsAtMaxResultsAndClampsNumDetections() {
+    final float[] locations = new float[2 * NUM_OUTPUT_DETECTIONS * 4];
+    final float[] scores = {0.9f, 0.9f, 0.9f, 0.9f, 0.9f, 0.9f, 0.9f, 0.9f};
+    final float[] classes = {0, 1, 2, 3, 4, 3, 2, 1};
+    // The second image claims more detections than the model has slots for.
+    final float[] numDetections = {4, 100};
+    final List<List<Recognition>> results = new ArrayList<>();
+
+    createModel(2).unpackBatch(locations, classes, scores, numDetections, 2, results);
+
+    assertResults(results.get(0), new String[] {"class0", "class1"}, 0.9f, 0.9f);
+    assertResults(results.get(1), new String[] {"class4", "class3"}, 0.9f, 0.9f);
+  }
+
+  private static void assertResults(
+      final List<Recognition> results, final String[] titles, final float... scores) {
+    assertEquals(titles.length, results.size());
+    for (int i = 0; i < titles.length; ++i) {
+      final Recognition result = results.get(i);
+      // Ids count up from 0 within each image.
+      assertEquals(Integer.toString(i), result.getId());
+      assertEquals(titles[i], result.getTitle());
+      assertEquals(scores[i], result.getConfidence(), 0.0f);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.AllocationCounter;
+import org.tensorflow.lite.examples.detection.env.YuvTestFrame;
+
+/**
+ * Checks that the per-frame work of the detector, once set up, allocates nothing: writing the
+ * model input from a camera frame, decoding and suppressing raw SSD outputs, and collecting the
+ * pooled recognitions of a slot.
+ */
+public class DetectionAllocationTest {
+  private static final int INPUT_SIZE = 300;
+  private static final int NUM_CLASSES = 91;
+  private static final int MAX_RESULTS = 10;
+  private static final int ITERATIONS = 50;
+
+  /** Guards the other checks against a JVM that does not count allocations. */
+  @Test
+  public void counterSeesAllocations() {
+    final Object[] sink = new Object[1];
+    assertTrue(AllocationCounter.countBytes(() -> sink[0] = new byte[1024], ITERATIONS) >= 1024);
+  }
+
+  @Test
+  public void writingInputFromCameraFrameAllocatesNothing() {
+    final YuvTestFrame frame = new YuvTestFrame(640, 480, 2, 1);
+    final float[] cropToFrame = {640.0f / INPUT_SIZE, 0, 0, 0, 480.0f / INPUT_SIZE, 0, 0, 0, 1};
+    final ByteBuffer floatInput =
+        ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3 * 4).order(ByteOrder.nativeOrder());
+    final TensorWriter floatWriter =
+        new TensorWriter(floatInput, INPUT_SIZE, INPUT_SIZE, 128.0f, 128.0f);
+    final ByteBuffer quantizedInput =
+        ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3).order(ByteOrder.nativeOrder());
+    final TensorWriter quantizedWriter = new TensorWriter(quantizedInput, INPUT_SIZE, INPUT_SIZE);
+
+    assertEquals(
+        0, AllocationCounter.countBytes(() -> floatWriter.write(frame.frame, cropToFrame), 20));
+    assertEquals(
+        0, AllocationCounter.countBytes(() -> quantizedWriter.write(frame.frame, cropToFrame), 20));
+  }
+
+  @Test
+  public void decodingRawOutputsAllocatesNothing() {
+    final float[] anchors = SsdAnchorDecoder.generateMobileNetSsdAnchors();
+    final int numAnchors = anchors.length / 4;
+    final SsdAnchorDecoder decoder =
+        new SsdAnchorDecoder(
+            anchors,
+            NUM_CLASSES,
+            SsdAnchorDecoder.DEFAULT_Y_SCALE,
+            SsdAnchorDecoder.DEFAULT_X_SCALE,
+            SsdAnchorDecoder.DEFAULT_H_SCALE,
+            SsdAnchorDecoder.DEFAULT_W_SCALE,
+            SsdAnchorDecoder.ScoreFunction.SIGMOID,
+            0.5f,
+            0.6f,
+            true);
+
+    // Mostly background, with a few hundred anchors scoring above the threshold.
+    final Random random = new Random(1);
+    final float[] boxEncodings = new float[numAnchors * 4];
+    final float[] logits = new float[numAnchors * NUM_CLASSES];
+    for (int i = 0; i < boxEncodings.length; ++i) {
+      boxEncodings[i] = (float) random.nextGaussian();
+    }
+    for (int i = 0; i < logits.length; ++i) {
+      logits[i] = (float) random.nextGaussian() - 6.0f;
+    }
+    for (int anchor = 0; anchor < numAnchors; anchor += 7) {
+      logits[anchor * NUM_CLASSES + 1 + random.nextInt(NUM_CLASSES - 1)] = random.nextFloat() * 4;
+    }
+
+    final float[] locations = new float[MAX_RESULTS * 4];
+    final float[] classes = new float[MAX_RESULTS];
+    final float[] scores = new float[MAX_RESULTS];
+    final int[] numResults = new int[1];
+    final Runnable decode =
+        () ->
+            numResults[0] =
+                decoder.decode(
+                    boxEncodings, 0, logits, 0, MAX_RESULTS, locations, classes, scores, 0);
+    assertEquals(0, AllocationCounter.countBytes(decode, ITERATIONS));
+    // The frames measured did decode detections.
+    assertTrue(numResults[0] > 0);
+  }
+
+  @Test
+  public void readingResultsAllocatesNothing() {
+    final List<String> labels = new ArrayList<>();
+    for (int i = 0; i <= NUM_CLASSES; ++i) {
+      labels.add("class" + i);
+    }
+    final TFLiteObjectDetectionAPIModel model =
+        TFLiteObjectDetectionAPIModel.createWithoutInterpreters(
+            labels, INPUT_SIZE, false, MAX_RESULTS, MAX_RESULTS, 0.5f);
+    final TFLiteObjectDetectionAPIModel.Slot slot = model.createSlot();
+
+    // Detections sorted by decreasing score, as the postprocessing op outputs them, half of them
+    // under the minimum score.
+    final FloatBuffer locations = slot.getOutputView(0);
+    final FloatBuffer classes = slot.getOutputView(1);
+    final FloatBuffer scores = slot.getOutputView(2);
+    for (int i = 0; i < MAX_RESULTS; ++i) {
+      locations.put(i * 4, 0.1f).put(i * 4 + 1, 0.2f).put(i * 4 + 2, 0.3f).put(i * 4 + 3, 0.4f);
+      classes.put(i, i);
+      scores.put(i, 0.95f - 0.1f * i);
+    }
+    slot.getOutputView(3).put(0, MAX_RESULTS);
+
+    final int[] numResults = new int[1];
+    final Runnable read = () -> numResults[0] = model.readResults(slot).size();
+    assertEquals(0, AllocationCounter.countBytes(read, ITERATIONS));
+    // Scores 0.95 down to 0.55.
+    assertEquals(5, numResults[0]);
+  }
+}
@@ -0,0 +1,96 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.tensorflow.lite.Interpreter;
+
+/**
+ * Measures the inferences per second of an {@link InterpreterPool} of each size, with eight threads
+ * handing in inferences at once. Interpreters need the native library, so the tasks stand in for
+ * them: they either keep a core busy, or wait as for an inference running elsewhere, such as on
+ * the other threads of a native interpreter or on an accelerator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class InterpreterPoolBenchmark {
+  // About a millisecond of work per inference.
+  private static final long CPU_TOKENS = 300_000;
+  private static final long WAIT_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /** What a stand-in inference does. */
+  public enum Work {
+    CPU,
+    WAIT
+  }
+
+  @Param({"1", "2", "4", "8"})
+  public int poolSize;
+
+  @Param({"CPU", "WAIT"})
+  public Work work;
+
+  private InterpreterPool pool;
+  private InterpreterPool.Task<Void> task;
+
+  @Setup
+  public void setUp() {
+    // The pool never touches its interpreters besides handing them to the tasks and closing them.
+    pool = new InterpreterPool(new Interpreter[poolSize]);
+    task =
+        work == Work.CPU
+            ? (interpreter, index) -> {
+              Blackhole.consumeCPU(CPU_TOKENS);
+              return null;
+            }
+            : (interpreter, index) -> {
+              LockSupport.parkNanos(WAIT_NS);
+              return null;
+            };
+  }
+
+  @Benchmark
+  public void run() {
+    pool.run(task);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(InterpreterPoolBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
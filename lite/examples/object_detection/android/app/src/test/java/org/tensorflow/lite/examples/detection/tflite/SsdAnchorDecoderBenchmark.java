@@ -0,0 +1,199 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.tensorflow.lite.examples.detection.tflite.SsdAnchorDecoder.ScoreFunction;
+import org.tensorflow.lite.examples.detection.tracking.NonMaxSuppression;
+
+/**
+ * Measures decoding the raw outputs of a 1917 anchor, 91 class SSD MobileNet, against an eager
+ * decoder that scores every class of every anchor and decodes every box before thresholding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SsdAnchorDecoderBenchmark {
+  private static final int NUM_CLASSES = 91;
+  private static final int MAX_RESULTS = 10;
+  private static final float MIN_SCORE = 0.5f;
+
+  @Param({"SIGMOID", "SOFTMAX"})
+  public ScoreFunction scoreFunction;
+
+  private float[] anchors;
+  private int numAnchors;
+  private float[] boxEncodings;
+  private float[] logits;
+  private SsdAnchorDecoder decoder;
+
+  private final float[] locations = new float[MAX_RESULTS * 4];
+  private final float[] classes = new float[MAX_RESULTS];
+  private final float[] scores = new float[MAX_RESULTS];
+
+  // Buffers of the eager decoder.
+  private float[] eagerScores;
+  private float[] top;
+  private float[] left;
+  private float[] bottom;
+  private float[] right;
+  private float[] candidateScores;
+  private int[] candidateClasses;
+  private float[] candidateTop;
+  private float[] candidateLeft;
+  private float[] candidateBottom;
+  private float[] candidateRight;
+  private NonMaxSuppression nms;
+
+  @Setup
+  public void setUp() {
+    anchors = SsdAnchorDecoder.generateMobileNetSsdAnchors();
+    numAnchors = anchors.length / 4;
+    // Mostly background, with every seventh anchor on an object.
+    final Random random = new Random(1);
+    boxEncodings = new float[numAnchors * 4];
+    logits = new float[numAnchors * NUM_CLASSES];
+    for (int i = 0; i < boxEncodings.length; ++i) {
+      boxEncodings[i] = (float) random.nextGaussian();
+    }
+    for (int anchor = 0; anchor < numAnchors; ++anchor) {
+      final int base = anchor * NUM_CLASSES;
+      logits[base] = 4.0f;
+      for (int c = 1; c < NUM_CLASSES; ++c) {
+        logits[base + c] = (float) random.nextGaussian() - 6.0f;
+      }
+      if (anchor % 7 == 0) {
+        logits[base] = 0.0f;
+        logits[base + 1 + random.nextInt(NUM_CLASSES - 1)] = 2.0f + random.nextFloat() * 4;
+      }
+    }
+    decoder =
+        new SsdAnchorDecoder(
+            anchors,
+            NUM_CLASSES,
+            SsdAnchorDecoder.DEFAULT_Y_SCALE,
+            SsdAnchorDecoder.DEFAULT_X_SCALE,
+            SsdAnchorDecoder.DEFAULT_H_SCALE,
+            SsdAnchorDecoder.DEFAULT_W_SCALE,
+            scoreFunction,
+            MIN_SCORE,
+            0.6f,
+            true);
+
+    eagerScores = new float[numAnchors * NUM_CLASSES];
+    top = new float[numAnchors];
+    left = new float[numAnchors];
+    bottom = new float[numAnchors];
+    right = new float[numAnchors];
+    candidateScores = new float[numAnchors];
+    candidateClasses = new int[numAnchors];
+    candidateTop = new float[numAnchors];
+    candidateLeft = new float[numAnchors];
+    candidateBottom = new float[numAnchors];
+    candidateRight = new float[numAnchors];
+    nms =
+        new NonMaxSuppression(
+            numAnchors, NonMaxSuppression.Method.HARD, 0.6f, 0, MIN_SCORE, true);
+  }
+
+  @Benchmark
+  public int lazy() {
+    return decoder.decode(boxEncodings, 0, logits, 0, MAX_RESULTS, locations, classes, scores, 0);
+  }
+
+  @Benchmark
+  public int eager() {
+    for (int anchor = 0; anchor < numAnchors; ++anchor) {
+      final int base = anchor * NUM_CLASSES;
+      if (scoreFunction == ScoreFunction.SIGMOID) {
+        for (int c = 0; c < NUM_CLASSES; ++c) {
+          eagerScores[base + c] = 1.0f / (1.0f + (float) Math.exp(-logits[base + c]));
+        }
+      } else {
+        float sum = 0.0f;
+        for (int c = 0; c < NUM_CLASSES; ++c) {
+          eagerScores[base + c] = (float) Math.exp(logits[base + c]);
+          sum += eagerScores[base + c];
+        }
+        for (int c = 0; c < NUM_CLASSES; ++c) {
+          eagerScores[base + c] /= sum;
+        }
+      }
+      final int a = anchor * 4;
+      final float yCenter = boxEncodings[a] / 10.0f * anchors[a + 2] + anchors[a];
+      final float xCenter = boxEncodings[a + 1] / 10.0f * anchors[a + 3] + anchors[a + 1];
+      final float halfHeight = 0.5f * (float) Math.exp(boxEncodings[a + 2] / 5.0f) * anchors[a + 2];
+      final float halfWidth = 0.5f * (float) Math.exp(boxEncodings[a + 3] / 5.0f) * anchors[a + 3];
+      top[anchor] = yCenter - halfHeight;
+      left[anchor] = xCenter - halfWidth;
+      bottom[anchor] = yCenter + halfHeight;
+      right[anchor] = xCenter + halfWidth;
+    }
+
+    int numCandidates = 0;
+    for (int anchor = 0; anchor < numAnchors; ++anchor) {
+      final int base = anchor * NUM_CLASSES;
+      int best = 1;
+      for (int c = 2; c < NUM_CLASSES; ++c) {
+        if (eagerScores[base + c] > eagerScores[base + best]) {
+          best = c;
+        }
+      }
+      if (eagerScores[base + best] >= MIN_SCORE) {
+        candidateScores[numCandidates] = eagerScores[base + best];
+        candidateClasses[numCandidates] = best;
+        candidateTop[numCandidates] = top[anchor];
+        candidateLeft[numCandidates] = left[anchor];
+        candidateBottom[numCandidates] = bottom[anchor];
+        candidateRight[numCandidates] = right[anchor];
+        ++numCandidates;
+      }
+    }
+    return nms.run(
+        numCandidates,
+        candidateLeft,
+        candidateTop,
+        candidateRight,
+        candidateBottom,
+        candidateScores,
+        candidateClasses,
+        MAX_RESULTS);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(SsdAnchorDecoderBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
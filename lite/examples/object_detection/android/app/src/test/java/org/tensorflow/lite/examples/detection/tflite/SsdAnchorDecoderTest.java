@@ -0,0 +1,171 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tflite.SsdAnchorDecoder.ScoreFunction;
+
+public class SsdAnchorDecoderTest {
+  private static final float EPSILON = 1e-6f;
+  private static final int NUM_CLASSES = 3;
+
+  // Anchors as [yCenter, xCenter, height, width]: two identical ones and one apart.
+  private static final float[] ANCHORS = {
+    0.25f, 0.25f, 0.2f, 0.2f,
+    0.25f, 0.25f, 0.2f, 0.2f,
+    0.75f, 0.75f, 0.2f, 0.4f
+  };
+
+  @Test
+  public void generatesTheMobileNetSsdAnchors() {
+    final float[] anchors = SsdAnchorDecoder.generateMobileNetSsdAnchors();
+
+    assertEquals(1917 * 4, anchors.length);
+    // The finest layer starts with the small square anchor of its first cell.
+    assertArrayEquals(
+        new float[] {0.5f / 19, 0.5f / 19, 0.1f, 0.1f},
+        new float[] {anchors[0], anchors[1], anchors[2], anchors[3]},
+        EPSILON);
+    // The coarsest layer has a single cell, at the centre.
+    assertEquals(0.5f, anchors[anchors.length - 4], EPSILON);
+    assertEquals(0.5f, anchors[anchors.length - 3], EPSILON);
+  }
+
+  @Test
+  public void decodesBoxesRelativeToTheirAnchors() {
+    final SsdAnchorDecoder decoder = createDecoder(ScoreFunction.SIGMOID, 0.5f);
+    final float[] boxEncodings = new float[ANCHORS.length];
+    // Moves the third anchor by half its size and doubles its height.
+    boxEncodings[8] = 5.0f;
+    boxEncodings[9] = -5.0f;
+    boxEncodings[10] = 5.0f * (float) Math.log(2.0);
+    final float[] logits = {0, -9, -9, 0, -9, -9, 0, -9, 2};
+
+    final float[] locations = new float[4];
+    final float[] classes = new float[1];
+    final float[] scores = new float[1];
+    assertEquals(1, decoder.decode(boxEncodings, 0, logits, 0, 1, locations, classes, scores, 0));
+
+    final float yCenter = 0.75f + 0.5f * 0.2f;
+    final float xCenter = 0.75f - 0.5f * 0.4f;
+    assertArrayEquals(
+        new float[] {yCenter - 0.2f, xCenter - 0.2f, yCenter + 0.2f, xCenter + 0.2f},
+        locations,
+        EPSILON);
+    // Classes are counted without the background.
+    assertEquals(1.0f, classes[0], 0.0f);
+    assertEquals(1.0f / (1.0f + (float) Math.exp(-2.0f)), scores[0], EPSILON);
+  }
+
+  @Test
+  public void suppressesOverlappingAnchorsWithZeroMinScore() {
+    final SsdAnchorDecoder decoder = createDecoder(ScoreFunction.SIGMOID, 0.0f);
+    final float[] boxEncodings = new float[ANCHORS.length];
+    final float[] logits = {0, 3, -9, 0, 2, -9, 0, -9, 1};
+
+    final float[] locations = new float[12];
+    final float[] classes = new float[3];
+    final float[] scores = new float[3];
+    // The second anchor duplicates the first and must not fill a result slot.
+    assertEquals(2, decoder.decode(boxEncodings, 0, logits, 0, 3, locations, classes, scores, 0));
+    assertEquals(0.0f, classes[0], 0.0f);
+    assertEquals(1.0f, classes[1], 0.0f);
+    assertEquals(1.0f / (1.0f + (float) Math.exp(-3.0f)), scores[0], EPSILON);
+  }
+
+  @Test
+  public void skipsAnchorsUnderTheMinScore() {
+    final SsdAnchorDecoder decoder = createDecoder(ScoreFunction.SIGMOID, 0.5f);
+    final float[] logits = {0, -0.1f, -9, 0, -9, -9, 0, 0.1f, -9};
+
+    final float[] scores = new float[3];
+    assertEquals(
+        1,
+        decoder.decode(
+            new float[ANCHORS.length], 0, logits, 0, 3, new float[12], new float[3], scores, 0));
+    assertEquals(1.0f / (1.0f + (float) Math.exp(-0.1f)), scores[0], EPSILON);
+  }
+
+  @Test
+  public void scoresWithSoftmaxOverAllClasses() {
+    final SsdAnchorDecoder decoder = createDecoder(ScoreFunction.SOFTMAX, 0.4f);
+    final float[] logits = {1, 2, 0, 3, 0, 0, 2, 1, 1};
+
+    final float[] classes = new float[3];
+    final float[] scores = new float[3];
+    assertEquals(
+        1,
+        decoder.decode(
+            new float[ANCHORS.length], 0, logits, 0, 3, new float[12], classes, scores, 0));
+    // Only the first anchor's best class beats 0.4; the third is mostly background.
+    final float sum = (float) (Math.exp(1) + Math.exp(2) + Math.exp(0));
+    assertEquals((float) Math.exp(2) / sum, scores[0], EPSILON);
+    assertEquals(0.0f, classes[0], 0.0f);
+  }
+
+  @Test
+  public void readsAndWritesAtOffsets() {
+    final SsdAnchorDecoder decoder = createDecoder(ScoreFunction.SIGMOID, 0.0f);
+    final float[] boxEncodings = new float[2 * ANCHORS.length];
+    final float[] logits = new float[2 * ANCHORS.length / 4 * NUM_CLASSES];
+    final float[] image = {0, 3, -9, 0, 2, -9, 0, -9, 1};
+    System.arraycopy(image, 0, logits, image.length, image.length);
+
+    final float[] expectedLocations = new float[12];
+    final float[] expectedScores = new float[3];
+    decoder.decode(
+        boxEncodings, 0, image, 0, 3, expectedLocations, new float[3], expectedScores, 0);
+
+    final float[] locations = new float[24];
+    final float[] scores = new float[6];
+    assertEquals(
+        2,
+        decoder.decode(
+            boxEncodings,
+            ANCHORS.length,
+            logits,
+            image.length,
+            3,
+            locations,
+            new float[6],
+            scores,
+            3));
+    for (int i = 0; i < 2; ++i) {
+      assertEquals(expectedScores[i], scores[3 + i], 0.0f);
+      for (int j = 0; j < 4; ++j) {
+        assertEquals(expectedLocations[i * 4 + j], locations[12 + i * 4 + j], 0.0f);
+      }
+    }
+  }
+
+  private static SsdAnchorDecoder createDecoder(
+      final ScoreFunction scoreFunction, final float minScore) {
+    return new SsdAnchorDecoder(
+        ANCHORS,
+        NUM_CLASSES,
+        SsdAnchorDecoder.DEFAULT_Y_SCALE,
+        SsdAnchorDecoder.DEFAULT_X_SCALE,
+        SsdAnchorDecoder.DEFAULT_H_SCALE,
+        SsdAnchorDecoder.DEFAULT_W_SCALE,
+        scoreFunction,
+        minScore,
+        0.5f,
+        false);
+  }
+}
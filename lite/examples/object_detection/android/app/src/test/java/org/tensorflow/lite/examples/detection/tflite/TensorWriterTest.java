@@ -0,0 +1,138 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tflite;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.YuvTestFrame;
+
+/**
+ * Checks that writing a model input straight from a YUV frame gives the same tensor as the
+ * original path: converting the whole frame to ARGB, cropping it through the transform with
+ * unfiltered nearest-neighbour sampling, then writing the cropped pixels.
+ */
+public class TensorWriterTest {
+  private static final int FRAME_WIDTH = 640;
+  private static final int FRAME_HEIGHT = 480;
+  private static final int INPUT_SIZE = 300;
+  private static final float IMAGE_MEAN = 128.0f;
+  private static final float IMAGE_STD = 128.0f;
+
+  @Test
+  public void fusedFloatInputMatchesConvertThenCrop() {
+    for (final int uvPixelStride : new int[] {1, 2}) {
+      final YuvTestFrame frame = new YuvTestFrame(FRAME_WIDTH, FRAME_HEIGHT, uvPixelStride, 1);
+      assertSameTensor(frame, getScaleTransform(), false);
+      assertSameTensor(frame, getRotateTransform(), false);
+    }
+  }
+
+  @Test
+  public void fusedQuantizedInputMatchesConvertThenCrop() {
+    for (final int uvPixelStride : new int[] {1, 2}) {
+      final YuvTestFrame frame = new YuvTestFrame(FRAME_WIDTH, FRAME_HEIGHT, uvPixelStride, 2);
+      assertSameTensor(frame, getScaleTransform(), true);
+      assertSameTensor(frame, getRotateTransform(), true);
+    }
+  }
+
+  @Test
+  public void bitmapPixelsAreNormalizedThroughTable() {
+    final Random random = new Random(3);
+    final int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+    for (int i = 0; i < pixels.length; ++i) {
+      pixels[i] = random.nextInt();
+    }
+    final ByteBuffer buffer = allocate(false);
+    new TensorWriter(buffer, INPUT_SIZE, INPUT_SIZE, IMAGE_MEAN, IMAGE_STD).write(pixels);
+    buffer.rewind();
+    for (final int pixel : pixels) {
+      assertEquals((((pixel >> 16) & 0xFF) - IMAGE_MEAN) / IMAGE_STD, buffer.getFloat(), 0.0f);
+      assertEquals((((pixel >> 8) & 0xFF) - IMAGE_MEAN) / IMAGE_STD, buffer.getFloat(), 0.0f);
+      assertEquals(((pixel & 0xFF) - IMAGE_MEAN) / IMAGE_STD, buffer.getFloat(), 0.0f);
+    }
+  }
+
+  /** Squashes the whole frame into the input, as the detector does without keeping the aspect. */
+  private static float[] getScaleTransform() {
+    return new float[] {
+      (float) FRAME_WIDTH / INPUT_SIZE, 0, 0, 0, (float) FRAME_HEIGHT / INPUT_SIZE, 0, 0, 0, 1
+    };
+  }
+
+  /**
+   * Inverse of rotating the frame by 90 degrees about its centre and scaling it to fill the input
+   * while keeping the aspect, as {@code ImageUtils.getTransformationMatrix} does for a portrait
+   * sensor.
+   */
+  private static float[] getRotateTransform() {
+    final float scale = (float) INPUT_SIZE / FRAME_HEIGHT;
+    final float half = INPUT_SIZE / 2.0f;
+    return new float[] {
+      0, 1 / scale, FRAME_WIDTH / 2.0f - half / scale,
+      -1 / scale, 0, FRAME_HEIGHT / 2.0f + half / scale,
+      0, 0, 1
+    };
+  }
+
+  private static void assertSameTensor(
+      final YuvTestFrame frame, final float[] cropToFrame, final boolean quantized) {
+    final ByteBuffer expected = allocate(quantized);
+    createWriter(expected, quantized).write(cropWithCanvasSampling(frame, cropToFrame));
+    final ByteBuffer actual = allocate(quantized);
+    createWriter(actual, quantized).write(frame.frame, cropToFrame);
+
+    expected.rewind();
+    actual.rewind();
+    assertEquals(expected, actual);
+  }
+
+  /** Samples the converted frame at the centre of each input pixel, as an unfiltered Canvas. */
+  private static int[] cropWithCanvasSampling(final YuvTestFrame frame, final float[] m) {
+    final int[] argb = frame.convertWithFormula();
+    final int[] cropped = new int[INPUT_SIZE * INPUT_SIZE];
+    for (int j = 0; j < INPUT_SIZE; ++j) {
+      for (int i = 0; i < INPUT_SIZE; ++i) {
+        final float x = i + 0.5f;
+        final float y = j + 0.5f;
+        final int sx = (int) Math.floor(m[0] * x + m[1] * y + m[2]);
+        final int sy = (int) Math.floor(m[3] * x + m[4] * y + m[5]);
+        cropped[j * INPUT_SIZE + i] =
+            sx >= 0 && sx < frame.width && sy >= 0 && sy < frame.height
+                ? argb[sy * frame.width + sx]
+                : 0xff000000;
+      }
+    }
+    return cropped;
+  }
+
+  private static ByteBuffer allocate(final boolean quantized) {
+    final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(INPUT_SIZE * INPUT_SIZE * 3 * (quantized ? 1 : 4));
+    buffer.order(ByteOrder.nativeOrder());
+    return buffer;
+  }
+
+  private static TensorWriter createWriter(final ByteBuffer buffer, final boolean quantized) {
+    return quantized
+        ? new TensorWriter(buffer, INPUT_SIZE, INPUT_SIZE)
+        : new TensorWriter(buffer, INPUT_SIZE, INPUT_SIZE, IMAGE_MEAN, IMAGE_STD);
+  }
+}
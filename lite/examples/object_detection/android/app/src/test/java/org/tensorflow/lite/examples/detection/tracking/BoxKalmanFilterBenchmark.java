@@ -0,0 +1,113 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures one predict and update round over every track, for {@link BoxKalmanFilter} and for the
+ * same filter written with dense 8x8 matrices.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoxKalmanFilterBenchmark {
+  @Param({"100", "200", "500"})
+  public int numTracks;
+
+  private BoxKalmanFilter[] filters;
+  private DenseBoxKalmanFilter[] denseFilters;
+  // Measured center x, center y, width and height of each track.
+  private float[] measurements;
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(1);
+    filters = new BoxKalmanFilter[numTracks];
+    denseFilters = new DenseBoxKalmanFilter[numTracks];
+    measurements = new float[numTracks * 4];
+    for (int i = 0; i < numTracks; ++i) {
+      final float centerX = 640.0f * random.nextFloat();
+      final float centerY = 480.0f * random.nextFloat();
+      final float width = 20.0f + 100.0f * random.nextFloat();
+      final float height = 20.0f + 100.0f * random.nextFloat();
+      filters[i] = new BoxKalmanFilter();
+      filters[i].init(centerX, centerY, width, height);
+      denseFilters[i] = new DenseBoxKalmanFilter();
+      denseFilters[i].init(centerX, centerY, width, height);
+      measurements[i * 4] = centerX + (float) random.nextGaussian();
+      measurements[i * 4 + 1] = centerY + (float) random.nextGaussian();
+      measurements[i * 4 + 2] = width + (float) random.nextGaussian();
+      measurements[i * 4 + 3] = height + (float) random.nextGaussian();
+    }
+  }
+
+  @Benchmark
+  public float unrolled() {
+    float sum = 0.0f;
+    for (int i = 0; i < numTracks; ++i) {
+      final BoxKalmanFilter filter = filters[i];
+      filter.predict(1.0f);
+      filter.update(
+          measurements[i * 4],
+          measurements[i * 4 + 1],
+          measurements[i * 4 + 2],
+          measurements[i * 4 + 3]);
+      sum += filter.getCenterX();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public float dense() {
+    float sum = 0.0f;
+    for (int i = 0; i < numTracks; ++i) {
+      final DenseBoxKalmanFilter filter = denseFilters[i];
+      filter.predict(1.0f);
+      filter.update(
+          measurements[i * 4],
+          measurements[i * 4 + 1],
+          measurements[i * 4 + 2],
+          measurements[i * 4 + 3]);
+      sum += filter.getState(0);
+    }
+    return sum;
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(BoxKalmanFilterBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
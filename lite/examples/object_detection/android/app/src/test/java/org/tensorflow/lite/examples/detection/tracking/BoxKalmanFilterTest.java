@@ -0,0 +1,173 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.AllocationCounter;
+
+/** Tests {@link BoxKalmanFilter} on synthetic box trajectories. */
+public class BoxKalmanFilterTest {
+  private static final float VELOCITY_X = 3.0f;
+  private static final float VELOCITY_Y = -2.0f;
+  private static final float WIDTH = 40.0f;
+  private static final float HEIGHT = 30.0f;
+
+  private static float centerX(final float frame) {
+    return 100.0f + VELOCITY_X * frame;
+  }
+
+  private static float centerY(final float frame) {
+    return 200.0f + VELOCITY_Y * frame;
+  }
+
+  @Test
+  public void startsAtTheMeasuredBoxWithNoVelocity() {
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    filter.init(10.0f, 20.0f, 30.0f, 40.0f);
+
+    assertEquals(10.0f, filter.getCenterX(), 0.0f);
+    assertEquals(20.0f, filter.getCenterY(), 0.0f);
+    assertEquals(30.0f, filter.getWidth(), 0.0f);
+    assertEquals(40.0f, filter.getHeight(), 0.0f);
+    assertEquals(0.0f, filter.getVelocityX(), 0.0f);
+    assertEquals(0.0f, filter.getVelocityY(), 0.0f);
+  }
+
+  @Test
+  public void predictGrowsAndUpdateShrinksTheVariance() {
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    filter.init(10.0f, 20.0f, 30.0f, 40.0f);
+    final float initial = filter.getPositionVariance(0);
+
+    filter.predict(1.0f);
+    final float predicted = filter.getPositionVariance(0);
+    filter.update(10.0f, 20.0f, 30.0f, 40.0f);
+    final float updated = filter.getPositionVariance(0);
+
+    assertTrue(predicted > initial);
+    assertTrue(updated < predicted);
+  }
+
+  @Test
+  public void learnsAConstantVelocity() {
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    filter.init(centerX(0), centerY(0), WIDTH, HEIGHT);
+    for (int frame = 1; frame <= 60; ++frame) {
+      filter.predict(1.0f);
+      filter.update(centerX(frame), centerY(frame), WIDTH, HEIGHT);
+    }
+
+    assertEquals(VELOCITY_X, filter.getVelocityX(), 0.05f);
+    assertEquals(VELOCITY_Y, filter.getVelocityY(), 0.05f);
+    assertEquals(centerX(60), filter.getCenterX(), 0.1f);
+    assertEquals(centerY(60), filter.getCenterY(), 0.1f);
+    assertEquals(WIDTH, filter.getWidth(), 1e-3f);
+    assertEquals(HEIGHT, filter.getHeight(), 1e-3f);
+  }
+
+  @Test
+  public void coastsBetweenSparseDetections() {
+    // One detection every third frame, then ten frames with none.
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    filter.init(centerX(0), centerY(0), WIDTH, HEIGHT);
+    for (int frame = 3; frame <= 90; frame += 3) {
+      filter.predict(3.0f);
+      filter.update(centerX(frame), centerY(frame), WIDTH, HEIGHT);
+    }
+    filter.predict(10.0f);
+
+    assertEquals(centerX(100), filter.getCenterX(), 0.5f);
+    assertEquals(centerY(100), filter.getCenterY(), 0.5f);
+  }
+
+  @Test
+  public void smoothsNoisyMeasurements() {
+    final Random random = new Random(1);
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    filter.init(centerX(0), centerY(0), WIDTH, HEIGHT);
+    double measurementError = 0.0;
+    double filterError = 0.0;
+    for (int frame = 1; frame <= 300; ++frame) {
+      final float measuredX = centerX(frame) + 2.0f * (float) random.nextGaussian();
+      final float measuredY = centerY(frame) + 2.0f * (float) random.nextGaussian();
+      filter.predict(1.0f);
+      filter.update(measuredX, measuredY, WIDTH, HEIGHT);
+      if (frame > 50) {
+        measurementError += square(measuredX - centerX(frame)) + square(measuredY - centerY(frame));
+        filterError +=
+            square(filter.getCenterX() - centerX(frame))
+                + square(filter.getCenterY() - centerY(frame));
+      }
+    }
+
+    assertTrue(filterError < 0.5 * measurementError);
+    assertEquals(VELOCITY_X, filter.getVelocityX(), 0.3f);
+    assertEquals(VELOCITY_Y, filter.getVelocityY(), 0.3f);
+  }
+
+  @Test
+  public void matchesTheDenseFilter() {
+    // A box that moves, shrinks and is measured at irregular intervals.
+    final Random random = new Random(2);
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    final DenseBoxKalmanFilter dense = new DenseBoxKalmanFilter();
+    filter.init(50.0f, 60.0f, 80.0f, 40.0f);
+    dense.init(50.0f, 60.0f, 80.0f, 40.0f);
+    float frame = 0.0f;
+    for (int i = 0; i < 40; ++i) {
+      final float frames = 1 + random.nextInt(3);
+      frame += frames;
+      final float width = 80.0f - 0.5f * frame + (float) random.nextGaussian();
+      final float height = 40.0f - 0.25f * frame + (float) random.nextGaussian();
+      filter.predict(frames);
+      dense.predict(frames);
+      filter.update(centerX(frame), centerY(frame), width, height);
+      dense.update(centerX(frame), centerY(frame), width, height);
+
+      assertEquals(dense.getState(0), filter.getCenterX(), 1e-3f);
+      assertEquals(dense.getState(1), filter.getCenterY(), 1e-3f);
+      assertEquals(dense.getState(2), filter.getWidth(), 1e-3f);
+      assertEquals(dense.getState(3), filter.getHeight(), 1e-3f);
+      assertEquals(dense.getState(4), filter.getVelocityX(), 1e-3f);
+      assertEquals(dense.getState(5), filter.getVelocityY(), 1e-3f);
+      for (int c = 0; c < 4; ++c) {
+        final float variance = dense.getCovariance(c, c);
+        assertEquals(variance, filter.getPositionVariance(c), 1e-4f * variance);
+      }
+    }
+  }
+
+  @Test
+  public void predictAndUpdateAllocateNothing() {
+    final BoxKalmanFilter filter = new BoxKalmanFilter();
+    filter.init(centerX(0), centerY(0), WIDTH, HEIGHT);
+    final Runnable step =
+        () -> {
+          filter.predict(1.0f);
+          filter.update(centerX(1), centerY(1), WIDTH, HEIGHT);
+        };
+
+    assertEquals(0, AllocationCounter.countBytes(step, 100));
+  }
+
+  private static double square(final double value) {
+    return value * value;
+  }
+}
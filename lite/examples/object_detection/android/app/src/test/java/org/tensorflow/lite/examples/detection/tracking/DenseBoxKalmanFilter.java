@@ -0,0 +1,217 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Arrays;
+
+/**
+ * The textbook form of {@link BoxKalmanFilter}: the same model and noise, with the full 8x8
+ * covariance propagated by dense matrix products and the 4x4 innovation covariance inverted by
+ * Gauss-Jordan elimination. Used to check the unrolled filter and as the benchmark baseline.
+ */
+public class DenseBoxKalmanFilter {
+  private static final int N = 8;
+  private static final int M = 4;
+
+  private static final float POSITION_STD = 1.0f / 20.0f;
+  private static final float VELOCITY_STD = 1.0f / 160.0f;
+  private static final float MEASUREMENT_STD = 1.0f / 20.0f;
+  private static final float INITIAL_VELOCITY_STD = 10.0f / 160.0f;
+
+  // Center x, center y, width, height, then their velocities.
+  private final float[] state = new float[N];
+  private final float[] covariance = new float[N * N];
+
+  private final float[] next = new float[N];
+  private final float[] transition = new float[N * N];
+  private final float[] product = new float[N * N];
+  private final float[] innovation = new float[M];
+  private final float[] innovationCovariance = new float[M * M];
+  private final float[] inverse = new float[M * M];
+  private final float[] gain = new float[N * M];
+  private final float[] scales = new float[M];
+
+  public void init(
+      final float centerX, final float centerY, final float width, final float height) {
+    state[0] = centerX;
+    state[1] = centerY;
+    state[2] = width;
+    state[3] = height;
+    computeScales();
+    Arrays.fill(covariance, 0.0f);
+    for (int i = 0; i < M; ++i) {
+      state[M + i] = 0.0f;
+      covariance[i * N + i] = square(2.0f * POSITION_STD * scales[i]);
+      covariance[(M + i) * N + M + i] = square(INITIAL_VELOCITY_STD * scales[i]);
+    }
+  }
+
+  public void predict(final float frames) {
+    computeScales();
+    Arrays.fill(transition, 0.0f);
+    for (int i = 0; i < N; ++i) {
+      transition[i * N + i] = 1.0f;
+    }
+    for (int i = 0; i < M; ++i) {
+      transition[i * N + M + i] = frames;
+    }
+
+    multiply(transition, state, next);
+    System.arraycopy(next, 0, state, 0, N);
+
+    // covariance = F * covariance * F^T + Q
+    for (int r = 0; r < N; ++r) {
+      for (int c = 0; c < N; ++c) {
+        float sum = 0.0f;
+        for (int k = 0; k < N; ++k) {
+          sum += transition[r * N + k] * covariance[k * N + c];
+        }
+        product[r * N + c] = sum;
+      }
+    }
+    for (int r = 0; r < N; ++r) {
+      for (int c = 0; c < N; ++c) {
+        float sum = 0.0f;
+        for (int k = 0; k < N; ++k) {
+          sum += product[r * N + k] * transition[c * N + k];
+        }
+        covariance[r * N + c] = sum;
+      }
+    }
+    for (int i = 0; i < M; ++i) {
+      covariance[i * N + i] += square(POSITION_STD * scales[i]) * frames;
+      covariance[(M + i) * N + M + i] += square(VELOCITY_STD * scales[i]) * frames;
+    }
+  }
+
+  public void update(
+      final float centerX, final float centerY, final float width, final float height) {
+    computeScales();
+    innovation[0] = centerX - state[0];
+    innovation[1] = centerY - state[1];
+    innovation[2] = width - state[2];
+    innovation[3] = height - state[3];
+
+    // The measurement picks the first four coordinates, so H * P * H^T is the top-left block.
+    for (int r = 0; r < M; ++r) {
+      for (int c = 0; c < M; ++c) {
+        innovationCovariance[r * M + c] = covariance[r * N + c];
+      }
+      innovationCovariance[r * M + r] += square(MEASUREMENT_STD * scales[r]);
+    }
+    invert(innovationCovariance, inverse);
+
+    // gain = P * H^T * S^-1
+    for (int r = 0; r < N; ++r) {
+      for (int c = 0; c < M; ++c) {
+        float sum = 0.0f;
+        for (int k = 0; k < M; ++k) {
+          sum += covariance[r * N + k] * inverse[k * M + c];
+        }
+        gain[r * M + c] = sum;
+      }
+    }
+    for (int r = 0; r < N; ++r) {
+      float sum = 0.0f;
+      for (int k = 0; k < M; ++k) {
+        sum += gain[r * M + k] * innovation[k];
+      }
+      state[r] += sum;
+    }
+
+    // covariance = (I - gain * H) * covariance
+    for (int r = 0; r < N; ++r) {
+      for (int c = 0; c < N; ++c) {
+        float sum = 0.0f;
+        for (int k = 0; k < M; ++k) {
+          sum += gain[r * M + k] * covariance[k * N + c];
+        }
+        product[r * N + c] = covariance[r * N + c] - sum;
+      }
+    }
+    System.arraycopy(product, 0, covariance, 0, N * N);
+  }
+
+  public float getState(final int i) {
+    return state[i];
+  }
+
+  public float getCovariance(final int row, final int column) {
+    return covariance[row * N + column];
+  }
+
+  private void computeScales() {
+    scales[0] = state[2];
+    scales[1] = state[3];
+    scales[2] = state[2];
+    scales[3] = state[3];
+  }
+
+  private static void multiply(final float[] matrix, final float[] vector, final float[] result) {
+    for (int r = 0; r < N; ++r) {
+      float sum = 0.0f;
+      for (int k = 0; k < N; ++k) {
+        sum += matrix[r * N + k] * vector[k];
+      }
+      result[r] = sum;
+    }
+  }
+
+  /** Writes the inverse of a 4x4 matrix to {@code result}, destroying {@code matrix}. */
+  private static void invert(final float[] matrix, final float[] result) {
+    Arrays.fill(result, 0.0f);
+    for (int i = 0; i < M; ++i) {
+      result[i * M + i] = 1.0f;
+    }
+    for (int column = 0; column < M; ++column) {
+      int pivot = column;
+      for (int r = column + 1; r < M; ++r) {
+        if (Math.abs(matrix[r * M + column]) > Math.abs(matrix[pivot * M + column])) {
+          pivot = r;
+        }
+      }
+      swapRows(matrix, column, pivot);
+      swapRows(result, column, pivot);
+      final float scale = 1.0f / matrix[column * M + column];
+      for (int c = 0; c < M; ++c) {
+        matrix[column * M + c] *= scale;
+        result[column * M + c] *= scale;
+      }
+      for (int r = 0; r < M; ++r) {
+        if (r == column) {
+          continue;
+        }
+        final float factor = matrix[r * M + column];
+        for (int c = 0; c < M; ++c) {
+          matrix[r * M + c] -= factor * matrix[column * M + c];
+          result[r * M + c] -= factor * result[column * M + c];
+        }
+      }
+    }
+  }
+
+  private static void swapRows(final float[] matrix, final int a, final int b) {
+    for (int c = 0; c < M; ++c) {
+      final float value = matrix[a * M + c];
+      matrix[a * M + c] = matrix[b * M + c];
+      matrix[b * M + c] = value;
+    }
+  }
+
+  private static float square(final float value) {
+    return value * value;
+  }
+}
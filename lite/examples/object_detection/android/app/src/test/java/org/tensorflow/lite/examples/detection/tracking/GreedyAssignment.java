@@ -0,0 +1,72 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Arrays;
+
+/**
+ * Greedy assignment over the same flat cost matrix as {@link LinearAssignment}: pairs within the
+ * gate are taken cheapest first, skipping those whose row or column is already assigned.
+ */
+public class GreedyAssignment {
+  private int[] rowMatches = new int[0];
+  private int[] columnMatches = new int[0];
+  // Cost bits in the high half, pair index in the low half; costs are never negative.
+  private long[] pairs = new long[0];
+
+  public int solve(final float[] costs, final int numRows, final int numColumns, final float gate) {
+    if (rowMatches.length < numRows) {
+      rowMatches = new int[numRows];
+    }
+    if (columnMatches.length < numColumns) {
+      columnMatches = new int[numColumns];
+    }
+    if (pairs.length < numRows * numColumns) {
+      pairs = new long[numRows * numColumns];
+    }
+    Arrays.fill(rowMatches, 0, numRows, -1);
+    Arrays.fill(columnMatches, 0, numColumns, -1);
+
+    int numPairs = 0;
+    for (int i = 0; i < numRows * numColumns; ++i) {
+      if (costs[i] <= gate) {
+        pairs[numPairs++] = ((long) Float.floatToIntBits(costs[i]) << 32) | i;
+      }
+    }
+    Arrays.sort(pairs, 0, numPairs);
+
+    int numMatches = 0;
+    for (int p = 0; p < numPairs; ++p) {
+      final int i = (int) pairs[p];
+      final int r = i / numColumns;
+      final int c = i % numColumns;
+      if (rowMatches[r] < 0 && columnMatches[c] < 0) {
+        rowMatches[r] = c;
+        columnMatches[c] = r;
+        ++numMatches;
+      }
+    }
+    return numMatches;
+  }
+
+  public int getRowMatch(final int r) {
+    return rowMatches[r];
+  }
+
+  public int getColumnMatch(final int c) {
+    return columnMatches[c];
+  }
+}
@@ -0,0 +1,72 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures {@link LinearAssignment} against greedy assignment, matching tracked objects to
+ * detections by IoU in scenes of 10, 50 and 200 objects.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinearAssignmentBenchmark {
+  @Param({"10", "50", "200"})
+  public int numObjects;
+
+  private TrackingScene scene;
+  private final LinearAssignment assignment = new LinearAssignment();
+  private final GreedyAssignment greedy = new GreedyAssignment();
+
+  @Setup
+  public void setUp() {
+    scene = new TrackingScene(numObjects, 1);
+  }
+
+  @Benchmark
+  public int hungarian() {
+    return assignment.solve(scene.costs, scene.numTracks, scene.numDetections, TrackingScene.GATE);
+  }
+
+  @Benchmark
+  public int greedy() {
+    return greedy.solve(scene.costs, scene.numTracks, scene.numDetections, TrackingScene.GATE);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(LinearAssignmentBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
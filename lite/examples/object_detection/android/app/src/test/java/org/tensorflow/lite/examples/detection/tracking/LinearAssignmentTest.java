@@ -0,0 +1,213 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.env.AllocationCounter;
+
+/** Tests {@link LinearAssignment} against brute force and greedy assignment. */
+public class LinearAssignmentTest {
+  @Test
+  public void findsTheCheaperCrossing() {
+    // Greedy takes the 0.1 pair and is left with 0.9, for 1.0 in total instead of 0.35.
+    final float[] costs = {0.1f, 0.2f, 0.15f, 0.9f};
+    final LinearAssignment assignment = new LinearAssignment();
+
+    assertEquals(2, assignment.solve(costs, 2, 2, 1.0f));
+    assertEquals(1, assignment.getRowMatch(0));
+    assertEquals(0, assignment.getRowMatch(1));
+    assertEquals(1, assignment.getColumnMatch(0));
+    assertEquals(0, assignment.getColumnMatch(1));
+  }
+
+  @Test
+  public void neverAssignsPairsOverTheGate() {
+    final float[] costs = {
+      0.9f, 0.2f, 0.9f,
+      0.9f, 0.9f, 0.9f,
+      0.1f, 0.3f, 0.9f
+    };
+    final LinearAssignment assignment = new LinearAssignment();
+
+    assertEquals(2, assignment.solve(costs, 3, 3, 0.5f));
+    assertEquals(1, assignment.getRowMatch(0));
+    assertEquals(-1, assignment.getRowMatch(1));
+    assertEquals(0, assignment.getRowMatch(2));
+    assertEquals(-1, assignment.getColumnMatch(2));
+  }
+
+  @Test
+  public void prefersMorePairsOverCheaperOnes() {
+    // Pairing row 0 with column 0 alone costs 0.1, but leaves row 1 unassigned.
+    final float[] costs = {
+      0.1f, 0.4f,
+      0.3f, 0.9f
+    };
+    final LinearAssignment assignment = new LinearAssignment();
+
+    assertEquals(2, assignment.solve(costs, 2, 2, 0.5f));
+    assertEquals(1, assignment.getRowMatch(0));
+    assertEquals(0, assignment.getRowMatch(1));
+  }
+
+  @Test
+  public void solvesEmptyProblems() {
+    final LinearAssignment assignment = new LinearAssignment();
+
+    assertEquals(0, assignment.solve(new float[0], 0, 0, 0.5f));
+    assertEquals(0, assignment.solve(new float[0], 3, 0, 0.5f));
+    assertEquals(-1, assignment.getRowMatch(2));
+    assertEquals(0, assignment.solve(new float[0], 0, 3, 0.5f));
+    assertEquals(-1, assignment.getColumnMatch(2));
+  }
+
+  @Test
+  public void matchesBruteForce() {
+    final Random random = new Random(1);
+    final LinearAssignment assignment = new LinearAssignment();
+    for (int trial = 0; trial < 2000; ++trial) {
+      final int numRows = 1 + random.nextInt(5);
+      final int numColumns = 1 + random.nextInt(6);
+      final float gate = random.nextFloat();
+      final float[] costs = new float[numRows * numColumns];
+      for (int i = 0; i < costs.length; ++i) {
+        costs[i] = random.nextFloat();
+      }
+
+      final int numMatches = assignment.solve(costs, numRows, numColumns, gate);
+      final float[] best = {0, Float.MAX_VALUE};
+      bruteForce(costs, numRows, numColumns, gate, 0, new boolean[numColumns], 0, 0.0f, best);
+
+      assertEquals((int) best[0], numMatches);
+      assertEquals(best[1], getTotalCost(assignment, costs, numRows, numColumns, gate), 1e-4f);
+    }
+  }
+
+  @Test
+  public void assignsAtLeastAsWellAsGreedyOnTrackingScenes() {
+    final LinearAssignment assignment = new LinearAssignment();
+    final GreedyAssignment greedy = new GreedyAssignment();
+    for (int seed = 0; seed < 20; ++seed) {
+      final TrackingScene scene = new TrackingScene(50, seed);
+      final int numMatches =
+          assignment.solve(
+              scene.costs, scene.numTracks, scene.numDetections, TrackingScene.GATE);
+      final int numGreedyMatches =
+          greedy.solve(scene.costs, scene.numTracks, scene.numDetections, TrackingScene.GATE);
+
+      assertTrue(numMatches >= numGreedyMatches);
+      if (numMatches == numGreedyMatches) {
+        float greedyCost = 0.0f;
+        for (int t = 0; t < scene.numTracks; ++t) {
+          if (greedy.getRowMatch(t) >= 0) {
+            greedyCost += scene.costs[t * scene.numDetections + greedy.getRowMatch(t)];
+          }
+        }
+        final float cost =
+            getTotalCost(
+                assignment, scene.costs, scene.numTracks, scene.numDetections, TrackingScene.GATE);
+        assertTrue(cost <= greedyCost + 1e-4f);
+      }
+    }
+  }
+
+  @Test
+  public void solvingAllocatesNothingOnceSized() {
+    final LinearAssignment assignment = new LinearAssignment();
+    final TrackingScene large = new TrackingScene(200, 1);
+    final TrackingScene small = new TrackingScene(50, 2);
+    assignment.solve(large.costs, large.numTracks, large.numDetections, TrackingScene.GATE);
+
+    assertEquals(
+        0,
+        AllocationCounter.countBytes(
+            () ->
+                assignment.solve(
+                    small.costs, small.numTracks, small.numDetections, TrackingScene.GATE),
+            20));
+  }
+
+  /** Total cost of the last assignment, checking that rows and columns agree and are gated. */
+  private static float getTotalCost(
+      final LinearAssignment assignment,
+      final float[] costs,
+      final int numRows,
+      final int numColumns,
+      final float gate) {
+    float total = 0.0f;
+    for (int r = 0; r < numRows; ++r) {
+      final int c = assignment.getRowMatch(r);
+      if (c >= 0) {
+        assertEquals(r, assignment.getColumnMatch(c));
+        assertTrue(costs[r * numColumns + c] <= gate);
+        total += costs[r * numColumns + c];
+      }
+    }
+    for (int c = 0; c < numColumns; ++c) {
+      final int r = assignment.getColumnMatch(c);
+      if (r >= 0) {
+        assertEquals(c, assignment.getRowMatch(r));
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Tries every gated assignment of rows {@code row} onwards, keeping in {@code best} the largest
+   * number of pairs and, among those, the lowest total cost.
+   */
+  private static void bruteForce(
+      final float[] costs,
+      final int numRows,
+      final int numColumns,
+      final float gate,
+      final int row,
+      final boolean[] usedColumns,
+      final int numMatches,
+      final float cost,
+      final float[] best) {
+    if (row == numRows) {
+      if (numMatches > best[0] || (numMatches == best[0] && cost < best[1])) {
+        best[0] = numMatches;
+        best[1] = cost;
+      }
+      return;
+    }
+    bruteForce(costs, numRows, numColumns, gate, row + 1, usedColumns, numMatches, cost, best);
+    for (int c = 0; c < numColumns; ++c) {
+      final float pairCost = costs[row * numColumns + c];
+      if (usedColumns[c] || pairCost > gate) {
+        continue;
+      }
+      usedColumns[c] = true;
+      bruteForce(
+          costs,
+          numRows,
+          numColumns,
+          gate,
+          row + 1,
+          usedColumns,
+          numMatches + 1,
+          cost + pairCost,
+          best);
+      usedColumns[c] = false;
+    }
+  }
+}
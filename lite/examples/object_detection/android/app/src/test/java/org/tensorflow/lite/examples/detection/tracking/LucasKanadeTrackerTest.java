@@ -0,0 +1,155 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+/** Tests {@link LucasKanadeTracker} on synthetic Y planes shifted by known amounts. */
+public class LucasKanadeTrackerTest {
+  private static final int WIDTH = 256;
+  private static final int HEIGHT = 192;
+  // Rows are padded, as camera planes often are.
+  private static final int ROW_STRIDE = 272;
+  private static final int WINDOW_RADIUS = 4;
+  private static final int ITERATIONS = 20;
+  private static final int POINTS_PER_SIDE = 3;
+  private static final float TOLERANCE = 0.1f;
+
+  /** A smooth texture, with gradients along both axes at every pyramid level. */
+  private static float texture(final float x, final float y) {
+    return 128.0f
+        + 50.0f * (float) Math.sin(0.15f * x + 0.06f * y)
+        + 50.0f * (float) Math.cos(0.14f * y - 0.05f * x)
+        + 20.0f * (float) Math.sin(0.21f * x) * (float) Math.cos(0.19f * y);
+  }
+
+  /**
+   * A Y plane of the texture moved by (shiftX, shiftY), starting at {@code offset} within its
+   * buffer, whose position is left at the offset.
+   */
+  private static ByteBuffer plane(final float shiftX, final float shiftY, final int offset) {
+    final ByteBuffer buffer = ByteBuffer.allocate(offset + HEIGHT * ROW_STRIDE);
+    for (int y = 0; y < HEIGHT; ++y) {
+      for (int x = 0; x < WIDTH; ++x) {
+        final float value = texture(x - shiftX, y - shiftY);
+        buffer.put(offset + y * ROW_STRIDE + x, (byte) Math.round(value));
+      }
+    }
+    buffer.position(offset);
+    return buffer;
+  }
+
+  private static ByteBuffer flatPlane() {
+    final ByteBuffer buffer = ByteBuffer.allocate(HEIGHT * ROW_STRIDE);
+    for (int i = 0; i < buffer.capacity(); ++i) {
+      buffer.put(i, (byte) 128);
+    }
+    return buffer;
+  }
+
+  private static void assertRecoversShift(
+      final int numLevels, final float shiftX, final float shiftY) {
+    final LucasKanadeTracker tracker =
+        new LucasKanadeTracker(WIDTH, HEIGHT, numLevels, WINDOW_RADIUS, ITERATIONS);
+    tracker.nextFrame(plane(0.0f, 0.0f, 0), ROW_STRIDE);
+    final float[] from = new float[2 * POINTS_PER_SIDE * POINTS_PER_SIDE];
+    final int count = tracker.selectPoints(96.0f, 64.0f, 160.0f, 128.0f, POINTS_PER_SIDE, from);
+    // Some grid points fall where the texture is too smooth along one axis.
+    assertTrue(count >= POINTS_PER_SIDE * POINTS_PER_SIDE / 2);
+
+    tracker.nextFrame(plane(shiftX, shiftY, 0), ROW_STRIDE);
+    final float[] to = new float[from.length];
+    final boolean[] found = new boolean[count];
+    tracker.track(from, to, count, found);
+
+    for (int i = 0; i < count; ++i) {
+      assertTrue("point " + i, found[i]);
+      assertEquals("x of point " + i, from[2 * i] + shiftX, to[2 * i], TOLERANCE);
+      assertEquals("y of point " + i, from[2 * i + 1] + shiftY, to[2 * i + 1], TOLERANCE);
+    }
+  }
+
+  @Test
+  public void recoversSubpixelShiftWithOneLevel() {
+    assertRecoversShift(1, 1.3f, -0.6f);
+  }
+
+  @Test
+  public void recoversLargerSubpixelShiftWithFourLevels() {
+    assertRecoversShift(4, 6.4f, -3.7f);
+  }
+
+  @Test
+  public void readsThePlaneFromTheBufferPosition() {
+    final LucasKanadeTracker tracker =
+        new LucasKanadeTracker(WIDTH, HEIGHT, 1, WINDOW_RADIUS, ITERATIONS);
+    tracker.nextFrame(plane(0.0f, 0.0f, 0), ROW_STRIDE);
+    final float[] from = {128.0f, 96.0f};
+    // The shifted plane starts past a header the tracker must skip.
+    final ByteBuffer shifted = plane(0.8f, 0.4f, 100);
+    tracker.nextFrame(shifted, ROW_STRIDE);
+    assertEquals(100, shifted.position());
+
+    final float[] to = new float[2];
+    final boolean[] found = new boolean[1];
+    tracker.track(from, to, 1, found);
+    assertTrue(found[0]);
+    assertEquals(128.8f, to[0], TOLERANCE);
+    assertEquals(96.4f, to[1], TOLERANCE);
+  }
+
+  @Test
+  public void selectsNoPointsInAFlatRegion() {
+    final LucasKanadeTracker tracker =
+        new LucasKanadeTracker(WIDTH, HEIGHT, 4, WINDOW_RADIUS, ITERATIONS);
+    tracker.nextFrame(flatPlane(), ROW_STRIDE);
+    final float[] points = new float[2 * POINTS_PER_SIDE * POINTS_PER_SIDE];
+    assertEquals(
+        0, tracker.selectPoints(64.0f, 48.0f, 192.0f, 144.0f, POINTS_PER_SIDE, points));
+  }
+
+  @Test
+  public void doesNotFindPointsNearTheBorder() {
+    final LucasKanadeTracker tracker =
+        new LucasKanadeTracker(WIDTH, HEIGHT, 1, WINDOW_RADIUS, ITERATIONS);
+    tracker.nextFrame(plane(0.0f, 0.0f, 0), ROW_STRIDE);
+    tracker.nextFrame(plane(0.5f, 0.5f, 0), ROW_STRIDE);
+    // Too close to each edge for the window and its gradients, and a point well inside.
+    final float[] from = {2.0f, 96.0f, 128.0f, 3.0f, WIDTH - 3.0f, 96.0f, 128.0f, HEIGHT - 2.0f};
+    final float[] to = new float[from.length];
+    final boolean[] found = new boolean[4];
+    tracker.track(from, to, 4, found);
+    for (int i = 0; i < 4; ++i) {
+      assertFalse("point " + i, found[i]);
+    }
+  }
+
+  @Test
+  public void findsNothingWithoutAPreviousFrame() {
+    final LucasKanadeTracker tracker =
+        new LucasKanadeTracker(WIDTH, HEIGHT, 1, WINDOW_RADIUS, ITERATIONS);
+    tracker.nextFrame(plane(0.0f, 0.0f, 0), ROW_STRIDE);
+    final float[] from = {128.0f, 96.0f};
+    final boolean[] found = {true};
+    tracker.track(from, new float[2], 1, found);
+    assertFalse(found[0]);
+  }
+}
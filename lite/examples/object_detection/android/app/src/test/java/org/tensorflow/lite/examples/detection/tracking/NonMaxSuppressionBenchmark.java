@@ -0,0 +1,100 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.tensorflow.lite.examples.detection.tracking.NonMaxSuppression.Method;
+
+/**
+ * Measures {@link NonMaxSuppression} keeping the 100 best of clustered boxes, in each mode, against
+ * textbook greedy NMS that decays every remaining box after each pick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NonMaxSuppressionBenchmark {
+  private static final int MAX_OUTPUTS = 100;
+  private static final int NUM_CLASSES = 10;
+
+  @Param({"100", "1000", "10000"})
+  public int numBoxes;
+
+  @Param({"HARD", "GAUSSIAN"})
+  public Method method;
+
+  private RandomBoxes boxes;
+  private NonMaxSuppression perClass;
+  private NonMaxSuppression agnostic;
+
+  @Setup
+  public void setUp() {
+    boxes = new RandomBoxes(numBoxes, NUM_CLASSES, 1);
+    perClass = new NonMaxSuppression(numBoxes, method, 0.5f, 0.5f, 0.05f, false);
+    agnostic = new NonMaxSuppression(numBoxes, method, 0.5f, 0.5f, 0.05f, true);
+  }
+
+  @Benchmark
+  public int perClass() {
+    return run(perClass);
+  }
+
+  @Benchmark
+  public int classAgnostic() {
+    return run(agnostic);
+  }
+
+  @Benchmark
+  public int greedyReference() {
+    return NonMaxSuppressionTest.runGreedy(
+            boxes, numBoxes, method, 0.5f, 0.5f, 0.05f, false, MAX_OUTPUTS)
+        .size();
+  }
+
+  private int run(final NonMaxSuppression nms) {
+    return nms.run(
+        numBoxes,
+        boxes.left,
+        boxes.top,
+        boxes.right,
+        boxes.bottom,
+        boxes.scores,
+        boxes.classes,
+        MAX_OUTPUTS);
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(
+            new OptionsBuilder().include(NonMaxSuppressionBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
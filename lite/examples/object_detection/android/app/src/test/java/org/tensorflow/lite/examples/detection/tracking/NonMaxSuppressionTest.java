@@ -0,0 +1,189 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.tensorflow.lite.examples.detection.tracking.NonMaxSuppression.Method;
+
+public class NonMaxSuppressionTest {
+  // Two pairs of overlapping boxes, far from each other.
+  private static final float[] LEFT = {0, 2, 100, 101};
+  private static final float[] TOP = {0, 1, 100, 102};
+  private static final float[] RIGHT = {50, 52, 150, 151};
+  private static final float[] BOTTOM = {50, 51, 150, 152};
+  private static final float[] SCORES = {0.9f, 0.8f, 0.6f, 0.7f};
+
+  @Test
+  public void hardSuppressionDropsDuplicatesWithZeroMinScore() {
+    final NonMaxSuppression nms = new NonMaxSuppression(4, Method.HARD, 0.5f, 0.0f, 0.0f, true);
+
+    assertEquals(2, nms.run(4, LEFT, TOP, RIGHT, BOTTOM, SCORES, null, 4));
+    assertEquals(0, nms.getKept(0));
+    assertEquals(3, nms.getKept(1));
+    assertEquals(0.9f, nms.getKeptScore(0), 0.0f);
+    assertEquals(0.7f, nms.getKeptScore(1), 0.0f);
+  }
+
+  @Test
+  public void hardSuppressionDropsDuplicatesWithPositiveMinScore() {
+    final NonMaxSuppression nms = new NonMaxSuppression(4, Method.HARD, 0.5f, 0.0f, 0.01f, true);
+
+    assertEquals(2, nms.run(4, LEFT, TOP, RIGHT, BOTTOM, SCORES, null, 4));
+  }
+
+  @Test
+  public void boxesOfOtherClassesAreNotSuppressedUnlessAgnostic() {
+    final int[] classes = {0, 1, 2, 2};
+    final NonMaxSuppression perClass =
+        new NonMaxSuppression(4, Method.HARD, 0.5f, 0.0f, 0.0f, false);
+    assertEquals(3, perClass.run(4, LEFT, TOP, RIGHT, BOTTOM, SCORES, classes, 4));
+
+    final NonMaxSuppression agnostic =
+        new NonMaxSuppression(4, Method.HARD, 0.5f, 0.0f, 0.0f, true);
+    assertEquals(2, agnostic.run(4, LEFT, TOP, RIGHT, BOTTOM, SCORES, classes, 4));
+  }
+
+  @Test
+  public void stopsAtMaxOutputsAndMinScore() {
+    final NonMaxSuppression nms = new NonMaxSuppression(4, Method.HARD, 0.5f, 0.0f, 0.0f, true);
+    assertEquals(1, nms.run(4, LEFT, TOP, RIGHT, BOTTOM, SCORES, null, 1));
+    assertEquals(0, nms.getKept(0));
+
+    final NonMaxSuppression strict = new NonMaxSuppression(4, Method.HARD, 0.5f, 0.0f, 0.8f, true);
+    assertEquals(1, strict.run(4, LEFT, TOP, RIGHT, BOTTOM, SCORES, null, 4));
+  }
+
+  @Test
+  public void boxesWithoutScoreAreNeverKept() {
+    final float[] scores = {0.0f, 0.0f, 0.0f, 0.0f};
+    final NonMaxSuppression nms = new NonMaxSuppression(4, Method.HARD, 0.5f, 0.0f, 0.0f, true);
+
+    assertEquals(0, nms.run(4, LEFT, TOP, RIGHT, BOTTOM, scores, null, 4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsMoreBoxesThanItsCapacity() {
+    new NonMaxSuppression(2, Method.HARD, 0.5f, 0.0f, 0.0f, true)
+        .run(4, LEFT, TOP, RIGHT, BOTTOM, SCORES, null, 4);
+  }
+
+  @Test
+  public void matchesGreedyReferenceOnRandomBoxes() {
+    for (final Method method : Method.values()) {
+      for (final boolean classAgnostic : new boolean[] {false, true}) {
+        for (final float minScore : new float[] {0.0f, 0.3f}) {
+          for (long seed = 0; seed < 5; ++seed) {
+            final RandomBoxes boxes = new RandomBoxes(300, 3, seed);
+            final NonMaxSuppression nms =
+                new NonMaxSuppression(300, method, 0.5f, 0.5f, minScore, classAgnostic);
+            final int numKept =
+                nms.run(
+                    300,
+                    boxes.left,
+                    boxes.top,
+                    boxes.right,
+                    boxes.bottom,
+                    boxes.scores,
+                    boxes.classes,
+                    50);
+            final List<float[]> expected =
+                runGreedy(boxes, 300, method, 0.5f, 0.5f, minScore, classAgnostic, 50);
+
+            assertEquals(expected.size(), numKept);
+            for (int i = 0; i < numKept; ++i) {
+              assertEquals((int) expected.get(i)[0], nms.getKept(i));
+              assertEquals(expected.get(i)[1], nms.getKeptScore(i), 1e-6f);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Textbook greedy (Soft-)NMS: keeps the best remaining box and decays every other one against it,
+   * until enough boxes are kept or none scores enough.
+   *
+   * @return Index and final score of each kept box, best first.
+   */
+  static List<float[]> runGreedy(
+      final RandomBoxes boxes,
+      final int numBoxes,
+      final Method method,
+      final float iouThreshold,
+      final float sigma,
+      final float minScore,
+      final boolean classAgnostic,
+      final int maxOutputs) {
+    final float[] scores = new float[numBoxes];
+    final boolean[] done = new boolean[numBoxes];
+    System.arraycopy(boxes.scores, 0, scores, 0, numBoxes);
+    final List<float[]> kept = new ArrayList<>();
+    while (kept.size() < maxOutputs) {
+      int best = -1;
+      for (int i = 0; i < numBoxes; ++i) {
+        if (!done[i]
+            && scores[i] > 0.0f
+            && scores[i] >= minScore
+            && (best < 0 || scores[i] > scores[best])) {
+          best = i;
+        }
+      }
+      if (best < 0) {
+        break;
+      }
+      done[best] = true;
+      kept.add(new float[] {best, scores[best]});
+      for (int i = 0; i < numBoxes; ++i) {
+        if (done[i] || (!classAgnostic && boxes.classes[i] != boxes.classes[best])) {
+          continue;
+        }
+        final float iou = getIou(boxes, i, best);
+        switch (method) {
+          case LINEAR:
+            scores[i] *= iou > iouThreshold ? 1.0f - iou : 1.0f;
+            break;
+          case GAUSSIAN:
+            scores[i] *= (float) Math.exp(-iou * iou / sigma);
+            break;
+          case HARD:
+          default:
+            scores[i] *= iou > iouThreshold ? 0.0f : 1.0f;
+            break;
+        }
+      }
+    }
+    return kept;
+  }
+
+  private static float getIou(final RandomBoxes boxes, final int a, final int b) {
+    final float width =
+        Math.min(boxes.right[a], boxes.right[b]) - Math.max(boxes.left[a], boxes.left[b]);
+    final float height =
+        Math.min(boxes.bottom[a], boxes.bottom[b]) - Math.max(boxes.top[a], boxes.top[b]);
+    if (width <= 0.0f || height <= 0.0f) {
+      return 0.0f;
+    }
+    final float intersection = width * height;
+    final float areaA = (boxes.right[a] - boxes.left[a]) * (boxes.bottom[a] - boxes.top[a]);
+    final float areaB = (boxes.right[b] - boxes.left[b]) * (boxes.bottom[b] - boxes.top[b]);
+    return intersection / (areaA + areaB - intersection);
+  }
+}
@@ -0,0 +1,170 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Tests how {@link ObjectTracks} matches detections to objects and predicts them in between. */
+public class ObjectTracksTest {
+  private static final int[] COLORS = {10, 20, 30};
+  private static final int MAX_POINTS = 4;
+
+  private static void detect(
+      final ObjectTracks tracks, final float left, final float top, final float size) {
+    tracks.addDetection(left, top, left + size, top + size, 0.9f, "object");
+  }
+
+  /** Index of the object with id {@code id}, or -1 if it is not tracked. */
+  private static int find(final ObjectTracks tracks, final int id) {
+    for (int i = 0; i < tracks.size(); ++i) {
+      if (tracks.get(i).id == id) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Test
+  public void keepsIdsAcrossSkippedFrames() {
+    final ObjectTracks tracks = new ObjectTracks(COLORS, MAX_POINTS);
+    detect(tracks, 100.0f, 100.0f, 40.0f);
+    detect(tracks, 300.0f, 200.0f, 40.0f);
+    tracks.update(0);
+
+    // Five frames later, both moved a little and come in the other order.
+    detect(tracks, 310.0f, 205.0f, 40.0f);
+    detect(tracks, 105.0f, 98.0f, 40.0f);
+    tracks.update(5);
+
+    assertEquals(2, tracks.size());
+    final ObjectTracks.Track first = tracks.get(find(tracks, 0));
+    final ObjectTracks.Track second = tracks.get(find(tracks, 1));
+    assertEquals(125.0f, 0.5f * (first.location[0] + first.location[2]), 5.0f);
+    assertEquals(330.0f, 0.5f * (second.location[0] + second.location[2]), 5.0f);
+    assertEquals(COLORS[0], first.color);
+    assertEquals(COLORS[1], second.color);
+    assertEquals(5, first.detectedTimestamp);
+    assertEquals(5, second.detectedTimestamp);
+  }
+
+  @Test
+  public void dropsObjectsMissedForMoreThanMaxMisses() {
+    final ObjectTracks tracks = new ObjectTracks(COLORS, MAX_POINTS);
+    detect(tracks, 100.0f, 100.0f, 40.0f);
+    tracks.update(0);
+
+    for (int round = 1; round <= ObjectTracks.MAX_MISSES; ++round) {
+      tracks.update(round);
+      assertEquals(1, tracks.size());
+      assertEquals(round, tracks.get(0).misses);
+    }
+    tracks.update(ObjectTracks.MAX_MISSES + 1);
+    assertEquals(0, tracks.size());
+  }
+
+  @Test
+  public void detectionResetsTheMisses() {
+    final ObjectTracks tracks = new ObjectTracks(COLORS, MAX_POINTS);
+    detect(tracks, 100.0f, 100.0f, 40.0f);
+    tracks.update(0);
+    for (int round = 1; round <= ObjectTracks.MAX_MISSES; ++round) {
+      tracks.update(round);
+    }
+
+    detect(tracks, 100.0f, 100.0f, 40.0f);
+    tracks.update(ObjectTracks.MAX_MISSES + 1);
+
+    assertEquals(1, tracks.size());
+    assertEquals(0, tracks.get(0).id);
+    assertEquals(0, tracks.get(0).misses);
+  }
+
+  @Test
+  public void reusesTheColorsOfDroppedObjects() {
+    final ObjectTracks tracks = new ObjectTracks(COLORS, MAX_POINTS);
+    for (int i = 0; i < COLORS.length + 1; ++i) {
+      detect(tracks, 100.0f * i, 100.0f, 40.0f);
+    }
+    tracks.update(0);
+    // One object per color; the last detection is left out.
+    assertEquals(COLORS.length, tracks.size());
+
+    // The first object goes missing until dropped, while the others are seen every round.
+    for (int round = 1; round <= ObjectTracks.MAX_MISSES + 1; ++round) {
+      for (int i = 1; i < COLORS.length; ++i) {
+        detect(tracks, 100.0f * i, 100.0f, 40.0f);
+      }
+      tracks.update(round);
+    }
+    assertEquals(-1, find(tracks, 0));
+
+    detect(tracks, 100.0f, 100.0f, 40.0f);
+    detect(tracks, 200.0f, 100.0f, 40.0f);
+    detect(tracks, 500.0f, 300.0f, 40.0f);
+    tracks.update(ObjectTracks.MAX_MISSES + 2);
+
+    assertEquals(COLORS.length, tracks.size());
+    final ObjectTracks.Track reborn = tracks.get(find(tracks, COLORS.length));
+    assertEquals(COLORS[0], reborn.color);
+  }
+
+  @Test
+  public void gatesMatchesByOverlap() {
+    final ObjectTracks tracks = new ObjectTracks(COLORS, MAX_POINTS);
+    detect(tracks, 100.0f, 100.0f, 40.0f);
+    tracks.update(0);
+
+    // Shifted by 20 of 40 pixels the overlap is 1/3, just above the gate: the object continues.
+    detect(tracks, 120.0f, 100.0f, 40.0f);
+    tracks.update(1);
+    assertEquals(1, tracks.size());
+    assertEquals(0, tracks.get(0).misses);
+
+    // Shifted by 30 pixels from where the object is now, the overlap is below the gate: a new
+    // object starts and the old one misses.
+    final float left = tracks.get(0).location[0];
+    detect(tracks, left + 30.0f, 100.0f, 40.0f);
+    tracks.update(2);
+    assertEquals(2, tracks.size());
+    assertEquals(1, tracks.get(find(tracks, 0)).misses);
+    assertEquals(2, tracks.get(find(tracks, 1)).detectedTimestamp);
+  }
+
+  @Test
+  public void predictsMotionBetweenDetections() {
+    final ObjectTracks tracks = new ObjectTracks(COLORS, MAX_POINTS);
+    // An object moving 3 pixels right and 2 up per frame, detected every other frame.
+    for (int frame = 0; frame <= 40; frame += 2) {
+      detect(tracks, 100.0f + 3.0f * frame, 300.0f - 2.0f * frame, 40.0f);
+      tracks.update(frame);
+    }
+    assertEquals(1, tracks.size());
+    final ObjectTracks.Track track = tracks.get(0);
+
+    for (int frame = 41; frame <= 43; ++frame) {
+      tracks.predict(frame);
+      assertEquals(120.0f + 3.0f * frame, 0.5f * (track.location[0] + track.location[2]), 1.0f);
+      assertEquals(320.0f - 2.0f * frame, 0.5f * (track.location[1] + track.location[3]), 1.0f);
+      assertEquals(40.0f, track.location[2] - track.location[0], 1.0f);
+    }
+    // Predicting leaves the estimate at the last detection alone.
+    tracks.predict(40);
+    assertEquals(240.0f, 0.5f * (track.location[0] + track.location[2]), 1.0f);
+    assertEquals(40, track.detectedTimestamp);
+  }
+}
@@ -0,0 +1,62 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Random;
+
+/**
+ * Boxes in the struct-of-arrays layout of {@link NonMaxSuppression}, clustered the way a detector
+ * reports them: several boxes around each object, with a few classes.
+ */
+public class RandomBoxes {
+  public final float[] left;
+  public final float[] top;
+  public final float[] right;
+  public final float[] bottom;
+  public final float[] scores;
+  public final int[] classes;
+
+  public RandomBoxes(final int numBoxes, final int numClasses, final long seed) {
+    final Random random = new Random(seed);
+    left = new float[numBoxes];
+    top = new float[numBoxes];
+    right = new float[numBoxes];
+    bottom = new float[numBoxes];
+    scores = new float[numBoxes];
+    classes = new int[numBoxes];
+    final int numObjects = Math.max(1, numBoxes / 8);
+    final float[] objectX = new float[numObjects];
+    final float[] objectY = new float[numObjects];
+    final float[] objectSize = new float[numObjects];
+    for (int o = 0; o < numObjects; ++o) {
+      objectX[o] = random.nextFloat() * 1000;
+      objectY[o] = random.nextFloat() * 1000;
+      objectSize[o] = 20 + random.nextFloat() * 100;
+    }
+    for (int i = 0; i < numBoxes; ++i) {
+      final int o = random.nextInt(numObjects);
+      final float size = objectSize[o] * (0.8f + 0.4f * random.nextFloat());
+      final float x = objectX[o] + (float) random.nextGaussian() * size * 0.1f;
+      final float y = objectY[o] + (float) random.nextGaussian() * size * 0.1f;
+      left[i] = x;
+      top[i] = y;
+      right[i] = x + size;
+      bottom[i] = y + size;
+      scores[i] = random.nextFloat();
+      classes[i] = random.nextInt(numClasses);
+    }
+  }
+}
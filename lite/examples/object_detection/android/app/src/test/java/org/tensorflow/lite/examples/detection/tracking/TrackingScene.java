@@ -0,0 +1,95 @@
+/* Copyright 2019 The TensorFlow Authors. All Rights Reserved.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+==============================================================================*/
+
+package org.tensorflow.lite.examples.detection.tracking;
+
+import java.util.Random;
+
+/**
+ * The cost matrix {@link MultiBoxTracker} builds for a frame: one minus the IoU of each tracked box
+ * with each detection. Detections are the tracked boxes moved and resized a little, in a shuffled
+ * order, with a tenth of the objects missed and a tenth newly appeared.
+ */
+public class TrackingScene {
+  public static final float GATE = 0.7f;
+
+  public final int numTracks;
+  public final int numDetections;
+  public final float[] costs;
+
+  public TrackingScene(final int numObjects, final long seed) {
+    final Random random = new Random(seed);
+    final float[][] tracks = new float[numObjects][];
+    for (int i = 0; i < numObjects; ++i) {
+      tracks[i] = randomBox(random);
+    }
+    final float[][] detections = new float[numObjects][];
+    int count = 0;
+    for (int i = 0; i < numObjects; ++i) {
+      final float chance = random.nextFloat();
+      if (chance < 0.1f) {
+        continue;
+      }
+      if (chance < 0.2f) {
+        detections[count++] = randomBox(random);
+        continue;
+      }
+      final float[] track = tracks[i];
+      final float size = track[2] - track[0];
+      final float dx = (float) random.nextGaussian() * size * 0.1f;
+      final float dy = (float) random.nextGaussian() * size * 0.1f;
+      final float scale = 1.0f + (float) random.nextGaussian() * 0.05f;
+      detections[count++] =
+          new float[] {
+            track[0] + dx, track[1] + dy, track[0] + dx + size * scale, track[1] + dy + size * scale
+          };
+    }
+    for (int i = count - 1; i > 0; --i) {
+      final int j = random.nextInt(i + 1);
+      final float[] swap = detections[i];
+      detections[i] = detections[j];
+      detections[j] = swap;
+    }
+
+    numTracks = numObjects;
+    numDetections = count;
+    costs = new float[numTracks * numDetections];
+    for (int t = 0; t < numTracks; ++t) {
+      for (int d = 0; d < numDetections; ++d) {
+        costs[t * numDetections + d] = 1.0f - getIou(tracks[t], detections[d]);
+      }
+    }
+  }
+
+  /** A box of 20 to 80 pixels in a 640x480 frame. */
+  private static float[] randomBox(final Random random) {
+    final float size = 20.0f + 60.0f * random.nextFloat();
+    final float left = (640.0f - size) * random.nextFloat();
+    final float top = (480.0f - size) * random.nextFloat();
+    return new float[] {left, top, left + size, top + size};
+  }
+
+  private static float getIou(final float[] a, final float[] b) {
+    final float width = Math.min(a[2], b[2]) - Math.max(a[0], b[0]);
+    final float height = Math.min(a[3], b[3]) - Math.max(a[1], b[1]);
+    if (width <= 0.0f || height <= 0.0f) {
+      return 0.0f;
+    }
+    final float intersection = width * height;
+    final float areaA = (a[2] - a[0]) * (a[3] - a[1]);
+    final float areaB = (b[2] - b[0]) * (b[3] - b[1]);
+    return intersection / (areaA + areaB - intersection);
+  }
+}